@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import me.lucko.luckperms.compat.backend.BackendType;
+import me.lucko.luckperms.compat.backend.CommandBackend;
+import me.lucko.luckperms.compat.backend.ExecutionBackend;
+
+import org.bukkit.Server;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A plugin instance which runs outside of a server.
+ *
+ * <p>Commands are registered into a local map instead of the server's command
+ * map, and LuckPerms commands are captured instead of being dispatched.</p>
+ */
+public class BenchmarkPlugin extends LuckPermsCompat {
+    private static final Logger LOGGER = Logger.getLogger("LuckPermsCompat-Benchmark");
+
+    public static BenchmarkPlugin create() {
+        Server server = (Server) Proxy.newProxyInstance(BenchmarkPlugin.class.getClassLoader(), new Class<?>[]{Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isPrimaryThread":
+                    return true;
+                case "getLogger":
+                    return LOGGER;
+                case "getName":
+                case "toString":
+                    return "BenchmarkServer";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        PluginDescriptionFile description = new PluginDescriptionFile("LuckPermsCompat", "benchmark", BenchmarkPlugin.class.getName());
+        File dataFolder = new File(System.getProperty("java.io.tmpdir"), "LuckPermsCompat-benchmark");
+        return new BenchmarkPlugin(new JavaPluginLoader(server), description, dataFolder);
+    }
+
+    private final ExecutionBackend backend = new CommandBackend(this);
+    private final CommandQueue commandQueue = new CommandQueue(this, 0, false);
+    private final Map<String, CommandExecutor> commands = new HashMap<>();
+    private final List<Dialect> dialects = new ArrayList<>();
+
+    private long executed = 0;
+    private String lastCommand = null;
+
+    private BenchmarkPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder) {
+        super(loader, description, dataFolder, new File(dataFolder, "LuckPermsCompat.jar"));
+    }
+
+    @Override
+    public ExecutionBackend getBackend(BackendType type) {
+        return this.backend;
+    }
+
+    @Override
+    public CommandQueue getCommandQueue() {
+        return this.commandQueue;
+    }
+
+    @Override
+    public void executeCommand(CommandSender sender, String cmd) {
+        this.executed++;
+        this.lastCommand = cmd;
+    }
+
+    @Override
+    public void sendUsage(CommandSender sender, String label, String[] args) {
+        // there is no LuckPerms instance to report the version of
+        sendUsage(sender, (String) null);
+    }
+
+    @Override
+    public void sendUsage(CommandSender sender, String name) {
+        for (Dialect dialect : this.dialects) {
+            if (name != null && !dialect.getName().equals(name)) {
+                continue;
+            }
+
+            msg(sender, "&bMapped commands: &7(" + dialect.getName() + ")");
+            for (String usage : dialect.getUsage()) {
+                msg(sender, "&3> &a" + usage);
+            }
+        }
+    }
+
+    /**
+     * Registers every command of a dialect into the local map
+     *
+     * @param dialect the dialect
+     */
+    public void registerDialect(Dialect dialect) {
+        this.dialects.add(dialect);
+        this.commands.putAll(dialect.getCommands());
+    }
+
+    @Override
+    public void registerCommand(String alias, CommandExecutor executor) {
+        this.commands.put(alias, executor);
+    }
+
+    @Override
+    public void registerCommands(Map<String, ? extends CommandExecutor> commands) {
+        this.commands.putAll(commands);
+    }
+
+    public CommandExecutor getRegisteredCommand(String alias) {
+        CommandExecutor executor = this.commands.get(alias);
+        if (executor == null) {
+            throw new IllegalArgumentException("No command registered for " + alias);
+        }
+        return executor;
+    }
+
+    public Map<String, CommandExecutor> getRegisteredCommands() {
+        return Collections.unmodifiableMap(this.commands);
+    }
+
+    /**
+     * Gets the number of LuckPerms commands which would have been dispatched
+     *
+     * @return the number of commands
+     */
+    public long getExecuted() {
+        return this.executed;
+    }
+
+    public String getLastCommand() {
+        return this.lastCommand;
+    }
+}
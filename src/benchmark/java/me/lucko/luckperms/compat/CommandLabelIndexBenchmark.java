@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import me.lucko.luckperms.compat.groupmanager.GroupManagerMapping;
+import me.lucko.luckperms.compat.permissionsex.PermissionsExMapping;
+
+import org.bukkit.command.CommandExecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks finding the remapped command for a command line, as done by the
+ * {@link CommandInterceptor} for every command sent, against looking it up by
+ * label in a map. Most command lines seen are not ours.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandLabelIndexBenchmark {
+
+    @Param({
+            "/spawn",
+            "/msg Luck hello there",
+            "/mangaddp admin some.permission",
+            "/PEX user Luck add some.permission"
+    })
+    public String commandLine;
+
+    private CommandLabelIndex<CommandExecutor> index;
+    private Map<String, CommandExecutor> map;
+
+    @Setup
+    public void setup() {
+        BenchmarkPlugin plugin = BenchmarkPlugin.create();
+        plugin.registerDialect(GroupManagerMapping.createDialect(plugin, DialectConfig.ALL));
+        plugin.registerDialect(PermissionsExMapping.createDialect(plugin, DialectConfig.ALL));
+
+        this.map = new HashMap<>(plugin.getRegisteredCommands());
+        this.index = CommandLabelIndex.of(this.map);
+    }
+
+    @Benchmark
+    public CommandExecutor index() {
+        int end = this.commandLine.indexOf(' ');
+        return this.index.get(this.commandLine, 1, end == -1 ? this.commandLine.length() : end);
+    }
+
+    @Benchmark
+    public CommandExecutor map() {
+        int end = this.commandLine.indexOf(' ');
+        return this.map.get(this.commandLine.substring(1, end == -1 ? this.commandLine.length() : end).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import me.lucko.luckperms.compat.completion.CompletionIndex;
+import me.lucko.luckperms.compat.groupmanager.GroupManagerMapping;
+import me.lucko.luckperms.compat.permissionsex.PermissionsExMapping;
+
+import org.bukkit.command.TabCompleter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks tab completing remapped commands, with an increasing number of
+ * groups, tracks and players in the completion index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabCompleteBenchmark {
+
+    @Param({
+            // literals
+            "pex gr",
+            "pex user Luck gr",
+            // placeholders
+            "pex group group12",
+            "pex user Luck group set group12",
+            "pex promote Luck ladder12",
+            "manuadd Luck group12",
+            "manuadd player12"
+    })
+    public String invocation;
+
+    @Param({"10", "100", "1000"})
+    public int names;
+
+    private BenchmarkSender sender;
+    private TabCompleter completer;
+    private String label;
+    private String[] args;
+
+    @Setup
+    public void setup() {
+        BenchmarkPlugin plugin = BenchmarkPlugin.create();
+        plugin.registerDialect(GroupManagerMapping.createDialect(plugin, DialectConfig.ALL));
+        plugin.registerDialect(PermissionsExMapping.createDialect(plugin, DialectConfig.ALL));
+
+        List<String> groups = new ArrayList<>();
+        List<String> tracks = new ArrayList<>();
+        List<String> players = new ArrayList<>();
+        for (int i = 0; i < this.names; i++) {
+            groups.add("group" + i);
+            tracks.add("ladder" + i);
+            players.add("Player" + i);
+        }
+        CompletionIndex index = plugin.getCompletionIndex();
+        index.set(CompletionIndex.Type.GROUP, groups);
+        index.set(CompletionIndex.Type.TRACK, tracks);
+        index.set(CompletionIndex.Type.PLAYER, players);
+
+        String[] parts = this.invocation.split(" ");
+        this.label = parts[0];
+        this.args = Arrays.copyOfRange(parts, 1, parts.length);
+        this.completer = (TabCompleter) plugin.getRegisteredCommand(this.label);
+        this.sender = new BenchmarkSender("Benchmark");
+    }
+
+    @Benchmark
+    public List<String> complete() {
+        return this.completer.onTabComplete(this.sender, null, this.label, this.args);
+    }
+}
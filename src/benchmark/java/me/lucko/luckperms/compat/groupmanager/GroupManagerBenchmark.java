@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.groupmanager;
+
+import me.lucko.luckperms.compat.BenchmarkPlugin;
+import me.lucko.luckperms.compat.BenchmarkSender;
+import me.lucko.luckperms.compat.DialectConfig;
+import me.lucko.luckperms.compat.MappingContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each GroupManager mapping, from the command executor down to
+ * the LuckPerms command it would dispatch. Resolving the mapping for a set of
+ * arguments is benchmarked on its own, and should not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupManagerBenchmark {
+
+    @Param({
+            "manuadd Luck admin",
+            "manudel Luck",
+            "manuaddsub Luck admin",
+            "manudelsub Luck admin",
+            "manpromote",
+            "mandemote",
+            "manuwhois Luck",
+            "manuaddp Luck some.permission",
+            "manudelp Luck some.permission",
+            "manulistp Luck",
+            "manucheckp Luck some.permission",
+            "manuaddv Luck prefix &c[Admin]",
+            "manudelv Luck prefix",
+            "manulistv Luck",
+            "manucheckv Luck",
+            "mangadd admin",
+            "mangdel admin",
+            "mangaddi admin mod",
+            "mangdeli admin mod",
+            "listgroups",
+            "mangaddp admin some.permission",
+            "mangdelp admin some.permission",
+            "manglistp admin",
+            "mangcheckp admin some.permission",
+            "mangaddv admin prefix &c[Admin]",
+            "mangdelv admin prefix",
+            "manglistv admin",
+            "mangcheckv admin",
+            "mansave",
+            "manload",
+            "manworld",
+            "manselect",
+            "manclear",
+            // too few arguments, so the usage is sent instead
+            "manuadd Luck"
+    })
+    public String invocation;
+
+    private BenchmarkPlugin plugin;
+    private BenchmarkSender sender;
+    private GroupManagerCommand command;
+    private String label;
+    private String[] args;
+
+    @Setup
+    public void setup() {
+        this.plugin = BenchmarkPlugin.create();
+        this.plugin.registerDialect(GroupManagerMapping.createDialect(this.plugin, DialectConfig.ALL));
+
+        String[] parts = this.invocation.split(" ");
+        this.label = parts[0];
+        this.args = Arrays.copyOfRange(parts, 1, parts.length);
+        this.command = (GroupManagerCommand) this.plugin.getRegisteredCommand(this.label);
+        this.sender = new BenchmarkSender("Benchmark");
+    }
+
+    @Benchmark
+    public MappingContext resolve() {
+        return this.command.resolve(this.args);
+    }
+
+    @Benchmark
+    public boolean onCommand() {
+        return this.command.onCommand(this.sender, null, this.label, this.args);
+    }
+
+    @Benchmark
+    public boolean execute() {
+        return this.command.execute(this.sender, this.label, this.args);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.journal;
+
+import me.lucko.luckperms.compat.BenchmarkSender;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks recording a change in the {@link UndoJournal}, which is done for
+ * every operation applied by a remapped command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UndoJournalBenchmark {
+
+    private static final String[] ARGS = {"user", "Luck", "group", "add", "admin"};
+
+    private Path directory;
+    private UndoJournal journal;
+    private Inverter inverter;
+    private BenchmarkSender sender;
+    private List<Operation> operations;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("luckpermscompat-journal");
+        this.journal = new UndoJournal(this.directory, 64 * 1024 * 1024, 2, Logger.getLogger("UndoJournalBenchmark"));
+        this.journal.open();
+        this.inverter = new Inverter(null);
+        this.sender = new BenchmarkSender("Luck");
+        this.operations = Collections.singletonList(Operation.parentAdd(HolderType.USER, "Luck", "admin", null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.journal.close();
+        File[] files = this.directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.toFile().delete();
+    }
+
+    @Benchmark
+    public void append() {
+        this.journal.append(this.sender, "pex", ARGS, this.journal.nextInvocation(), this.operations, this.operations);
+    }
+
+    @Benchmark
+    public void invertAndAppend() {
+        List<Operation> inverse = this.inverter.invert(this.operations);
+        this.journal.append(this.sender, "pex", ARGS, this.journal.nextInvocation(), this.operations, inverse);
+    }
+}
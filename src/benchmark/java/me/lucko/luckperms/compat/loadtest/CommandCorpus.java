@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.loadtest;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A list of GroupManager and PermissionsEx commands to replay.
+ */
+public final class CommandCorpus {
+
+    // {user}, {group}, {permission}, {world} and {number} are replaced with random values
+    private static final List<String> TEMPLATES = ImmutableList.of(
+            "manuadd {user} {group}",
+            "manuaddsub {user} {group}",
+            "manudelsub {user} {group}",
+            "manuaddp {user} {permission}",
+            "manudelp {user} {permission}",
+            "manuaddv {user} prefix &7[{group}]",
+            "manudelv {user} prefix",
+            "manucheckp {user} {permission}",
+            "mangaddp {group} {permission}",
+            "mangdelp {group} {permission}",
+            "mangaddi {group} {group}",
+            "pex user {user} group add {group}",
+            "pex user {user} group add {group} {world} {number}",
+            "pex user {user} group set {group}",
+            "pex user {user} group remove {group}",
+            "pex user {user} add {permission}",
+            "pex user {user} add {permission} {world}",
+            "pex user {user} remove {permission}",
+            "pex user {user} timed add {permission} {number}",
+            "pex user {user} prefix &c[{group}]",
+            "pex user {user} check {permission}",
+            "pex group {group} add {permission}",
+            "pex group {group} remove {permission} {world}",
+            "pex group {group} weight {number}",
+            "pex group {group} parents set {group},{group}",
+            "pex group {group} user add {user},{user},{user}",
+            "pex promote {user} staff",
+            "pex demote {user} staff"
+    );
+
+    /**
+     * Loads a recorded corpus, one command per line. Blank lines and lines
+     * starting with '#' are skipped, as is a leading slash.
+     *
+     * @param path the file
+     * @return the corpus
+     * @throws IOException if the file could not be read
+     */
+    public static CommandCorpus load(Path path) throws IOException {
+        List<String> commands = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            commands.add(line.startsWith("/") ? line.substring(1) : line);
+        }
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("No commands in " + path);
+        }
+        return new CommandCorpus(commands);
+    }
+
+    /**
+     * Generates a random corpus from the built in templates.
+     *
+     * @param size the number of commands
+     * @param users the number of distinct users to refer to
+     * @param seed the random seed
+     * @return the corpus
+     */
+    public static CommandCorpus generate(int size, int users, long seed) {
+        Random random = new Random(seed);
+        List<String> commands = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String template = TEMPLATES.get(random.nextInt(TEMPLATES.size()));
+            StringBuilder sb = new StringBuilder();
+
+            int pos = 0;
+            int start;
+            while ((start = template.indexOf('{', pos)) != -1) {
+                int end = template.indexOf('}', start);
+                sb.append(template, pos, start);
+                sb.append(value(template.substring(start + 1, end), users, random));
+                pos = end + 1;
+            }
+            sb.append(template, pos, template.length());
+            commands.add(sb.toString());
+        }
+        return new CommandCorpus(commands);
+    }
+
+    private static String value(String placeholder, int users, Random random) {
+        switch (placeholder) {
+            case "user":
+                return "player" + random.nextInt(users);
+            case "group":
+                return "group" + random.nextInt(16);
+            case "permission":
+                return "example.node" + random.nextInt(256);
+            case "world":
+                return "world" + random.nextInt(3);
+            case "number":
+                return Integer.toString(1 + random.nextInt(86400));
+            default:
+                throw new IllegalArgumentException(placeholder);
+        }
+    }
+
+    private final List<String> commands;
+
+    private CommandCorpus(List<String> commands) {
+        this.commands = commands;
+    }
+
+    public String get(long index) {
+        return this.commands.get((int) (index % this.commands.size()));
+    }
+
+    public int size() {
+        return this.commands.size();
+    }
+}
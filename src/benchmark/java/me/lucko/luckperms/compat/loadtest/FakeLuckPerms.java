@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.loadtest;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A stand-in for the LuckPerms '/lp' command, which applies changes to an
+ * in-memory store instead of a real permissions backend.
+ *
+ * <p>Only the subset of the command syntax used by the mappings is understood.
+ * Read-only commands are counted but otherwise ignored.</p>
+ */
+public class FakeLuckPerms extends Command {
+
+    // holder ("user:name" / "group:name") -> nodes, e.g. "group.admin" or "some.permission=true@world"
+    private final Map<String, Set<String>> holders = new HashMap<>();
+    private final Set<String> groups = new HashSet<>();
+
+    private long applied = 0;
+    private long readOnly = 0;
+    private long unknown = 0;
+
+    public FakeLuckPerms() {
+        super("lp");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String label, String[] args) {
+        if (args.length == 0) {
+            this.unknown++;
+            return true;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "creategroup":
+                this.groups.add(args[1].toLowerCase());
+                this.applied++;
+                return true;
+            case "deletegroup":
+                this.groups.remove(args[1].toLowerCase());
+                this.holders.remove("group:" + args[1].toLowerCase());
+                this.applied++;
+                return true;
+            case "user":
+            case "group":
+                if (args.length >= 3 && holderCommand(args[0].toLowerCase() + ":" + args[1].toLowerCase(), args)) {
+                    this.applied++;
+                } else {
+                    this.readOnly++;
+                }
+                return true;
+            case "info":
+            case "listgroups":
+            case "sync":
+            case "reloadconfig":
+            case "search":
+            case "check":
+                this.readOnly++;
+                return true;
+            default:
+                this.unknown++;
+                return true;
+        }
+    }
+
+    private boolean holderCommand(String holder, String[] args) {
+        String section = args[2].toLowerCase();
+        String action = args.length > 3 ? args[3].toLowerCase() : "";
+
+        switch (section) {
+            case "clear":
+                this.holders.remove(holder);
+                return true;
+            case "setweight":
+                replace(holder, "weight.", "weight." + args[3]);
+                return true;
+            case "promote":
+            case "demote":
+                nodes(holder).add("track." + args[3]);
+                return true;
+            case "parent":
+                switch (action) {
+                    case "set":
+                        replace(holder, "group.", "group." + args[4] + context(args, 5));
+                        return true;
+                    case "add":
+                        nodes(holder).add("group." + args[4] + context(args, 5));
+                        return true;
+                    case "addtemp":
+                        nodes(holder).add("group." + args[4] + "~" + args[5] + context(args, 6));
+                        return true;
+                    case "remove":
+                        nodes(holder).remove("group." + args[4] + context(args, 5));
+                        return true;
+                    case "clear":
+                        replace(holder, "group.", null);
+                        return true;
+                    default:
+                        return false;
+                }
+            case "permission":
+                switch (action) {
+                    case "set":
+                        nodes(holder).add(args[4] + "=" + args[5] + context(args, 6));
+                        return true;
+                    case "settemp":
+                        nodes(holder).add(args[4] + "=" + args[5] + "~" + args[6] + context(args, 7));
+                        return true;
+                    case "unset":
+                    case "unsettemp":
+                        replace(holder, args[4] + "=", null);
+                        return true;
+                    default:
+                        return false;
+                }
+            case "meta":
+                switch (action) {
+                    case "set":
+                        replace(holder, "meta." + args[4] + ".", "meta." + args[4] + "." + args[5] + context(args, 6));
+                        return true;
+                    case "unset":
+                        replace(holder, "meta." + args[4] + ".", null);
+                        return true;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    private Set<String> nodes(String holder) {
+        return this.holders.computeIfAbsent(holder, h -> new HashSet<>());
+    }
+
+    private void replace(String holder, String prefix, String node) {
+        Set<String> nodes = nodes(holder);
+        for (Iterator<String> it = nodes.iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        if (node != null) {
+            nodes.add(node);
+        }
+    }
+
+    private static String context(String[] args, int from) {
+        return args.length > from ? "@" + String.join(",", Arrays.copyOfRange(args, from, args.length)) : "";
+    }
+
+    public long getApplied() {
+        return this.applied;
+    }
+
+    public long getReadOnly() {
+        return this.readOnly;
+    }
+
+    public long getUnknown() {
+        return this.unknown;
+    }
+
+    public int getHolderCount() {
+        return this.holders.size();
+    }
+
+    public int getNodeCount() {
+        int count = 0;
+        for (Set<String> nodes : this.holders.values()) {
+            count += nodes.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.loadtest;
+
+import me.lucko.luckperms.compat.BenchmarkSender;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays GroupManager and PermissionsEx commands against the plugin, loaded
+ * into a {@link LoadTestServer} with a {@link FakeLuckPerms}, and reports
+ * throughput, latency and allocation per command.
+ *
+ * <p>Commands are issued on a fixed schedule at the target rate, and latency
+ * is measured from when each command was due, not from when it was actually
+ * sent, so a stalled server shows up in the percentiles.</p>
+ *
+ * <p>In 'sync' mode, commands are dispatched through the command map on the
+ * main thread, as if typed by the senders. In 'async' mode, producer threads
+ * submit them through {@link me.lucko.luckperms.compat.LuckPermsCompat#submit},
+ * and latency includes the time spent waiting in the command queue.</p>
+ */
+public final class LoadTest {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String mode = options.getOrDefault("mode", "sync");
+        if (!mode.equals("sync") && !mode.equals("async")) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        CommandCorpus corpus = options.containsKey("corpus")
+                ? CommandCorpus.load(Paths.get(options.get("corpus")))
+                : CommandCorpus.generate(intOption(options, "corpus-size", 10000), intOption(options, "users", 1000), intOption(options, "seed", 1));
+
+        LoadTest test = new LoadTest(
+                mode,
+                corpus,
+                intOption(options, "senders", 64),
+                intOption(options, "rate", 2000),
+                intOption(options, "producers", 4),
+                Double.parseDouble(options.getOrDefault("tick-budget", "5"))
+        );
+
+        int warmup = intOption(options, "warmup", 10);
+        int duration = intOption(options, "duration", 30);
+
+        System.out.println("Mode: " + mode + ", senders: " + test.senders.length + ", target rate: " + test.rate + "/s, corpus: " + corpus.size() + " commands");
+        test.enable();
+
+        System.out.println("Warming up for " + warmup + "s...");
+        test.run(TimeUnit.SECONDS.toNanos(warmup), false);
+
+        System.out.println("Measuring for " + duration + "s...");
+        test.run(TimeUnit.SECONDS.toNanos(duration), true);
+
+        test.disable();
+    }
+
+    private final String mode;
+    private final CommandCorpus corpus;
+    private final CommandSender[] senders;
+    private final int rate;
+    private final int producers;
+    private final double tickBudget;
+
+    private LoadTestServer server;
+    private FakeLuckPerms luckPerms;
+    private LoadTestPlugin plugin;
+
+    // the number of commands registered before the plugin was enabled
+    private int commandsBefore;
+
+    // the position in the corpus, carried over from the warmup
+    private long offset = 0;
+
+    private LoadTest(String mode, CommandCorpus corpus, int senders, int rate, int producers, double tickBudget) {
+        this.mode = mode;
+        this.corpus = corpus;
+        this.senders = new CommandSender[senders];
+        for (int i = 0; i < senders; i++) {
+            this.senders[i] = new BenchmarkSender("sender" + i);
+        }
+        this.rate = rate;
+        this.producers = producers;
+        this.tickBudget = tickBudget;
+    }
+
+    private void enable() throws IOException {
+        File root = Files.createTempDirectory("luckpermscompat-loadtest").toFile();
+        File dataFolder = new File(root, "LuckPermsCompat");
+        if (!dataFolder.mkdirs()) {
+            throw new IOException("Could not create " + dataFolder);
+        }
+
+        // in sync mode, commands are sent on the main thread and should run immediately
+        List<String> config = new ArrayList<>();
+        config.add("queue:");
+        config.add("  tick-budget: " + this.tickBudget);
+        config.add("  defer-console: " + this.mode.equals("async"));
+        Files.write(new File(dataFolder, "config.yml").toPath(), config, StandardCharsets.UTF_8);
+
+        this.server = new LoadTestServer(root);
+        this.server.addDummyPlugin("LuckPerms", "5.4-loadtest");
+        this.luckPerms = new FakeLuckPerms();
+        this.server.getCommandMap().register("luckperms", this.luckPerms);
+
+        this.commandsBefore = this.server.getCommandMap().getCommands().size();
+
+        this.plugin = new LoadTestPlugin(new JavaPluginLoader(this.server.getServer()), dataFolder);
+        long start = System.nanoTime();
+        this.plugin.enable();
+        System.out.println("Enabled in " + millis(System.nanoTime() - start) + "ms");
+    }
+
+    private void disable() throws InterruptedException {
+        this.plugin.disable();
+
+        // everything we registered should be gone again, and the lp command left in place
+        int leaked = this.server.getCommandMap().getCommands().size() - this.commandsBefore;
+        boolean restored = this.server.getCommandMap().getCommand("lp") == this.luckPerms;
+        System.out.println("Commands left after disable: " + leaked + (restored ? "" : ", lp command was not restored"));
+        this.server.shutdown();
+    }
+
+    private void run(long duration, boolean report) throws InterruptedException {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, this.rate * TimeUnit.NANOSECONDS.toSeconds(duration) + 1024);
+        LatencyRecorder latencies = new LatencyRecorder(capacity);
+        LatencyRecorder ticks = new LatencyRecorder((int) (duration / TICK_NANOS) + 1024);
+        LongAdder failures = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        long appliedBefore = this.luckPerms.getApplied() + this.luckPerms.getReadOnly();
+
+        long mainAllocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long issued = this.mode.equals("sync")
+                ? runSync(start, duration, latencies, ticks, failures)
+                : runAsync(start, duration, latencies, ticks, failures, allocated);
+        long elapsed = System.nanoTime() - start;
+        allocated.add(allocatedBytes() - mainAllocatedBefore);
+        this.offset += issued;
+
+        if (!report) {
+            return;
+        }
+
+        long[] sorted = latencies.sorted();
+        long[] tickTimes = ticks.sorted();
+        long completed = sorted.length;
+        System.out.println();
+        System.out.println("Issued:      " + issued + " commands (" + failures.sum() + " failed)");
+        System.out.println("Throughput:  " + String.format("%.1f", completed / (elapsed / 1e9)) + " commands/s");
+        System.out.println("Latency:     p50 " + millis(LatencyRecorder.percentile(sorted, 50))
+                + "ms, p99 " + millis(LatencyRecorder.percentile(sorted, 99))
+                + "ms, p99.9 " + millis(LatencyRecorder.percentile(sorted, 99.9))
+                + "ms, max " + millis(LatencyRecorder.percentile(sorted, 100)) + "ms");
+        System.out.println("Allocation:  " + (completed == 0 ? 0 : allocated.sum() / completed) + " bytes/command");
+        System.out.println("Ticks:       " + tickTimes.length + ", p50 " + millis(LatencyRecorder.percentile(tickTimes, 50))
+                + "ms, p99 " + millis(LatencyRecorder.percentile(tickTimes, 99))
+                + "ms, max " + millis(LatencyRecorder.percentile(tickTimes, 100)) + "ms");
+        System.out.println("LuckPerms:   " + (this.luckPerms.getApplied() + this.luckPerms.getReadOnly() - appliedBefore) + " commands, "
+                + this.luckPerms.getUnknown() + " not understood, "
+                + this.luckPerms.getHolderCount() + " holders, " + this.luckPerms.getNodeCount() + " nodes");
+
+        this.plugin.getCommandQueue().sendStatus(new BenchmarkSender("LoadTest") {
+            @Override
+            public void sendMessage(String message) {
+                System.out.println(ChatColor.stripColor(message));
+            }
+        });
+    }
+
+    private long runSync(long start, long duration, LatencyRecorder latencies, LatencyRecorder ticks, LongAdder failures) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / this.rate;
+        long end = start + duration;
+        long nextTick = start;
+        long issued = 0;
+
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= nextTick) {
+                tick(ticks);
+                nextTick += TICK_NANOS;
+                continue;
+            }
+
+            long due = start + issued * interval;
+            if (due >= end) {
+                return issued;
+            }
+            if (now < due) {
+                LockSupport.parkNanos(Math.min(due, nextTick) - now);
+                continue;
+            }
+
+            long index = this.offset + issued;
+            try {
+                this.server.getServer().dispatchCommand(this.senders[(int) (index % this.senders.length)], this.corpus.get(index));
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+            latencies.record(System.nanoTime() - due);
+            issued++;
+        }
+    }
+
+    private long runAsync(long start, long duration, LatencyRecorder latencies, LatencyRecorder ticks, LongAdder failures, LongAdder allocated) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / this.rate;
+        long end = start + duration;
+        long total = (duration + interval - 1) / interval;
+        LongAdder completed = new LongAdder();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < this.producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = producer; i < total; i += this.producers) {
+                    long due = start + i * interval;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+
+                    long index = this.offset + i;
+                    this.plugin.submit(this.senders[(int) (index % this.senders.length)], this.corpus.get(index)).whenComplete((result, ex) -> {
+                        latencies.record(System.nanoTime() - due);
+                        if (ex != null) {
+                            failures.increment();
+                        }
+                        completed.increment();
+                    });
+                }
+                allocated.add(allocatedBytes());
+            }, "LoadTest Producer " + p);
+            threads.add(thread);
+            thread.start();
+        }
+
+        // keep ticking until every submission has completed, or the queue has clearly stalled
+        long deadline = end + TimeUnit.SECONDS.toNanos(30);
+        long nextTick = start;
+        while (completed.sum() < total && System.nanoTime() < deadline) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+            tick(ticks);
+            nextTick += TICK_NANOS;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return total;
+    }
+
+    private void tick(LatencyRecorder ticks) {
+        long start = System.nanoTime();
+        this.server.tick();
+        ticks.record(System.nanoTime() - start);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected '--option value', got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int def) {
+        String value = options.get(name);
+        return value == null ? def : Integer.parseInt(value);
+    }
+}
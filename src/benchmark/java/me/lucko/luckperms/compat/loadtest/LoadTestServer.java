@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.loadtest;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A minimal server, just capable enough to load the plugin and dispatch commands.
+ *
+ * <p>The real {@link SimplePluginManager} and {@link SimpleCommandMap} are used,
+ * so commands go through the same registration and dispatch path as on a real
+ * server. The scheduler and everything else are stubbed. Calls to anything the
+ * stub doesn't support fail with an {@link UnsupportedOperationException}.</p>
+ *
+ * <p>The thread which creates the server acts as the main thread, and has to
+ * call {@link #tick()} every 50ms.</p>
+ */
+public class LoadTestServer {
+    private static final Logger LOGGER = Logger.getLogger("LoadTest");
+
+    private final Thread mainThread = Thread.currentThread();
+    private final Server server;
+    private final SimpleCommandMap commandMap;
+    private final SimplePluginManager pluginManager;
+    private final BukkitScheduler scheduler;
+    private final ServicesManager servicesManager;
+    private final File worldContainer;
+
+    // scheduler state
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final Queue<ScheduledTask> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final List<ScheduledTask> syncTasks = new ArrayList<>();
+    private final ExecutorService asyncWorkers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "LoadTest Async Worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long currentTick = 0;
+
+    public LoadTestServer(File worldContainer) {
+        this.worldContainer = worldContainer;
+        this.server = proxy(Server.class, this::handleServer);
+        this.scheduler = proxy(BukkitScheduler.class, this::handleScheduler);
+        this.servicesManager = proxy(ServicesManager.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getRegistration":
+                    // no LuckPerms API, so changes are applied through commands
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("ServicesManager#" + method.getName());
+            }
+        });
+
+        Bukkit.setServer(this.server);
+        this.commandMap = new SimpleCommandMap(this.server);
+        this.pluginManager = new SimplePluginManager(this.server, this.commandMap);
+    }
+
+    public Server getServer() {
+        return this.server;
+    }
+
+    public SimpleCommandMap getCommandMap() {
+        return this.commandMap;
+    }
+
+    /**
+     * Adds a plugin which only exists to be found by name, e.g. a fake LuckPerms.
+     *
+     * @param name the plugin name
+     * @param version the plugin version
+     * @return the plugin
+     */
+    @SuppressWarnings("unchecked")
+    public Plugin addDummyPlugin(String name, String version) {
+        PluginDescriptionFile description = new PluginDescriptionFile(name, version, "loadtest." + name);
+        Plugin plugin = proxy(Plugin.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getDescription":
+                    return description;
+                case "getName":
+                    return name;
+                case "isEnabled":
+                    return true;
+                case "getServer":
+                    return this.server;
+                default:
+                    throw new UnsupportedOperationException("Plugin#" + method.getName());
+            }
+        });
+
+        try {
+            Field pluginsField = SimplePluginManager.class.getDeclaredField("plugins");
+            pluginsField.setAccessible(true);
+            ((List<Plugin>) pluginsField.get(this.pluginManager)).add(plugin);
+
+            Field lookupField = SimplePluginManager.class.getDeclaredField("lookupNames");
+            lookupField.setAccessible(true);
+            ((Map<String, Plugin>) lookupField.get(this.pluginManager)).put(name, plugin);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not add plugin " + name, e);
+        }
+        return plugin;
+    }
+
+    public boolean isPrimaryThread() {
+        return Thread.currentThread() == this.mainThread;
+    }
+
+    /**
+     * Runs the sync tasks which are due in the current tick.
+     */
+    public void tick() {
+        ScheduledTask added;
+        while ((added = this.pendingTasks.poll()) != null) {
+            this.syncTasks.add(added);
+        }
+
+        long tick = this.currentTick++;
+        for (Iterator<ScheduledTask> it = this.syncTasks.iterator(); it.hasNext(); ) {
+            ScheduledTask task = it.next();
+            if (task.cancelled) {
+                it.remove();
+                continue;
+            }
+            if (task.nextRun > tick) {
+                continue;
+            }
+
+            task.task.run();
+            if (task.period > 0) {
+                task.nextRun = tick + task.period;
+            } else {
+                it.remove();
+            }
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        this.asyncWorkers.shutdown();
+        this.asyncWorkers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private Object handleServer(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return "LoadTest";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "loadtest";
+            case "getLogger":
+                return LOGGER;
+            case "getPluginManager":
+                return this.pluginManager;
+            case "getScheduler":
+                return this.scheduler;
+            case "getServicesManager":
+                return this.servicesManager;
+            case "isPrimaryThread":
+                return isPrimaryThread();
+            case "dispatchCommand":
+                return this.commandMap.dispatch((CommandSender) args[0], (String) args[1]);
+            case "getPlayerExact":
+            case "getPlayer":
+                return null;
+            case "getOnlinePlayers":
+                return Collections.emptyList();
+            case "getWorldContainer":
+                return this.worldContainer;
+            default:
+                throw new UnsupportedOperationException("Server#" + method.getName());
+        }
+    }
+
+    private Object handleScheduler(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "runTask":
+                return schedule((Runnable) args[1], 0, 0);
+            case "runTaskLater":
+                return schedule((Runnable) args[1], (long) args[2], 0);
+            case "runTaskTimer":
+                return schedule((Runnable) args[1], (long) args[2], (long) args[3]);
+            case "runTaskAsynchronously":
+                ScheduledTask task = new ScheduledTask(this.taskIds.incrementAndGet(), (Runnable) args[1], false, 0, 0);
+                this.asyncWorkers.execute(() -> {
+                    if (!task.cancelled) {
+                        task.task.run();
+                    }
+                });
+                return task.handle;
+            case "cancelTasks":
+                for (ScheduledTask scheduled : this.syncTasks) {
+                    scheduled.cancelled = true;
+                }
+                return null;
+            default:
+                throw new UnsupportedOperationException("BukkitScheduler#" + method.getName());
+        }
+    }
+
+    private BukkitTask schedule(Runnable runnable, long delay, long period) {
+        ScheduledTask task = new ScheduledTask(this.taskIds.incrementAndGet(), runnable, true, this.currentTick + delay, period);
+        this.pendingTasks.add(task);
+        return task.handle;
+    }
+
+    private final class ScheduledTask {
+        private final Runnable task;
+        private final long period;
+        private final BukkitTask handle;
+        private long nextRun;
+        private volatile boolean cancelled = false;
+
+        private ScheduledTask(int id, Runnable task, boolean sync, long nextRun, long period) {
+            this.task = task;
+            this.nextRun = nextRun;
+            this.period = period;
+            this.handle = proxy(BukkitTask.class, (method, args) -> {
+                switch (method.getName()) {
+                    case "getTaskId":
+                        return id;
+                    case "isSync":
+                        return sync;
+                    case "isCancelled":
+                        return this.cancelled;
+                    case "cancel":
+                        this.cancelled = true;
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException("BukkitTask#" + method.getName());
+                }
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(Method method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(LoadTestServer.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "@LoadTest";
+                }
+            }
+            return handler.handle(method, args);
+        }));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.permissionsex;
+
+import me.lucko.luckperms.compat.BenchmarkPlugin;
+import me.lucko.luckperms.compat.BenchmarkSender;
+import me.lucko.luckperms.compat.DialectConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each PermissionsEx mapping, split into matching the arguments
+ * against a mapping, performing the matched mapping, and the two combined.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionsExBenchmark {
+
+    @Param({
+            "toggle debug",
+            "user Luck toggle debug",
+            "user Luck check some.permission",
+            "reload",
+            "config",
+            "backend",
+            "import",
+            "world",
+            "worlds",
+            "users",
+            "user Luck list",
+            "user Luck prefix &c[Admin]",
+            "user Luck suffix &7",
+            "user Luck delete",
+            "user Luck add some.permission",
+            "user Luck add some.permission world_nether",
+            "user Luck remove some.permission world_nether",
+            "user Luck timed add some.permission 3600 world",
+            "user Luck timed remove some.permission 3600",
+            "user Luck set option value world",
+            "user Luck group list",
+            "user Luck group add admin",
+            "user Luck group add admin world 3600",
+            "user Luck group set admin",
+            "user Luck group remove admin world",
+            "default group",
+            "set default group",
+            "groups",
+            "groups list",
+            "group admin prefix &c[Admin]",
+            "group admin suffix &7",
+            "group admin create",
+            "group admin delete",
+            "group admin parents list",
+            "group admin parents set mod,helper",
+            "group admin list",
+            "group admin add some.permission world",
+            "group admin remove some.permission",
+            "group admin timed add some.permission 3600",
+            "group admin timed remove some.permission 3600 world",
+            "group admin set option value",
+            "group admin weight 10",
+            "group admin users",
+            // the last mappings in the list, and so the slowest to find with linear matching
+            "group admin user add Luck",
+            "group admin user remove Luck",
+            "promote Luck staff",
+            "demote Luck staff",
+            // no mapping matches, so the usage is sent instead
+            "user Luck unknown"
+    })
+    public String invocation;
+
+    private BenchmarkPlugin plugin;
+    private BenchmarkSender sender;
+    private PermissionsExCommandExecutor executor;
+    private PermissionsExDispatcher dispatcher;
+    private PermissionsExCommand command;
+    private String[] args;
+
+    @Setup
+    public void setup() {
+        this.plugin = BenchmarkPlugin.create();
+        this.plugin.registerDialect(PermissionsExMapping.createDialect(this.plugin, DialectConfig.ALL));
+
+        this.args = this.invocation.split(" ");
+        this.executor = (PermissionsExCommandExecutor) this.plugin.getRegisteredCommand("pex");
+        this.dispatcher = this.executor.getDispatcher();
+        this.command = this.dispatcher.match(this.args);
+        this.sender = new BenchmarkSender("Benchmark");
+    }
+
+    @Benchmark
+    public boolean onCommand() {
+        return this.executor.onCommand(this.sender, null, "pex", this.args);
+    }
+
+    @Benchmark
+    public PermissionsExCommand match() {
+        return this.dispatcher.match(this.args);
+    }
+
+    @Benchmark
+    public long perform() {
+        if (this.command != null) {
+            this.command.perform(this.sender, this.args);
+        }
+        return this.plugin.getExecuted();
+    }
+}
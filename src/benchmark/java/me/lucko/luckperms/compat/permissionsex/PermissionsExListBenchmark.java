@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.permissionsex;
+
+import me.lucko.luckperms.compat.BenchmarkPlugin;
+import me.lucko.luckperms.compat.BenchmarkSender;
+import me.lucko.luckperms.compat.DialectConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the PermissionsEx mappings which accept a comma separated list,
+ * at increasing list widths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionsExListBenchmark {
+
+    @Param({"group admin parents set", "group admin user add", "group admin user remove"})
+    public String mapping;
+
+    @Param({"1", "8", "64", "512"})
+    public int width;
+
+    private BenchmarkPlugin plugin;
+    private BenchmarkSender sender;
+    private PermissionsExCommandExecutor executor;
+    private String[] args;
+
+    @Setup
+    public void setup() {
+        this.plugin = BenchmarkPlugin.create();
+        this.plugin.registerDialect(PermissionsExMapping.createDialect(this.plugin, DialectConfig.ALL));
+
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < this.width; i++) {
+            values.add("entry" + i);
+        }
+
+        this.args = (this.mapping + " " + String.join(",", values)).split(" ");
+        this.executor = (PermissionsExCommandExecutor) this.plugin.getRegisteredCommand("pex");
+        this.sender = new BenchmarkSender("Benchmark");
+    }
+
+    @Benchmark
+    public long onCommand() {
+        this.executor.onCommand(this.sender, null, "pex", this.args);
+        return this.plugin.getExecuted();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only view of the arguments passed to a remapped command.
+ *
+ * <p>Values are read directly from the raw argument array, using the slots
+ * resolved by {@link Parameters}. Missing optional values are returned as
+ * {@code null}.</p>
+ */
+public final class Arguments {
+    private final Parameters parameters;
+    private final String[] args;
+
+    Arguments(Parameters parameters, String[] args) {
+        this.parameters = parameters;
+        this.args = args;
+    }
+
+    /**
+     * Gets the value in a slot
+     *
+     * @param slot the slot index
+     * @return the value, or null if it wasn't given
+     */
+    public String get(int slot) {
+        int position = this.parameters.getPosition(slot);
+        return position < this.args.length ? this.args[position] : null;
+    }
+
+    /**
+     * Gets if a value was given for a slot
+     *
+     * @param slot the slot index
+     * @return true if the value is present
+     */
+    public boolean isPresent(int slot) {
+        return this.parameters.getPosition(slot) < this.args.length;
+    }
+
+    /**
+     * Gets the value of a named parameter. Prefer {@link #get(int)}.
+     *
+     * @param name the parameter name
+     * @return the value, or null if it wasn't given or there is no such parameter
+     */
+    public String get(String name) {
+        int slot = this.parameters.indexOf(name);
+        return slot == -1 ? null : get(slot);
+    }
+
+    /**
+     * Gets the raw arguments this view reads from
+     *
+     * @return the raw arguments
+     */
+    String[] getRaw() {
+        return this.args;
+    }
+
+    /**
+     * Gets the parameters this view was created for
+     *
+     * @return the parameters
+     */
+    public Parameters getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Copies the present values into a map, keyed by parameter name
+     *
+     * @return a map of the arguments
+     */
+    public Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < this.parameters.size(); i++) {
+            String value = get(i);
+            if (value != null) {
+                map.put(this.parameters.getName(i), value);
+            }
+        }
+        return map;
+    }
+}
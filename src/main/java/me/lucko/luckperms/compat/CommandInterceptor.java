@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Handles remapped commands by intercepting them before they reach the
+ * server's command map, instead of registering a command for every alias.
+ *
+ * <p>Commands namespaced with another plugin's name (e.g. /groupmanager:manuadd)
+ * are left alone.</p>
+ *
+ * <p>Commands are picked up at the highest priority, so other plugins, e.g. those
+ * which mute or jail players, can still cancel or rewrite them first.</p>
+ */
+public class CommandInterceptor implements Listener {
+
+    // the namespace which can be used to force our commands, e.g. /luckpermscompat:manuadd
+    private final String namespace;
+
+    private volatile CommandLabelIndex<RemappedCommand> index = CommandLabelIndex.of(Collections.emptyMap());
+
+    public CommandInterceptor(LuckPermsCompat plugin) {
+        this.namespace = plugin.getDescription().getName().toLowerCase(Locale.ROOT) + ":";
+    }
+
+    /**
+     * Replaces the intercepted commands
+     *
+     * @param commands the commands, keyed by alias
+     */
+    public void setCommands(Map<String, ? extends RemappedCommand> commands) {
+        this.index = CommandLabelIndex.of(commands);
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent e) {
+        String message = e.getMessage();
+        if (message.startsWith("/") && handle(e.getPlayer(), message, 1)) {
+            e.setCancelled(true);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onServerCommand(ServerCommandEvent e) {
+        String command = e.getCommand();
+        int start = command.startsWith("/") ? 1 : 0;
+        if (handle(e.getSender(), command, start)) {
+            e.setCancelled(true);
+        }
+    }
+
+    /**
+     * Handles a command line, if it is one of ours
+     *
+     * @param sender the sender
+     * @param commandLine the command line
+     * @param start the start of the label
+     * @return true if the command was handled
+     */
+    private boolean handle(CommandSender sender, String commandLine, int start) {
+        int end = commandLine.indexOf(' ', start);
+        if (end == -1) {
+            end = commandLine.length();
+        }
+        if (commandLine.regionMatches(true, start, this.namespace, 0, this.namespace.length())) {
+            start += this.namespace.length();
+        }
+
+        RemappedCommand command = this.index.get(commandLine, start, end);
+        if (command == null) {
+            return false;
+        }
+
+        // split the same way as the command map would
+        String label = commandLine.substring(start, end);
+        String[] args = end >= commandLine.length() ? new String[0] : commandLine.substring(end + 1).split(" ");
+        command.dispatch(sender, label, args);
+        return true;
+    }
+
+}
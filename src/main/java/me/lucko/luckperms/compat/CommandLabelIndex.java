@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, case-insensitive index of command labels.
+ *
+ * <p>The labels are stored as a trie flattened into a few arrays, so a label
+ * can be looked up directly from a region of a command line, without
+ * substring or lowercase copies. Most lookups made for chat commands miss, and
+ * return after the first character or two.</p>
+ *
+ * @param <T> the value type
+ */
+public final class CommandLabelIndex<T> {
+
+    /**
+     * Builds an index of the given labels.
+     *
+     * @param labels the values, keyed by label
+     * @param <T> the value type
+     * @return an index
+     */
+    public static <T> CommandLabelIndex<T> of(Map<String, ? extends T> labels) {
+        Node root = new Node();
+        for (Map.Entry<String, ? extends T> e : labels.entrySet()) {
+            Node node = root;
+            for (char c : e.getKey().toLowerCase(Locale.ROOT).toCharArray()) {
+                node = node.children.computeIfAbsent(c, x -> new Node());
+            }
+            node.value = e.getValue();
+        }
+
+        // number the nodes breadth first, so each node's edges are stored contiguously
+        List<Node> nodes = new ArrayList<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            node.id = nodes.size();
+            nodes.add(node);
+            queue.addAll(node.children.values());
+        }
+
+        int[] edgeStart = new int[nodes.size() + 1];
+        char[] edgeChars = new char[nodes.size() - 1];
+        int[] edgeTargets = new int[nodes.size() - 1];
+        Object[] values = new Object[nodes.size()];
+
+        int edge = 0;
+        for (Node node : nodes) {
+            edgeStart[node.id] = edge;
+            for (Map.Entry<Character, Node> e : node.children.entrySet()) {
+                edgeChars[edge] = e.getKey();
+                edgeTargets[edge] = e.getValue().id;
+                edge++;
+            }
+            values[node.id] = node.value;
+        }
+        edgeStart[nodes.size()] = edge;
+
+        return new CommandLabelIndex<>(edgeStart, edgeChars, edgeTargets, values, labels.size());
+    }
+
+    // the edges of node n are edgeChars/edgeTargets[edgeStart[n], edgeStart[n + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final Object[] values;
+    private final int size;
+
+    private CommandLabelIndex(int[] edgeStart, char[] edgeChars, int[] edgeTargets, Object[] values, int size) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Gets the value for a label
+     *
+     * @param label the label
+     * @return the value, or null if the label isn't indexed
+     */
+    public T get(String label) {
+        return get(label, 0, label.length());
+    }
+
+    /**
+     * Gets the value for the label in a region of a string
+     *
+     * @param s the string, e.g. a command line
+     * @param start the start of the label, inclusive
+     * @param end the end of the label, exclusive
+     * @return the value, or null if the label isn't indexed
+     */
+    @SuppressWarnings("unchecked")
+    public T get(CharSequence s, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(s.charAt(i));
+            int from = this.edgeStart[node];
+            int to = this.edgeStart[node + 1];
+            int edge = Arrays.binarySearch(this.edgeChars, from, to, c);
+            if (edge < 0) {
+                return null;
+            }
+            node = this.edgeTargets[edge];
+        }
+        return (T) this.values[node];
+    }
+
+    /**
+     * Gets the number of labels in the index
+     *
+     * @return the label count
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private Object value = null;
+        private int id;
+    }
+
+}
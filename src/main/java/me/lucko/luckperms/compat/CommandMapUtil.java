@@ -25,6 +25,8 @@
 
 package me.lucko.luckperms.compat;
 
+import lombok.AllArgsConstructor;
+
 import com.google.common.base.Preconditions;
 
 import org.bukkit.Bukkit;
@@ -35,11 +37,19 @@ import org.bukkit.command.PluginCommand;
 import org.bukkit.command.SimpleCommandMap;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.SimplePluginManager;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -47,54 +57,44 @@ import java.util.Map;
  */
 public final class CommandMapUtil {
 
-    private static final Constructor<PluginCommand> COMMAND_CONSTRUCTOR;
-    private static final Field COMMAND_MAP_FIELD;
-    private static final Field KNOWN_COMMANDS_FIELD;
+    private static final MethodHandle COMMAND_CONSTRUCTOR;
+    private static final MethodHandle COMMAND_MAP_GETTER;
+    private static final MethodHandle KNOWN_COMMANDS_GETTER;
 
     static {
-        Constructor<PluginCommand> commandConstructor;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
         try {
-            commandConstructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+            Constructor<PluginCommand> commandConstructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
             commandConstructor.setAccessible(true);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        }
-        COMMAND_CONSTRUCTOR = commandConstructor;
+            COMMAND_CONSTRUCTOR = lookup.unreflectConstructor(commandConstructor);
 
-        Field commandMapField;
-        try {
-            commandMapField = SimplePluginManager.class.getDeclaredField("commandMap");
+            Field commandMapField = SimplePluginManager.class.getDeclaredField("commandMap");
             commandMapField.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException(e);
-        }
-        COMMAND_MAP_FIELD = commandMapField;
+            COMMAND_MAP_GETTER = lookup.unreflectGetter(commandMapField).asType(MethodType.methodType(CommandMap.class, Object.class));
 
-        Field knownCommandsField;
-        try {
-            knownCommandsField = SimpleCommandMap.class.getDeclaredField("knownCommands");
+            Field knownCommandsField = SimpleCommandMap.class.getDeclaredField("knownCommands");
             knownCommandsField.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException(e);
+            KNOWN_COMMANDS_GETTER = lookup.unreflectGetter(knownCommandsField).asType(MethodType.methodType(Map.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
         }
-        KNOWN_COMMANDS_FIELD = knownCommandsField;
     }
 
-    private static CommandMap getCommandMap() {
-        try {
-            return (CommandMap) COMMAND_MAP_FIELD.get(Bukkit.getServer().getPluginManager());
-        } catch (Exception e) {
-            throw new RuntimeException("Could not get CommandMap", e);
-        }
-    }
+    // the keys installed by us, and the same registrations grouped by executor
+    private static final Map<String, Registration> REGISTRATIONS = new HashMap<>();
+    private static final Map<CommandExecutor, List<Registration>> BY_EXECUTOR = new IdentityHashMap<>();
 
-    private static Map<String, Command> getKnownCommandMap() {
-        try {
-            //noinspection unchecked
-            return (Map<String, Command>) KNOWN_COMMANDS_FIELD.get(getCommandMap());
-        } catch (Exception e) {
-            throw new RuntimeException("Could not get known commands map", e);
+    // the command map of the current plugin manager, resolved on first use
+    private static volatile Access access = null;
+
+    private static Access access() {
+        PluginManager pluginManager = Bukkit.getServer().getPluginManager();
+        Access access = CommandMapUtil.access;
+        if (access == null || access.pluginManager != pluginManager) {
+            access = new Access(pluginManager);
+            CommandMapUtil.access = access;
         }
+        return access;
     }
 
     /**
@@ -108,55 +108,157 @@ public final class CommandMapUtil {
      */
     public static <T extends CommandExecutor> T registerCommand(Plugin plugin, T command, String... aliases) {
         Preconditions.checkArgument(aliases.length != 0, "No aliases");
+        Map<String, CommandExecutor> commands = new LinkedHashMap<>();
         for (String alias : aliases) {
+            commands.put(alias, command);
+        }
+        registerCommands(plugin, commands);
+        return command;
+    }
+
+    /**
+     * Registers a number of CommandExecutors with the server in one pass
+     *
+     * @param plugin the plugin instance
+     * @param commands the command executors, keyed by alias
+     */
+    public static synchronized void registerCommands(Plugin plugin, Map<String, ? extends CommandExecutor> commands) {
+        Access access = access();
+        String fallbackPrefix = plugin.getDescription().getName();
+        String namespace = fallbackPrefix.toLowerCase() + ":";
+
+        for (Map.Entry<String, ? extends CommandExecutor> e : commands.entrySet()) {
+            String alias = e.getKey().toLowerCase();
+            CommandExecutor command = e.getValue();
+            String[] keys = {namespace + alias, alias};
             try {
-                PluginCommand cmd = COMMAND_CONSTRUCTOR.newInstance(alias, plugin);
+                // release our own previous registration first, so the command it displaced is carried over
+                Command[] displaced = new Command[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    release(REGISTRATIONS.get(keys[i]));
+                    displaced[i] = access.knownCommands.get(keys[i]);
+                }
+
+                PluginCommand cmd = (PluginCommand) COMMAND_CONSTRUCTOR.invokeExact(e.getKey(), plugin);
 
-                getCommandMap().register(plugin.getDescription().getName(), cmd);
-                getKnownCommandMap().put(plugin.getDescription().getName().toLowerCase() + ":" + alias.toLowerCase(), cmd);
-                getKnownCommandMap().put(alias.toLowerCase(), cmd);
-                cmd.setLabel(alias.toLowerCase());
+                access.commandMap.register(fallbackPrefix, cmd);
+                for (String key : keys) {
+                    access.knownCommands.put(key, cmd);
+                }
+                cmd.setLabel(alias);
 
                 cmd.setExecutor(command);
                 if (command instanceof TabCompleter) {
                     cmd.setTabCompleter((TabCompleter) command);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+
+                List<Registration> registrations = BY_EXECUTOR.computeIfAbsent(command, c -> new ArrayList<>());
+                for (int i = 0; i < keys.length; i++) {
+                    Registration registration = new Registration(access, plugin, command, cmd, keys[i], displaced[i]);
+                    REGISTRATIONS.put(keys[i], registration);
+                    registrations.add(registration);
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
             }
         }
-        return command;
     }
 
     /**
-     * Unregisters a CommandExecutor with the server
+     * Unregisters a CommandExecutor with the server, restoring any commands it displaced
      *
      * @param command the command instance
      * @param <T> the command executor class type
      * @return the command executor
      */
-    public static <T extends CommandExecutor> T unregisterCommand(T command) {
-        CommandMap map = getCommandMap();
-        try {
-            //noinspection unchecked
-            Map<String, Command> knownCommands = (Map<String, Command>) KNOWN_COMMANDS_FIELD.get(map);
-
-            Iterator<Command> iterator = knownCommands.values().iterator();
-            while (iterator.hasNext()) {
-                Command cmd = iterator.next();
-                if (cmd instanceof PluginCommand) {
-                    CommandExecutor executor = ((PluginCommand) cmd).getExecutor();
-                    if (command == executor) {
-                        cmd.unregister(map);
-                        iterator.remove();
-                    }
+    public static synchronized <T extends CommandExecutor> T unregisterCommand(T command) {
+        List<Registration> registrations = BY_EXECUTOR.get(command);
+        if (registrations != null) {
+            for (Registration registration : new ArrayList<>(registrations)) {
+                release(registration);
+            }
+        }
+        return command;
+    }
+
+    /**
+     * Unregisters every CommandExecutor registered by a plugin
+     *
+     * @param plugin the plugin instance
+     */
+    public static synchronized void unregisterCommands(Plugin plugin) {
+        List<Registration> registrations = new ArrayList<>();
+        for (List<Registration> list : BY_EXECUTOR.values()) {
+            for (Registration registration : list) {
+                if (registration.plugin == plugin) {
+                    registrations.add(registration);
                 }
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Could not unregister command", e);
         }
+        for (Registration registration : registrations) {
+            release(registration);
+        }
+    }
 
-        return command;
+    private static void release(Registration registration) {
+        if (registration == null) {
+            return;
+        }
+
+        REGISTRATIONS.remove(registration.key);
+        List<Registration> registrations = BY_EXECUTOR.get(registration.executor);
+        if (registrations != null) {
+            registrations.remove(registration);
+            if (registrations.isEmpty()) {
+                BY_EXECUTOR.remove(registration.executor);
+            }
+        }
+
+        // leave the key alone if something else has been registered over us since
+        Map<String, Command> knownCommands = registration.access.knownCommands;
+        if (knownCommands.get(registration.key) == registration.command) {
+            if (registration.displaced != null) {
+                knownCommands.put(registration.key, registration.displaced);
+            } else {
+                knownCommands.remove(registration.key);
+            }
+        }
+        registration.command.unregister(registration.access.commandMap);
+    }
+
+    /**
+     * A key installed in the known commands map by {@link #registerCommands(Plugin, Map)}
+     */
+    @AllArgsConstructor
+    private static final class Registration {
+        private final Access access;
+        private final Plugin plugin;
+        private final CommandExecutor executor;
+        private final PluginCommand command;
+        private final String key;
+
+        // the command previously bound to the key, if any
+        private final Command displaced;
+    }
+
+    /**
+     * The command map and its known commands, for one plugin manager
+     */
+    private static final class Access {
+        private final PluginManager pluginManager;
+        private final CommandMap commandMap;
+        private final Map<String, Command> knownCommands;
+
+        @SuppressWarnings("unchecked")
+        private Access(PluginManager pluginManager) {
+            this.pluginManager = pluginManager;
+            try {
+                this.commandMap = (CommandMap) COMMAND_MAP_GETTER.invokeExact((Object) pluginManager);
+                this.knownCommands = (Map<String, Command>) KNOWN_COMMANDS_GETTER.invokeExact((Object) this.commandMap);
+            } catch (Throwable t) {
+                throw new RuntimeException("Could not get CommandMap", t);
+            }
+        }
     }
 
     private CommandMapUtil() {
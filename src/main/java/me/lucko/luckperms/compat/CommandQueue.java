@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import me.lucko.luckperms.compat.backend.BackendType;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Accepts remapped commands from any thread, and runs them on a thread they
+ * can safely be executed on.
+ *
+ * <p>Submissions are pushed onto a lock-free queue, which is drained on the
+ * main thread once per tick. Mappings which do nothing but apply operations
+ * through the API backend don't need the main thread, so are handed to a single
+ * worker thread instead. It runs them in the order they were submitted, each once the
+ * changes made by the one before have been applied.</p>
+ *
+ * <p>Each tick, the queue only runs for as long as the tick budget allows.
+ * Whatever is left over waits for the next tick, and time spent over the
+ * budget is taken from the next tick's allowance.</p>
+ */
+public class CommandQueue implements Runnable {
+
+    // how long the API worker waits for a command's changes to be applied, before moving on
+    private static final long APPLY_TIMEOUT_SECONDS = 30;
+
+    private final LuckPermsCompat plugin;
+
+    // the time the queue may run for each tick, in nanoseconds
+    private final long tickBudget;
+
+    // if commands sent by non-players on the main thread should be queued too
+    private final boolean deferConsole;
+
+    // tasks waiting to be run on the main thread. many producers, one consumer
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+
+    // runs commands which use the API backend, one at a time
+    private final ExecutorService apiWorker = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("LuckPermsCompat API Worker")
+            .setDaemon(true)
+            .build());
+
+    // time overrun in the previous tick, as a negative number of nanoseconds
+    private long carry = 0;
+
+    private BukkitTask task = null;
+
+    // stats, only written on the main thread
+    private volatile int lastTickExecuted = 0;
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+    private volatile long maxCommandNanos = 0;
+    private volatile long totalExecuted = 0;
+    private volatile long totalNanos = 0;
+
+    /**
+     * Creates a new queue
+     *
+     * @param plugin the plugin
+     * @param tickBudgetMillis the time the queue may run for each tick, or 0 for no limit
+     * @param deferConsole if commands sent by non-players on the main thread should be queued
+     */
+    public CommandQueue(LuckPermsCompat plugin, double tickBudgetMillis, boolean deferConsole) {
+        this.plugin = plugin;
+        this.tickBudget = tickBudgetMillis <= 0 ? Long.MAX_VALUE : (long) (tickBudgetMillis * 1_000_000L);
+        this.deferConsole = deferConsole;
+    }
+
+    /**
+     * Starts draining the queue every tick
+     */
+    public void start() {
+        this.task = this.plugin.getServer().getScheduler().runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    /**
+     * Stops the drain task, and runs anything still queued on the calling thread.
+     * Commands already handed to the API worker still run.
+     */
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        this.apiWorker.shutdown();
+
+        Runnable next;
+        while ((next = poll()) != null) {
+            runSafely(next);
+        }
+    }
+
+    /**
+     * Gets if a command sent by the given sender on the current thread should
+     * be submitted to the queue, rather than executed immediately.
+     *
+     * @param sender the command sender
+     * @return true if the command should be queued
+     */
+    public boolean shouldQueue(CommandSender sender) {
+        return !this.plugin.getServer().isPrimaryThread() || (this.deferConsole && !(sender instanceof Player));
+    }
+
+    /**
+     * Submits a remapped command for execution.
+     *
+     * @param sender the command sender
+     * @param command the command
+     * @param label the label the command was called with
+     * @param args the command arguments
+     * @return a future completed with the result of {@link RemappedCommand#execute(CommandSender, String, String[])}
+     */
+    public CompletableFuture<Boolean> submit(CommandSender sender, RemappedCommand command, String label, String[] args) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Runnable submission = () -> {
+            try {
+                future.complete(command.execute(sender, label, args));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+
+        MappingContext context = command.resolve(args);
+        if (context != null && context.isOperationsOnly() && context.getExecutionBackend().getType() == BackendType.API) {
+            this.apiWorker.execute(() -> awaitApplied(MappingContext.whenApplied(submission)));
+        } else {
+            runSync(submission);
+        }
+        return future;
+    }
+
+    /**
+     * Schedules a task to run on the main thread.
+     *
+     * @param task the task
+     */
+    public void runSync(Runnable task) {
+        this.queue.add(task);
+        this.depth.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of tasks waiting for the main thread
+     *
+     * @return the queue size
+     */
+    public int size() {
+        return this.depth.get();
+    }
+
+    @Override
+    public void run() {
+        long allowance = this.tickBudget + this.carry;
+        long spent = 0;
+        int executed = 0;
+
+        Runnable next;
+        while (spent < allowance && (next = poll()) != null) {
+            long start = System.nanoTime();
+            runSafely(next);
+            long elapsed = System.nanoTime() - start;
+
+            spent += elapsed;
+            executed++;
+            if (elapsed > this.maxCommandNanos) {
+                this.maxCommandNanos = elapsed;
+            }
+        }
+
+        // an overrun is paid back from the next tick, but never more than a whole tick
+        this.carry = spent > allowance ? Math.max(allowance - spent, -this.tickBudget) : 0;
+
+        if (executed != 0) {
+            this.totalExecuted += executed;
+            this.totalNanos += spent;
+            if (spent > this.maxTickNanos) {
+                this.maxTickNanos = spent;
+            }
+        }
+        this.lastTickExecuted = executed;
+        this.lastTickNanos = spent;
+    }
+
+    // the next command isn't run until this one's changes are applied, so they can't be reordered
+    private void awaitApplied(CompletableFuture<Void> applied) {
+        try {
+            applied.get(APPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // reported by the mapping
+        } catch (TimeoutException e) {
+            this.plugin.getLogger().warning("Changes made by a queued command took more than " + APPLY_TIMEOUT_SECONDS + "s to apply, running the next command anyway");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Runnable poll() {
+        Runnable next = this.queue.poll();
+        if (next != null) {
+            this.depth.decrementAndGet();
+        }
+        return next;
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            this.plugin.getLogger().log(Level.SEVERE, "Exception whilst running queued command", t);
+        }
+    }
+
+    /**
+     * Sends the current state of the queue to a sender
+     *
+     * @param sender the sender
+     */
+    public void sendStatus(CommandSender sender) {
+        LuckPermsCompat.msg(sender, "&bCommand queue:");
+        LuckPermsCompat.msg(sender, "&7- Queued: &f" + size());
+        LuckPermsCompat.msg(sender, "&7- Tick budget: &f" + (this.tickBudget == Long.MAX_VALUE ? "unlimited" : formatMillis(this.tickBudget)));
+        LuckPermsCompat.msg(sender, "&7- Last tick: &f" + this.lastTickExecuted + " &7commands in &f" + formatMillis(this.lastTickNanos));
+        LuckPermsCompat.msg(sender, "&7- Slowest tick: &f" + formatMillis(this.maxTickNanos) + "&7, slowest command: &f" + formatMillis(this.maxCommandNanos));
+
+        long executed = this.totalExecuted;
+        long mean = executed == 0 ? 0 : this.totalNanos / executed;
+        LuckPermsCompat.msg(sender, "&7- Total: &f" + executed + " &7commands in &f" + formatMillis(this.totalNanos) + "&7, mean &f" + formatMillis(mean));
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+}
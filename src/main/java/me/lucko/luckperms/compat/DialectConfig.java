@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import com.google.common.collect.ImmutableSet;
+
+import me.lucko.luckperms.compat.backend.BackendType;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The configuration of a command dialect, read from the 'dialects' section of the config.
+ */
+@Getter
+@RequiredArgsConstructor
+public final class DialectConfig {
+
+    /**
+     * Every command enabled, using the default backend
+     */
+    public static final DialectConfig ALL = new DialectConfig(true, ImmutableSet.of(), null);
+
+    /**
+     * Reads the configuration of a dialect. Missing values are taken from {@link #ALL}.
+     *
+     * @param section the section, may be null
+     * @return the configuration
+     * @throws IllegalArgumentException if the backend is unknown
+     */
+    public static DialectConfig load(ConfigurationSection section) {
+        if (section == null) {
+            return ALL;
+        }
+
+        ImmutableSet.Builder<String> disabledCommands = ImmutableSet.builder();
+        for (String command : section.getStringList("disabled-commands")) {
+            disabledCommands.add(command.trim().toLowerCase(Locale.ROOT));
+        }
+
+        String backendName = section.getString("backend", "default").toUpperCase(Locale.ROOT);
+        BackendType backend = null;
+        if (!backendName.equals("DEFAULT")) {
+            try {
+                backend = BackendType.valueOf(backendName);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown backend '" + section.getString("backend") + "' in " + section.getCurrentPath());
+            }
+        }
+
+        return new DialectConfig(section.getBoolean("enabled", true), disabledCommands.build(), backend);
+    }
+
+    /**
+     * If the dialect is enabled
+     */
+    private final boolean enabled;
+
+    /**
+     * The commands which shouldn't be remapped, lowercase
+     */
+    private final Set<String> disabledCommands;
+
+    /**
+     * The backend used by the dialect's mappings, or null to use the plugin default
+     */
+    private final BackendType backend;
+
+    /**
+     * Gets if a command of this dialect should be remapped
+     *
+     * @param command the command, e.g. "manuadd"
+     * @return true if the command is enabled
+     */
+    public boolean isEnabled(String command) {
+        return !this.disabledCommands.contains(command.toLowerCase(Locale.ROOT));
+    }
+
+}
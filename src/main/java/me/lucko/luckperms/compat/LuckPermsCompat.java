@@ -22,75 +22,527 @@
 
 package me.lucko.luckperms.compat;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import me.lucko.luckperms.compat.audit.AuditLog;
+import me.lucko.luckperms.compat.backend.ApiBackend;
+import me.lucko.luckperms.compat.backend.ApiNodeSource;
+import me.lucko.luckperms.compat.backend.BackendType;
+import me.lucko.luckperms.compat.backend.CommandBackend;
+import me.lucko.luckperms.compat.backend.ExecutionBackend;
+import me.lucko.luckperms.compat.backend.IdempotenceFilter;
+import me.lucko.luckperms.compat.backend.NodeSource;
+import me.lucko.luckperms.compat.check.ApiPermissionQuery;
+import me.lucko.luckperms.compat.check.PermissionChecker;
+import me.lucko.luckperms.compat.check.PermissionQuery;
+import me.lucko.luckperms.compat.completion.CompletionIndex;
+import me.lucko.luckperms.compat.completion.LuckPermsNameListener;
 import me.lucko.luckperms.compat.groupmanager.GroupManagerMapping;
+import me.lucko.luckperms.compat.importer.ImportCommand;
+import me.lucko.luckperms.compat.journal.Inverter;
+import me.lucko.luckperms.compat.journal.UndoCommand;
+import me.lucko.luckperms.compat.journal.UndoJournal;
+import me.lucko.luckperms.compat.membership.LuckPermsMembershipListener;
+import me.lucko.luckperms.compat.membership.MembershipIndex;
+import me.lucko.luckperms.compat.metrics.MetricsRegistry;
+import me.lucko.luckperms.compat.names.NameCache;
+import me.lucko.luckperms.compat.output.OutputSummariser;
 import me.lucko.luckperms.compat.permissionsex.PermissionsExMapping;
 
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 /**
  * A plugin that provides command aliases for LuckPerms commands.
  */
 public class LuckPermsCompat extends JavaPlugin implements CommandExecutor {
 
+    /**
+     * The prefix of every message sent by this plugin, already coloured
+     */
+    public static final String PREFIX = colorize("&7&l[&b&lL&3&lP&c&lC&7&l] ");
+
     // the luckperms plugin
     private Plugin luckPerms;
 
+    // the backends used to apply operations. the api backend is null if the api isn't available
+    private ExecutionBackend commandBackend;
+    private ExecutionBackend apiBackend;
+
+    // reads the data luckperms has loaded, or null if the api isn't available
+    private NodeSource nodeSource;
+
+    // skips operations which wouldn't change anything, or null if disabled
+    private IdempotenceFilter idempotenceFilter;
+
+    // runs commands submitted from other threads
+    private CommandQueue commandQueue;
+
+    // intercepts remapped commands, if they aren't registered with the server
+    private CommandInterceptor commandInterceptor;
+
+    // combines sync and reload requests made close together
+    private SyncScheduler syncScheduler;
+
+    // summarises the output of mappings which fan out into many operations
+    private OutputSummariser outputSummariser;
+
+    // imports the data of other permissions plugins
+    private ImportCommand importCommand;
+
+    // records every translated command, or null if disabled
+    private AuditLog auditLog;
+
+    // records every change along with how to reverse it, or null if disabled
+    private UndoJournal undoJournal;
+    private Inverter inverter;
+
+    // invocation counts and latencies of each mapping
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    // the names offered when tab completing remapped commands
+    private final CompletionIndex completionIndex = new CompletionIndex();
+    private LuckPermsNameListener nameListener;
+
+    // the unique ids of players, by name
+    private NameCache nameCache;
+
+    // the members of each group
+    private MembershipIndex membershipIndex;
+    private LuckPermsMembershipListener membershipListener;
+
+    // answers permission checks for online players, or null if disabled
+    private PermissionChecker permissionChecker;
+
+    // the enabled dialects, and their commands indexed by lowercase alias. both are replaced as a whole on reload
+    private volatile List<Dialect> dialects = ImmutableList.of();
+    private volatile Map<String, RemappedCommand> remappedCommands = ImmutableMap.of();
+
+    public LuckPermsCompat() {
+    }
+
+    /**
+     * Creates an instance outside of a running server, e.g. for benchmarks.
+     */
+    protected LuckPermsCompat(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+
     @Override
     public void onEnable() {
         this.luckPerms = getServer().getPluginManager().getPlugin("LuckPerms");
         Objects.requireNonNull(this.luckPerms, "luckPerms");
 
-        registerCommand("lpc", this);
+        this.commandBackend = new CommandBackend(this);
+        this.apiBackend = loadApiBackend();
+        if (this.apiBackend != null) {
+            getLogger().info("Applying changes through the LuckPerms API");
+        } else {
+            getLogger().info("LuckPerms API not available, changes will be applied using commands");
+        }
+        this.nodeSource = this.apiBackend == null ? null : ApiNodeSource.create(this);
 
-        // Group Manager
-        getLogger().info("Remapping GroupManager commands");
-        GroupManagerMapping.registerMapping(this);
+        this.completionIndex.start(this);
+        if (this.apiBackend != null) {
+            this.nameListener = LuckPermsNameListener.subscribe(this, this.completionIndex);
+        }
 
-        // PermissionsEx
-        getLogger().info("Remapping PEX commands");
-        PermissionsExMapping.registerMapping(this);
+        saveDefaultConfig();
+
+        if (this.nodeSource != null && getConfig().getBoolean("skip-unchanged", true)) {
+            this.idempotenceFilter = new IdempotenceFilter(this.nodeSource);
+        }
+
+        this.commandQueue = new CommandQueue(this, getConfig().getDouble("queue.tick-budget", 5.0), getConfig().getBoolean("queue.defer-console", true));
+        this.commandQueue.start();
+
+        this.syncScheduler = new SyncScheduler(this, this.apiBackend instanceof ApiBackend ? (ApiBackend) this.apiBackend : null, getConfig().getLong("sync.window", 2000));
+
+        this.outputSummariser = new OutputSummariser(
+                this,
+                getConfig().getInt("output.summarise-after", 5),
+                getConfig().getInt("output.errors-shown", 3),
+                getConfig().getLong("output.reply-timeout", 10000)
+        );
+
+        this.importCommand = new ImportCommand(this);
+
+        if (getConfig().getBoolean("names.enabled", true)) {
+            this.nameCache = new NameCache(getConfig().getInt("names.cache-size", 20000));
+            this.nameCache.start(this, getDataFolder().getAbsoluteFile().getParentFile().toPath().resolveSibling("usercache.json"));
+        }
+
+        this.membershipIndex = new MembershipIndex(getServer(), getConfig().getInt("membership.page-size", 15));
+        if (this.apiBackend != null && getConfig().getBoolean("membership.enabled", true)) {
+            this.membershipListener = LuckPermsMembershipListener.subscribe(this, this.membershipIndex);
+        }
+
+        if (getConfig().getBoolean("check.online", true)) {
+            PermissionQuery query = this.apiBackend == null ? null : ApiPermissionQuery.create(this);
+            this.permissionChecker = new PermissionChecker(getServer(), query == null ? PermissionQuery.BUKKIT : query);
+        }
+
+        if (getConfig().getBoolean("audit.enabled", false)) {
+            this.auditLog = new AuditLog(
+                    new File(getDataFolder(), getConfig().getString("audit.file", "audit.log")).toPath(),
+                    getConfig().getInt("audit.buffer-size", 8192),
+                    getConfig().getLong("audit.flush-interval", 1000),
+                    getConfig().getLong("audit.rotate-size", 16) * 1024 * 1024,
+                    TimeUnit.HOURS.toMillis(getConfig().getLong("audit.rotate-interval", 24)),
+                    getConfig().getBoolean("audit.compress", true),
+                    getLogger()
+            );
+            this.auditLog.start();
+        }
+
+        if (getConfig().getBoolean("journal.enabled", true)) {
+            this.inverter = new Inverter(this.nodeSource);
+            UndoJournal journal = new UndoJournal(
+                    new File(getDataFolder(), "journal").toPath(),
+                    getConfig().getInt("journal.segment-size", 4) * 1024 * 1024,
+                    getConfig().getInt("journal.segments", 8),
+                    getLogger()
+            );
+            try {
+                journal.open();
+                this.undoJournal = journal;
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "Unable to open the undo journal, changes won't be recorded", e);
+            }
+        }
+
+        if (getConfig().getBoolean("metrics.jmx", true)) {
+            this.metrics.registerMBeans(getLogger());
+        }
+
+        if (getConfig().getString("command-mode", "register").equalsIgnoreCase("intercept")) {
+            getLogger().info("Intercepting remapped commands instead of registering them");
+            this.commandInterceptor = new CommandInterceptor(this);
+            getServer().getPluginManager().registerEvents(this.commandInterceptor, this);
+        }
+
+        registerCommand("lpc", this);
+        loadDialects();
 
         getLogger().info("Successfully enabled.");
     }
 
+    @Override
+    public void onDisable() {
+        if (this.importCommand != null) {
+            this.importCommand.shutdown();
+        }
+        if (this.commandQueue != null) {
+            this.commandQueue.stop();
+        }
+        if (this.auditLog != null) {
+            this.auditLog.stop();
+            this.auditLog = null;
+        }
+        if (this.undoJournal != null) {
+            this.undoJournal.close();
+            this.undoJournal = null;
+        }
+        this.metrics.unregisterMBeans();
+        if (this.nameListener != null) {
+            this.nameListener.close();
+            this.nameListener = null;
+        }
+        if (this.membershipListener != null) {
+            this.membershipListener.close();
+            this.membershipListener = null;
+        }
+
+        // remove our commands, so a reload doesn't leave stale executors behind
+        CommandMapUtil.unregisterCommands(this);
+        this.dialects = ImmutableList.of();
+        this.remappedCommands = ImmutableMap.of();
+        this.commandInterceptor = null;
+    }
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        sendUsage(sender, label, args);
+        return true;
+    }
+
+    /**
+     * Sends the plugin info and the usage of the remapped commands.
+     * @param sender the sender
+     * @param label the label the command was called with
+     * @param args the command arguments
+     */
+    public void sendUsage(CommandSender sender, String label, String[] args) {
         msg(sender, "&2Running &bLuckPermsCompat v" + getDescription().getVersion() + "&2, hooked with &bLuckPerms v" + this.luckPerms.getDescription().getVersion() + "&2.");
 
         if (!sender.hasPermission("luckpermscompat.use")) {
-            return true;
+            return;
         }
 
         if (label.equalsIgnoreCase("pex")) {
-            PermissionsExMapping.sendUsage(sender);
+            sendUsage(sender, "PermissionsEx");
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("queue")) {
+            this.commandQueue.sendStatus(sender);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("audit")) {
+            if (this.auditLog == null) {
+                msg(sender, "The audit log is disabled. &7(see audit.enabled in config.yml)");
+            } else {
+                this.auditLog.sendStatus(sender);
+            }
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("undo")) {
+            if (!checkPermission(sender, "luckpermscompat.undo")) {
+                return;
+            }
+            if (this.undoJournal == null) {
+                msg(sender, "The undo journal is disabled. &7(see journal.enabled in config.yml)");
+            } else {
+                new UndoCommand(this, this.undoJournal).execute(sender, Arrays.copyOfRange(args, 1, args.length));
+            }
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("import")) {
+            this.importCommand.execute(sender, Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("output")) {
+            this.outputSummariser.sendOutput(sender);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+            if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                if (!checkPermission(sender, "luckpermscompat.stats.reset")) {
+                    return;
+                }
+                this.metrics.reset();
+                this.syncScheduler.reset();
+                msg(sender, "Mapping stats reset.");
+            } else {
+                this.metrics.sendStats(sender, 10);
+                this.syncScheduler.sendStats(sender);
+            }
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
+            if (checkPermission(sender, "luckpermscompat.reload")) {
+                reload(sender);
+            }
         } else if (args.length > 0 && args[0].equalsIgnoreCase("pex")) {
-            PermissionsExMapping.sendUsage(sender);
+            sendUsage(sender, "PermissionsEx");
         } else if (args.length > 0 && args[0].equalsIgnoreCase("groupmanager")) {
-            GroupManagerMapping.sendUsage(sender);
+            sendUsage(sender, "GroupManager");
         } else if (args.length > 0 && args[0].equalsIgnoreCase("gm")) {
-            GroupManagerMapping.sendUsage(sender);
+            sendUsage(sender, "GroupManager");
         } else {
-            PermissionsExMapping.sendUsage(sender);
-            GroupManagerMapping.sendUsage(sender);
+            sendUsage(sender, null);
         }
+    }
 
-        return true;
+    /**
+     * Sends the usage of the remapped commands of a dialect.
+     * @param sender the sender
+     * @param dialect the name of the dialect, e.g. "PermissionsEx", or null for every dialect
+     */
+    public void sendUsage(CommandSender sender, String dialect) {
+        for (Dialect d : this.dialects) {
+            if (dialect != null && !d.getName().equals(dialect)) {
+                continue;
+            }
+
+            msg(sender, "&bMapped commands: &7(" + d.getName() + ")");
+            for (String usage : d.getUsage()) {
+                msg(sender, "&3> &a" + usage);
+            }
+        }
+    }
+
+    private void reload(CommandSender sender) {
+        reloadConfig();
+        try {
+            loadDialects();
+        } catch (RuntimeException e) {
+            getLogger().log(Level.SEVERE, "Unable to reload the remapped commands", e);
+            msg(sender, "&cUnable to reload: " + e.getMessage() + ". &7The previous commands are still in use.");
+            return;
+        }
+        int count = 0;
+        for (Dialect dialect : this.dialects) {
+            count += dialect.getUsage().size();
+        }
+        msg(sender, "Reloaded, &b" + count + "&a commands remapped.");
+    }
+
+    /**
+     * Builds the dialects enabled in the config, and replaces the current ones with them.
+     * Nothing is changed if a dialect can't be built.
+     */
+    private void loadDialects() {
+        ConfigurationSection config = getConfig().getConfigurationSection("dialects");
+        ImmutableList.Builder<Dialect> dialects = ImmutableList.builder();
+
+        DialectConfig groupManager = DialectConfig.load(config == null ? null : config.getConfigurationSection("groupmanager"));
+        if (groupManager.isEnabled()) {
+            getLogger().info("Remapping GroupManager commands");
+            dialects.add(GroupManagerMapping.createDialect(this, groupManager));
+        }
+
+        DialectConfig permissionsEx = DialectConfig.load(config == null ? null : config.getConfigurationSection("permissionsex"));
+        if (permissionsEx.isEnabled()) {
+            getLogger().info("Remapping PEX commands");
+            dialects.add(PermissionsExMapping.createDialect(this, permissionsEx));
+        }
+
+        setDialects(dialects.build());
+    }
+
+    private void setDialects(List<Dialect> dialects) {
+        Map<String, RemappedCommand> commands = new LinkedHashMap<>();
+        for (Dialect dialect : dialects) {
+            for (Map.Entry<String, RemappedCommand> e : dialect.getCommands().entrySet()) {
+                commands.put(e.getKey().toLowerCase(Locale.ROOT), e.getValue());
+            }
+        }
+
+        if (this.commandInterceptor != null) {
+            this.commandInterceptor.setCommands(commands);
+        } else {
+            for (RemappedCommand command : this.remappedCommands.values()) {
+                CommandMapUtil.unregisterCommand(command);
+            }
+            CommandMapUtil.registerCommands(this, commands);
+        }
+
+        this.dialects = dialects;
+        this.remappedCommands = ImmutableMap.copyOf(commands);
+    }
+
+    /**
+     * Submits a remapped command for execution. This method can be called from any thread.
+     * @param sender the sender
+     * @param commandLine the command, e.g. "manuadd Luck admin", with or without a leading slash
+     * @return a future completed once the command has been executed. The value is true
+     *         if a mapping was performed, and false if usage was shown instead.
+     */
+    public CompletableFuture<Boolean> submit(CommandSender sender, String commandLine) {
+        String[] parts = (commandLine.startsWith("/") ? commandLine.substring(1) : commandLine).split(" ");
+        String label = parts[0].toLowerCase(Locale.ROOT);
+        int namespace = label.indexOf(':');
+        if (namespace != -1) {
+            label = label.substring(namespace + 1);
+        }
+        String[] args = Arrays.copyOfRange(parts, 1, parts.length);
+
+        RemappedCommand command = this.remappedCommands.get(label);
+        if (command == null) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("Unknown command: " + label));
+            return future;
+        }
+        return this.commandQueue.submit(sender, command, label, args);
+    }
+
+    public CommandQueue getCommandQueue() {
+        return this.commandQueue;
+    }
+
+    public SyncScheduler getSyncScheduler() {
+        return this.syncScheduler;
+    }
+
+    public CompletionIndex getCompletionIndex() {
+        return this.completionIndex;
+    }
+
+    public NameCache getNameCache() {
+        return this.nameCache;
+    }
+
+    public PermissionChecker getPermissionChecker() {
+        return this.permissionChecker;
+    }
+
+    public MembershipIndex getMembershipIndex() {
+        return this.membershipIndex;
+    }
+
+    public OutputSummariser getOutputSummariser() {
+        return this.outputSummariser;
+    }
+
+    public ImportCommand getImportCommand() {
+        return this.importCommand;
+    }
+
+    public AuditLog getAuditLog() {
+        return this.auditLog;
+    }
+
+    public NodeSource getNodeSource() {
+        return this.nodeSource;
+    }
+
+    public IdempotenceFilter getIdempotenceFilter() {
+        return this.idempotenceFilter;
+    }
+
+    public UndoJournal getUndoJournal() {
+        return this.undoJournal;
+    }
+
+    public Inverter getInverter() {
+        return this.inverter;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the backend of the given type, falling back to the command backend
+     * if the API is not available.
+     * @param type the backend type, or null for the default
+     * @return the backend
+     */
+    public ExecutionBackend getBackend(BackendType type) {
+        if (type == BackendType.COMMAND || this.apiBackend == null) {
+            return this.commandBackend;
+        }
+        return this.apiBackend;
+    }
+
+    private ExecutionBackend loadApiBackend() {
+        try {
+            Class.forName("net.luckperms.api.LuckPerms");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        return ApiBackend.create(this);
     }
 
     /**
-     * Executes a LuckPerms command directly.
+     * Executes a LuckPerms command directly. If called off the main thread,
+     * the command is dispatched on the main thread during the next tick.
      * @param sender the sender
      * @param cmd the command string, without the "/luckperms" part
      */
     public void executeCommand(CommandSender sender, String cmd) {
-        getServer().dispatchCommand(sender, "lp " + cmd);
+        if (getServer().isPrimaryThread()) {
+            getServer().dispatchCommand(sender, "lp " + cmd);
+        } else {
+            this.commandQueue.runSync(() -> getServer().dispatchCommand(sender, "lp " + cmd));
+        }
     }
 
     /**
@@ -100,7 +552,16 @@ public class LuckPermsCompat extends JavaPlugin implements CommandExecutor {
      * @param executor the executor instance for the command
      */
     public void registerCommand(String alias, CommandExecutor executor) {
-        CommandMapUtil.registerCommand(this, executor, alias);
+        registerCommands(Collections.singletonMap(alias, executor));
+    }
+
+    /**
+     * Forcefully registers a number of commands with the server in one pass.
+     * @param commands the executor instances, keyed by command name
+     * @see #registerCommand(String, CommandExecutor)
+     */
+    public void registerCommands(Map<String, ? extends CommandExecutor> commands) {
+        CommandMapUtil.registerCommands(this, commands);
     }
 
     /**
@@ -109,7 +570,21 @@ public class LuckPermsCompat extends JavaPlugin implements CommandExecutor {
      * @param msg the message
      */
     public static void msg(CommandSender sender, String msg) {
-        sender.sendMessage(colorize("&7&l[&b&lL&3&lP&c&lC&7&l] &a" + msg));
+        sender.sendMessage(PREFIX + colorize("&a" + msg));
+    }
+
+    /**
+     * Checks a sender has a permission, telling them if they don't
+     * @param sender the sender
+     * @param permission the permission
+     * @return if the sender has the permission
+     */
+    public static boolean checkPermission(CommandSender sender, String permission) {
+        if (sender.hasPermission(permission)) {
+            return true;
+        }
+        msg(sender, "&cYou do not have permission to do this. &7(" + permission + ")");
+        return false;
     }
 
     private static String colorize(String s) {
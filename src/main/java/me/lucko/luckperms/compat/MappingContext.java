@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import me.lucko.luckperms.compat.audit.AuditLog;
+import me.lucko.luckperms.compat.backend.BackendType;
+import me.lucko.luckperms.compat.backend.ExecutionBackend;
+import me.lucko.luckperms.compat.backend.IdempotenceFilter;
+import me.lucko.luckperms.compat.backend.Operation;
+import me.lucko.luckperms.compat.journal.Inverter;
+import me.lucko.luckperms.compat.journal.UndoJournal;
+import me.lucko.luckperms.compat.metrics.MappingMetrics;
+import me.lucko.luckperms.compat.names.NameCache;
+import me.lucko.luckperms.compat.output.OutputCapture;
+import me.lucko.luckperms.compat.output.OutputSummariser;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The context a mapping is performed in. One context is created for each mapping when it is registered.
+ */
+@Getter
+public class MappingContext {
+
+    // the invocation being performed on this thread, for the audit log, undo journal and command queue
+    private static final ThreadLocal<Invocation> CURRENT = ThreadLocal.withInitial(Invocation::new);
+
+    /**
+     * The plugin instance
+     */
+    private final LuckPermsCompat plugin;
+
+    /**
+     * The label of the command the mapping is performed by, e.g. "manuadd" or "pex"
+     */
+    private final String label;
+
+    /**
+     * The name of the mapping, e.g. "manuadd"
+     */
+    private final String name;
+
+    /**
+     * The metrics recorded for this mapping
+     */
+    private final MappingMetrics metrics;
+
+    /**
+     * The backend used to apply operations for this mapping, or null to use the plugin default
+     */
+    @Setter
+    private volatile BackendType backend = null;
+
+    /**
+     * If the mapping does nothing but apply operations, so doesn't touch the server
+     * and can be run off the main thread, see {@link CommandQueue}
+     */
+    @Setter
+    private volatile boolean operationsOnly = false;
+
+    public MappingContext(LuckPermsCompat plugin, String name) {
+        this(plugin, name, name);
+    }
+
+    public MappingContext(LuckPermsCompat plugin, String label, String name) {
+        this.plugin = plugin;
+        this.label = label;
+        this.name = name;
+        this.metrics = plugin.getMetrics().get(name);
+    }
+
+    /**
+     * Gets the backend operations for this mapping are applied with
+     *
+     * @return the backend
+     */
+    public ExecutionBackend getExecutionBackend() {
+        return this.plugin.getBackend(this.backend);
+    }
+
+    // commands are applied by LuckPerms some time after they're dispatched, so there's no way
+    // to tell when the loaded data includes them. only filter operations applied via the API
+    private IdempotenceFilter getIdempotenceFilter(ExecutionBackend backend) {
+        return backend.getType() == BackendType.API ? this.plugin.getIdempotenceFilter() : null;
+    }
+
+    /**
+     * Applies an operation using the backend selected for this mapping.
+     * The operation is skipped if it wouldn't change anything, see {@link IdempotenceFilter}.
+     *
+     * @param sender the sender
+     * @param operation the operation
+     * @return a future completed with whether the operation succeeded
+     */
+    public CompletableFuture<Boolean> execute(CommandSender sender, Operation operation) {
+        ExecutionBackend backend = getExecutionBackend();
+        IdempotenceFilter filter = getIdempotenceFilter(backend);
+        if (filter != null && filter.isUnchanged(operation)) {
+            this.metrics.recordSkipped(1);
+            LuckPermsCompat.msg(sender, "Nothing to change: &7" + operation);
+            return CompletableFuture.completedFuture(true);
+        }
+
+        Invocation invocation = CURRENT.get();
+        UndoJournal journal = this.plugin.getUndoJournal();
+        List<Operation> inverse = journal == null ? null : this.plugin.getInverter().invert(operation);
+
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future = backend.execute(sender, operation);
+        this.metrics.recordExecution(System.nanoTime() - start);
+        invocation.applying(future);
+        audit(sender, invocation, operation);
+        if (filter != null) {
+            filter.track(Collections.singletonList(operation), future);
+        }
+        if (journal != null) {
+            journal(journal, sender, invocation, operation, inverse, future);
+        }
+        return trackFailures(future);
+    }
+
+    /**
+     * Applies a number of operations using the backend selected for this mapping.
+     * Operations on the same holder are saved together where the backend allows it.
+     * The output of large batches is summarised, see {@link OutputSummariser}.
+     *
+     * @param sender the sender
+     * @param operations the operations
+     * @return a future completed with whether every operation succeeded
+     */
+    public CompletableFuture<Boolean> executeBatch(CommandSender sender, List<Operation> operations) {
+        ExecutionBackend backend = getExecutionBackend();
+        IdempotenceFilter filter = getIdempotenceFilter(backend);
+        if (filter != null) {
+            List<Operation> remaining = filter.filter(operations);
+            int skipped = operations.size() - remaining.size();
+            if (skipped != 0) {
+                this.metrics.recordSkipped(skipped);
+                LuckPermsCompat.msg(sender, "Skipped &b" + skipped + "&a change(s) which were already in place.");
+                if (remaining.isEmpty()) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                operations = remaining;
+            }
+        }
+
+        Invocation invocation = CURRENT.get();
+        UndoJournal journal = this.plugin.getUndoJournal();
+        List<List<Operation>> inverses = journal == null ? null : this.plugin.getInverter().invertEach(operations);
+        Set<Operation> applied = journal == null ? null : Collections.newSetFromMap(new IdentityHashMap<>());
+
+        OutputSummariser summariser = this.plugin.getOutputSummariser();
+        OutputCapture capture = summariser == null ? null : summariser.capture(sender, operations.size());
+
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future = backend.executeBatch(
+                capture == null ? sender : capture.getSender(),
+                operations,
+                applied == null ? operation -> {} : operation -> {
+                    synchronized (applied) {
+                        applied.add(operation);
+                    }
+                }
+        );
+        this.metrics.recordExecution(System.nanoTime() - start);
+        invocation.applying(future);
+        if (capture != null) {
+            summariser.finish(capture, future);
+        }
+        audit(sender, invocation, operations);
+        if (filter != null) {
+            filter.track(operations, future);
+        }
+        if (journal != null) {
+            journalApplied(journal, sender, invocation, operations, inverses, applied, future);
+        }
+        return trackFailures(future);
+    }
+
+    /**
+     * Executes a LuckPerms command directly.
+     * @param sender the sender
+     * @param cmd the command string, without the "/luckperms" part
+     */
+    public void executeCommand(CommandSender sender, String cmd) {
+        long start = System.nanoTime();
+        this.plugin.executeCommand(sender, cmd);
+        this.metrics.recordExecution(System.nanoTime() - start);
+        audit(sender, CURRENT.get(), cmd);
+    }
+
+    /**
+     * Gets the uuid of a player to pass to LuckPerms in place of their name, where it's
+     * cached, so LuckPerms doesn't have to look it up. Messages should still use the name.
+     *
+     * @param user the name (or uuid) of the player
+     * @return the uuid, or the argument itself if it isn't known
+     */
+    public String resolveUser(String user) {
+        NameCache names = this.plugin.getNameCache();
+        return names == null ? user : names.resolve(user);
+    }
+
+    /**
+     * Requests a LuckPerms command which syncs or reloads data, e.g. "sync". Requests
+     * made close together are combined, see {@link SyncScheduler}.
+     * @param sender the sender
+     * @param cmd the command string, without the "/luckperms" part
+     */
+    public void requestSync(CommandSender sender, String cmd) {
+        long start = System.nanoTime();
+        this.plugin.getSyncScheduler().request(sender, cmd);
+        this.metrics.recordExecution(System.nanoTime() - start);
+        audit(sender, CURRENT.get(), cmd);
+    }
+
+    /**
+     * Runs a task on the current thread, collecting the operations applied through
+     * any mapping while it runs.
+     *
+     * @param task the task
+     * @return a future completed once every operation the task applied has completed
+     */
+    public static CompletableFuture<Void> whenApplied(Runnable task) {
+        Invocation invocation = CURRENT.get();
+        List<CompletableFuture<?>> previous = invocation.applying;
+        List<CompletableFuture<?>> applying = new ArrayList<>();
+        invocation.applying = applying;
+        try {
+            task.run();
+        } finally {
+            invocation.applying = previous;
+        }
+        if (previous != null) {
+            previous.addAll(applying);
+        }
+        return CompletableFuture.allOf(applying.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Performs a mapping action in this context, recording how long it takes
+     *
+     * @param action the action
+     * @param sender the sender
+     * @param arguments the arguments
+     */
+    public void perform(MappingAction action, CommandSender sender, Arguments arguments) {
+        Invocation invocation = CURRENT.get();
+        String[] previousArgs = invocation.args;
+        long previousId = invocation.id;
+        UndoJournal journal = this.plugin.getUndoJournal();
+        invocation.args = arguments.getRaw();
+        invocation.id = journal == null ? 0 : journal.nextInvocation();
+
+        long start = this.metrics.beginTranslation();
+        try {
+            action.perform(this, sender, arguments);
+        } catch (RuntimeException e) {
+            this.metrics.recordFailure();
+            throw e;
+        } finally {
+            this.metrics.endTranslation(start);
+            invocation.args = previousArgs;
+            invocation.id = previousId;
+        }
+    }
+
+    private void audit(CommandSender sender, Invocation invocation, Object translation) {
+        AuditLog auditLog = this.plugin.getAuditLog();
+        if (auditLog != null) {
+            auditLog.record(sender, this.label, invocation.args, translation);
+        }
+    }
+
+    // records a single operation once it has been applied. if it failed, it changed nothing
+    private void journal(UndoJournal journal, CommandSender sender, Invocation invocation, Operation operation, List<Operation> inverse, CompletableFuture<Boolean> future) {
+        String[] args = invocation.args;
+        long id = invocation.id != 0 ? invocation.id : journal.nextInvocation();
+        List<Operation> operations = Collections.singletonList(operation);
+        if (future.isDone()) {
+            if (!future.isCompletedExceptionally() && future.join()) {
+                journal.append(sender, this.label, args, id, operations, inverse);
+            }
+        } else {
+            future.thenAccept(result -> {
+                if (result) {
+                    journal.append(sender, this.label, args, id, operations, inverse);
+                }
+            });
+        }
+    }
+
+    // records the operations of a batch which were applied, once it completes. if some
+    // failed, the others may still have been applied, so are recorded with their inverse
+    private void journalApplied(UndoJournal journal, CommandSender sender, Invocation invocation, List<Operation> operations, List<List<Operation>> inverses, Set<Operation> applied, CompletableFuture<Boolean> future) {
+        String[] args = invocation.args;
+        long id = invocation.id != 0 ? invocation.id : journal.nextInvocation();
+        Runnable record = () -> {
+            List<Operation> recorded = new ArrayList<>(operations.size());
+            List<List<Operation>> recordedInverses = new ArrayList<>(operations.size());
+            synchronized (applied) {
+                for (int i = 0; i < operations.size(); i++) {
+                    if (applied.contains(operations.get(i))) {
+                        recorded.add(operations.get(i));
+                        recordedInverses.add(inverses.get(i));
+                    }
+                }
+            }
+            if (!recorded.isEmpty()) {
+                journal.append(sender, this.label, args, id, recorded, Inverter.combine(recordedInverses));
+            }
+        };
+
+        if (future.isDone()) {
+            record.run();
+        } else {
+            future.whenComplete((result, ex) -> record.run());
+        }
+    }
+
+    // most futures are already complete, so avoid adding a stage to them
+    private CompletableFuture<Boolean> trackFailures(CompletableFuture<Boolean> future) {
+        if (future.isDone()) {
+            if (future.isCompletedExceptionally() || !future.join()) {
+                this.metrics.recordFailure();
+            }
+        } else {
+            future.whenComplete((result, ex) -> {
+                if (ex != null || !result) {
+                    this.metrics.recordFailure();
+                }
+            });
+        }
+        return future;
+    }
+
+    private static final class Invocation {
+        // the raw arguments, or null if unknown
+        private String[] args;
+        // the id used to group changes in the undo journal, or 0
+        private long id;
+        // the futures of the operations being applied, if they're being collected
+        private List<CompletableFuture<?>> applying;
+
+        private void applying(CompletableFuture<?> future) {
+            if (this.applying != null) {
+                this.applying.add(future);
+            }
+        }
+    }
+}
@@ -27,9 +27,12 @@ import org.bukkit.command.CommandSender;
 import java.util.Map;
 
 /**
- * A function which remaps and executes a command
+ * A function which remaps and executes a command, reading its arguments from a map.
+ *
+ * <p>This is adapted to a {@link MappingAction}, which should be preferred for new mappings.</p>
  */
-public interface MappingFunction {
+@FunctionalInterface
+public interface MappingFunction extends MappingAction {
 
     /**
      * Performs the remapping and executes the command using {@link LuckPermsCompat#executeCommand(CommandSender, String)}
@@ -39,4 +42,9 @@ public interface MappingFunction {
      */
     void perform(LuckPermsCompat plugin, CommandSender sender, Map<String, String> arguments);
 
+    @Override
+    default void perform(MappingContext context, CommandSender sender, Arguments arguments) {
+        perform(context.getPlugin(), sender, arguments.asMap());
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The named parameters of a remapped command, resolved to fixed slots when the
+ * mapping is built.
+ *
+ * <p>Each parameter is assigned a slot index, in the order it is declared, and
+ * the position in the raw argument array it is read from.</p>
+ */
+public final class Parameters {
+
+    /**
+     * Creates parameters read from consecutive positions, starting at 0.
+     *
+     * @param names the parameter names
+     * @return the parameters
+     */
+    public static Parameters of(List<String> names) {
+        int[] positions = new int[names.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        return new Parameters(names.toArray(new String[0]), positions);
+    }
+
+    /**
+     * Creates parameters read from the given positions.
+     *
+     * @param names the parameter names
+     * @param positions the position of each parameter in the raw arguments
+     * @return the parameters
+     */
+    public static Parameters of(List<String> names, int[] positions) {
+        Preconditions.checkArgument(names.size() == positions.length, "names and positions differ in length");
+        return new Parameters(names.toArray(new String[0]), positions.clone());
+    }
+
+    private final String[] names;
+    private final int[] positions;
+
+    private Parameters(String[] names, int[] positions) {
+        for (int i = 0; i < names.length; i++) {
+            for (int j = i + 1; j < names.length; j++) {
+                Preconditions.checkArgument(!names[i].equals(names[j]), "Duplicate parameter: " + names[i]);
+            }
+        }
+        this.names = names;
+        this.positions = positions;
+    }
+
+    /**
+     * Gets the number of parameters
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+    /**
+     * Gets the name of the parameter in a slot
+     *
+     * @param slot the slot index
+     * @return the name
+     */
+    public String getName(int slot) {
+        return this.names[slot];
+    }
+
+    /**
+     * Gets the position in the raw arguments a slot is read from
+     *
+     * @param slot the slot index
+     * @return the position
+     */
+    public int getPosition(int slot) {
+        return this.positions[slot];
+    }
+
+    /**
+     * Gets the slot of a named parameter
+     *
+     * @param name the parameter name
+     * @return the slot index, or -1 if there is no such parameter
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a view of the given raw arguments
+     *
+     * @param args the raw arguments
+     * @return the view
+     */
+    public Arguments view(String[] args) {
+        return new Arguments(this, args);
+    }
+
+    @Override
+    public String toString() {
+        return "Parameters(" + Arrays.toString(this.names) + ")";
+    }
+}
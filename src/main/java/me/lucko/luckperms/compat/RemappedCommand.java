@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * A command executor which handles remapped commands.
+ *
+ * <p>Invocations made off the main thread (e.g. by a plugin calling
+ * dispatchCommand from an async task) are passed to the plugin's
+ * {@link CommandQueue} instead of being executed on the calling thread.
+ * Depending on the configuration, so are those made by the console or by
+ * other plugins.</p>
+ */
+public interface RemappedCommand extends CommandExecutor {
+
+    /**
+     * Gets the plugin instance
+     *
+     * @return the plugin
+     */
+    LuckPermsCompat getPlugin();
+
+    /**
+     * Gets the context of the mapping which would handle the given arguments
+     *
+     * @param args the command arguments
+     * @return the mapping context, or null if no mapping would handle them
+     */
+    MappingContext resolve(String[] args);
+
+    /**
+     * Executes the command on the current thread.
+     *
+     * @param sender the command sender
+     * @param label the label the command was called with
+     * @param args the command arguments
+     * @return true if a mapping was performed, false if usage was shown instead
+     */
+    boolean execute(CommandSender sender, String label, String[] args);
+
+    /**
+     * Executes the command, or queues it if it was sent from another thread.
+     *
+     * @param sender the command sender
+     * @param label the label the command was called with
+     * @param args the command arguments
+     */
+    default void dispatch(CommandSender sender, String label, String[] args) {
+        CommandQueue queue = getPlugin().getCommandQueue();
+        if (queue.shouldQueue(sender)) {
+            queue.submit(sender, this, label, args);
+        } else {
+            execute(sender, label, args);
+        }
+    }
+
+    @Override
+    default boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        dispatch(sender, label, args);
+        return true;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat;
+
+import me.lucko.luckperms.compat.backend.ApiBackend;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Collapses requests to sync or reload LuckPerms, e.g. from mansave or /pex reload,
+ * into as few actual syncs as possible.
+ *
+ * <p>The first request for a command schedules it to run once the coalescing window
+ * has passed. Requests made before it runs, or while it is still running, are attached
+ * to it rather than scheduling another.</p>
+ *
+ * <p>When the LuckPerms API is available, syncs are run through it, so it is known when
+ * they finish. Otherwise the command is dispatched, and only waits for the window.</p>
+ */
+public class SyncScheduler {
+    private final LuckPermsCompat plugin;
+
+    // runs syncs, or null if the api isn't available
+    private final ApiBackend api;
+
+    private final long windowMillis;
+
+    // the pending or running request of each command. guarded by this
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    // the number of requests for each command, and how many times it actually ran
+    private final Map<String, Counts> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a sync scheduler
+     *
+     * @param plugin the plugin
+     * @param api the api backend, or null if the api isn't available
+     * @param windowMillis how long to wait for more requests before running a command
+     */
+    public SyncScheduler(LuckPermsCompat plugin, ApiBackend api, long windowMillis) {
+        this.plugin = plugin;
+        this.api = api;
+        this.windowMillis = Math.max(0, windowMillis);
+    }
+
+    /**
+     * Requests a LuckPerms command to be run, combining it with any pending or running request
+     * for the same command. This method can be called from any thread.
+     *
+     * @param sender the sender
+     * @param command the command, without the "/luckperms" part, e.g. "sync"
+     * @return a future completed once the command has run
+     */
+    public CompletableFuture<Void> request(CommandSender sender, String command) {
+        this.counts.computeIfAbsent(command, c -> new Counts()).requested.increment();
+
+        Batch batch;
+        boolean joined;
+        synchronized (this) {
+            batch = this.batches.get(command);
+            joined = batch != null;
+            if (joined) {
+                batch.requesters.add(sender);
+            } else {
+                batch = new Batch(command, sender);
+                this.batches.put(command, batch);
+            }
+        }
+
+        if (joined) {
+            LuckPermsCompat.msg(sender, "&7A /lp " + command + " is already " + (batch.running ? "running" : "pending") + ", this request has been combined with it.");
+        } else if (this.windowMillis == 0 && this.plugin.getServer().isPrimaryThread()) {
+            run(batch);
+        } else {
+            Batch scheduled = batch;
+            long ticks = Math.max(1, (this.windowMillis + 49) / 50);
+            this.plugin.getServer().getScheduler().runTaskLater(this.plugin, () -> run(scheduled), ticks);
+        }
+        return batch.future;
+    }
+
+    private void run(Batch batch) {
+        batch.running = true;
+        this.counts.get(batch.command).executed.increment();
+
+        CompletableFuture<Void> result;
+        boolean viaApi = this.api != null && batch.command.equals("sync");
+        try {
+            if (viaApi) {
+                result = this.api.sync();
+            } else {
+                this.plugin.executeCommand(batch.sender, batch.command);
+                result = CompletableFuture.completedFuture(null);
+            }
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+
+        result.whenComplete((v, ex) -> {
+            List<CommandSender> requesters;
+            synchronized (this) {
+                this.batches.remove(batch.command, batch);
+                requesters = new ArrayList<>(batch.requesters);
+            }
+
+            if (ex != null) {
+                this.plugin.getLogger().log(Level.SEVERE, "Exception running /lp " + batch.command, ex);
+            }
+
+            // luckperms has already replied to the first requester, unless the api was used
+            int combined = requesters.size();
+            for (int i = viaApi ? 0 : 1; i < requesters.size(); i++) {
+                if (ex != null) {
+                    LuckPermsCompat.msg(requesters.get(i), "&c/lp " + batch.command + " failed: an unexpected error occurred.");
+                } else {
+                    LuckPermsCompat.msg(requesters.get(i), "Ran /lp " + batch.command + "&7 (" + combined + " request(s) combined)");
+                }
+            }
+
+            if (ex != null) {
+                batch.future.completeExceptionally(ex);
+            } else {
+                batch.future.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Resets the request counts
+     */
+    public void reset() {
+        for (Counts c : this.counts.values()) {
+            c.requested.reset();
+            c.executed.reset();
+        }
+    }
+
+    /**
+     * Sends the number of requests for each command, and how many were combined, to a sender
+     *
+     * @param sender the sender
+     */
+    public void sendStats(CommandSender sender) {
+        if (this.counts.isEmpty()) {
+            return;
+        }
+
+        LuckPermsCompat.msg(sender, "&bSyncs: &7(requests within " + this.windowMillis + "ms are combined)");
+        for (Map.Entry<String, Counts> e : this.counts.entrySet()) {
+            long requested = e.getValue().requested.sum();
+            long executed = e.getValue().executed.sum();
+            String ratio = executed == 0 ? "-" : String.format("%.1fx", (double) requested / executed);
+            LuckPermsCompat.msg(sender, "&3> &a" + e.getKey() + " &7- &f" + requested + " &7requested, &f" + executed + " &7run, coalescing ratio &f" + ratio);
+        }
+    }
+
+    private static final class Batch {
+        private final String command;
+        // the sender the command is run as
+        private final CommandSender sender;
+        private final List<CommandSender> requesters = new ArrayList<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private volatile boolean running = false;
+
+        private Batch(String command, CommandSender sender) {
+            this.command = command;
+            this.sender = sender;
+            this.requesters.add(sender);
+        }
+    }
+
+    private static final class Counts {
+        private final LongAdder requested = new LongAdder();
+        private final LongAdder executed = new LongAdder();
+    }
+}
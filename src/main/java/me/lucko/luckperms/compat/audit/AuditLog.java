@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.audit;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An append-only log of every translated command: who sent which command,
+ * when, and what it was translated into.
+ *
+ * <p>Records are placed into a bounded ring buffer, and written in batches
+ * by a background thread. Recording never blocks: if the buffer is full,
+ * e.g. because the disk is slow, the record is dropped and counted.</p>
+ *
+ * <p>Each line holds the time, the sender, the original command and one
+ * LuckPerms command it was translated into, separated by tabs.</p>
+ */
+public class AuditLog implements Runnable {
+
+    // the most records written in a single batch
+    private static final int BATCH_SIZE = 1024;
+
+    private final Path file;
+    private final long flushNanos;
+    private final long rotateBytes;
+    private final long rotateMillis;
+    private final boolean compress;
+    private final Logger logger;
+
+    // the ring buffer. a slot at position p is free to be written when its sequence is p,
+    // and ready to be read once its sequence is p + 1
+    private final Entry[] ring;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;
+    private volatile long consumed = 0;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    private volatile boolean running = false;
+    private volatile Thread thread = null;
+
+    // only accessed by the writer thread
+    private FileChannel channel = null;
+    private long openedAt = 0;
+    private final StringBuilder buffer = new StringBuilder(BATCH_SIZE * 128);
+
+    /**
+     * Creates an audit log
+     *
+     * @param file the file to write to
+     * @param capacity the capacity of the ring buffer, rounded up to a power of two
+     * @param flushMillis how often records are written
+     * @param rotateBytes the size the file is rotated at, or 0 to not rotate by size
+     * @param rotateMillis the age the file is rotated at, or 0 to not rotate by age
+     * @param compress if rotated files should be gzipped
+     * @param logger the logger to report write errors to
+     */
+    public AuditLog(Path file, int capacity, long flushMillis, long rotateBytes, long rotateMillis, boolean compress, Logger logger) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.ring[i] = new Entry();
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+
+        this.file = file;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.rotateBytes = rotateBytes;
+        this.rotateMillis = rotateMillis;
+        this.compress = compress;
+        this.logger = logger;
+    }
+
+    /**
+     * Starts the writer thread
+     */
+    public void start() {
+        this.running = true;
+        this.thread = new Thread(this, "LuckPermsCompat Audit Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the writer thread, after writing everything which has been recorded
+     */
+    public void stop() {
+        this.running = false;
+        if (this.thread == null) {
+            return;
+        }
+
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.thread = null;
+    }
+
+    /**
+     * Records a translated command. This method can be called from any thread, and never blocks.
+     *
+     * @param sender the sender of the command
+     * @param label the label of the original command, e.g. "manuadd"
+     * @param args the arguments of the original command, or null if unknown
+     * @param translation what the command was translated into: an {@link Operation},
+     *                    a list of them, or a LuckPerms command string
+     */
+    public void record(CommandSender sender, String label, String[] args, Object translation) {
+        long pos = this.tail.get();
+        while (true) {
+            long diff = this.sequences.get((int) pos & this.mask) - pos;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = this.tail.get();
+            } else if (diff < 0) {
+                // full. the writer is behind, so drop the record rather than wait for it
+                this.dropped.increment();
+                return;
+            } else {
+                pos = this.tail.get();
+            }
+        }
+
+        Entry entry = this.ring[(int) pos & this.mask];
+        entry.time = System.currentTimeMillis();
+        entry.sender = sender.getName();
+        entry.label = label;
+        entry.args = args;
+        entry.translation = translation;
+        this.sequences.lazySet((int) pos & this.mask, pos + 1);
+        this.recorded.increment();
+
+        // wake the writer early if the buffer is filling up
+        if ((pos & (this.mask >> 1)) == 0 && this.thread != null) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, this.flushNanos);
+            }
+        }
+
+        // write what's left, and close up
+        while (drain() != 0) {
+            // continue
+        }
+        closeChannel();
+    }
+
+    // writes a batch of records, returning the number taken from the ring
+    private int drain() {
+        this.buffer.setLength(0);
+
+        int count = 0;
+        while (count < BATCH_SIZE) {
+            int slot = (int) this.head & this.mask;
+            if (this.sequences.get(slot) != this.head + 1) {
+                break;
+            }
+
+            Entry entry = this.ring[slot];
+            entry.appendTo(this.buffer);
+            entry.clear();
+            this.sequences.lazySet(slot, this.head + this.ring.length);
+            this.head++;
+            count++;
+        }
+
+        if (count != 0) {
+            this.consumed = this.head;
+            write(count);
+        }
+        return count;
+    }
+
+    private void write(int count) {
+        try {
+            FileChannel channel = channel();
+            ByteBuffer bytes = ByteBuffer.wrap(this.buffer.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            this.written.addAndGet(count);
+            this.batches.incrementAndGet();
+
+            if (shouldRotate(channel)) {
+                rotate();
+            }
+        } catch (IOException e) {
+            // the batch is lost, but the log keeps going
+            if (this.writeErrors.getAndIncrement() == 0) {
+                this.logger.log(Level.SEVERE, "Unable to write to the audit log " + this.file, e);
+            }
+            closeChannel();
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (this.channel == null) {
+            Files.createDirectories(this.file.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.openedAt = System.currentTimeMillis();
+        }
+        return this.channel;
+    }
+
+    private boolean shouldRotate(FileChannel channel) throws IOException {
+        if (this.rotateBytes > 0 && channel.size() >= this.rotateBytes) {
+            return true;
+        }
+        return this.rotateMillis > 0 && System.currentTimeMillis() - this.openedAt >= this.rotateMillis;
+    }
+
+    private void rotate() throws IOException {
+        closeChannel();
+
+        String name = this.file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot == -1 ? name : name.substring(0, dot);
+        String extension = dot == -1 ? "" : name.substring(dot);
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
+        Path rotated = this.file.resolveSibling(base + "-" + stamp + extension);
+        for (int i = 1; Files.exists(rotated) || Files.exists(rotated.resolveSibling(rotated.getFileName() + ".gz")); i++) {
+            rotated = this.file.resolveSibling(base + "-" + stamp + "-" + i + extension);
+        }
+        Files.move(this.file, rotated);
+        this.rotations.incrementAndGet();
+
+        if (this.compress) {
+            Path compressed = rotated.resolveSibling(rotated.getFileName() + ".gz");
+            try (InputStream in = Files.newInputStream(rotated); OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+            }
+            Files.delete(rotated);
+        }
+    }
+
+    private void closeChannel() {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        this.channel = null;
+    }
+
+    /**
+     * Gets the number of records waiting to be written
+     *
+     * @return the backlog
+     */
+    public long getBacklog() {
+        return this.tail.get() - this.consumed;
+    }
+
+    /**
+     * Sends the state of the audit log to a sender
+     *
+     * @param sender the sender
+     */
+    public void sendStatus(CommandSender sender) {
+        LuckPermsCompat.msg(sender, "&bAudit log: &7" + this.file.getFileName());
+        LuckPermsCompat.msg(sender, "&7- Recorded: &f" + this.recorded.sum() + "&7, written: &f" + this.written.get() + " &7in &f" + this.batches.get() + " &7batches");
+        LuckPermsCompat.msg(sender, "&7- Waiting: &f" + getBacklog() + "&7 of &f" + this.ring.length);
+        LuckPermsCompat.msg(sender, "&7- Dropped (buffer full): &f" + this.dropped.sum() + "&7, failed writes: &f" + this.writeErrors.get());
+        LuckPermsCompat.msg(sender, "&7- Rotations: &f" + this.rotations.get());
+    }
+
+    /**
+     * A slot in the ring buffer
+     */
+    private static final class Entry {
+        private long time;
+        private String sender;
+        private String label;
+        private String[] args;
+        private Object translation;
+
+        private void appendTo(StringBuilder sb) {
+            if (this.translation instanceof List) {
+                for (Object operation : (List<?>) this.translation) {
+                    appendLine(sb, operation);
+                }
+            } else {
+                appendLine(sb, this.translation);
+            }
+        }
+
+        private void appendLine(StringBuilder sb, Object translation) {
+            sb.append(Instant.ofEpochMilli(this.time)).append('\t').append(this.sender).append('\t').append('/').append(this.label);
+            if (this.args != null) {
+                for (String arg : this.args) {
+                    sb.append(' ').append(arg);
+                }
+            }
+            sb.append('\t').append("/lp ").append(translation instanceof Operation ? ((Operation) translation).toCommand() : translation).append('\n');
+        }
+
+        private void clear() {
+            this.sender = null;
+            this.label = null;
+            this.args = null;
+            this.translation = null;
+        }
+    }
+
+}
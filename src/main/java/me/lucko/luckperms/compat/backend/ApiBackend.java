@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.names.NameCache;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.context.DefaultContextKeys;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.model.PermissionHolder;
+import net.luckperms.api.model.data.DataMutateResult;
+import net.luckperms.api.model.data.NodeMap;
+import net.luckperms.api.model.group.Group;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.NodeType;
+import net.luckperms.api.node.types.InheritanceNode;
+import net.luckperms.api.node.types.MetaNode;
+import net.luckperms.api.node.types.PrefixNode;
+import net.luckperms.api.node.types.SuffixNode;
+import net.luckperms.api.node.types.WeightNode;
+import net.luckperms.api.track.DemotionResult;
+import net.luckperms.api.track.PromotionResult;
+import net.luckperms.api.track.Track;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Executes operations directly through the LuckPerms API, skipping the
+ * command lookup, parsing and chat output of the LuckPerms command.
+ *
+ * <p>The sender must still have the permission LuckPerms requires for the
+ * equivalent command, see {@link Operation#getPermission()}.</p>
+ */
+public class ApiBackend implements ExecutionBackend {
+
+    /**
+     * Creates an API backend, if the LuckPerms API is available
+     *
+     * @param plugin the plugin instance
+     * @return the backend, or null if the API isn't available
+     */
+    public static ApiBackend create(LuckPermsCompat plugin) {
+        RegisteredServiceProvider<LuckPerms> provider = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return null;
+        }
+        return new ApiBackend(plugin, provider.getProvider());
+    }
+
+    private final LuckPermsCompat plugin;
+    private final LuckPerms luckPerms;
+
+    private ApiBackend(LuckPermsCompat plugin, LuckPerms luckPerms) {
+        this.plugin = plugin;
+        this.luckPerms = luckPerms;
+    }
+
+    @Override
+    public BackendType getType() {
+        return BackendType.API;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> execute(CommandSender sender, Operation operation) {
+        CompletableFuture<Boolean> future;
+        try {
+            checkPermission(sender, operation);
+            switch (operation.getType()) {
+                case CREATE_GROUP:
+                    future = createGroup(operation.getHolder());
+                    break;
+                case DELETE_GROUP:
+                    future = deleteGroup(operation.getHolder());
+                    break;
+                case PROMOTE:
+                case DEMOTE:
+                    future = changeTrack(operation);
+                    break;
+                default:
+                    if (operation.getHolderType() == HolderType.USER) {
+                        future = modifyUser(operation.getHolder(), user -> apply(user, operation));
+                    } else {
+                        future = modifyGroup(operation.getHolder(), group -> apply(group, operation));
+                    }
+                    break;
+            }
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.handle((result, ex) -> {
+            if (ex == null) {
+                LuckPermsCompat.msg(sender, "Applied: &7" + operation);
+                return true;
+            }
+
+            reportFailure(sender, operation, ex);
+            return false;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeBatch(CommandSender sender, List<Operation> operations, Consumer<Operation> applied) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+        // group node operations by holder, keeping the order they were given in
+        Map<String, List<Operation>> byHolder = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            // operations the sender can't apply are failed on their own, leaving the rest of the holder's
+            if (!isNodeOperation(operation) || !sender.hasPermission(operation.getPermission())) {
+                futures.add(execute(sender, operation, applied));
+                continue;
+            }
+
+            String key = operation.getHolderType().getLabel() + ":" + operation.getHolder().toLowerCase(Locale.ROOT);
+            byHolder.computeIfAbsent(key, k -> new ArrayList<>()).add(operation);
+        }
+
+        for (List<Operation> holderOperations : byHolder.values()) {
+            futures.add(executeHolderBatch(sender, holderOperations, applied));
+        }
+
+        CompletableFuture<Boolean> result = CompletableFuture.completedFuture(true);
+        for (CompletableFuture<Boolean> future : futures) {
+            result = result.thenCombine(future, (a, b) -> a && b);
+        }
+        return result;
+    }
+
+    /**
+     * Reloads all loaded users and groups from storage, as /lp sync does
+     *
+     * @return a future completed once the sync is done
+     */
+    public CompletableFuture<Void> sync() {
+        return this.luckPerms.runUpdateTask();
+    }
+
+    /**
+     * Applies operations on the same holder in a single load/modify/save cycle
+     *
+     * @param sender the sender
+     * @param operations the operations, all on the same holder
+     * @param onApplied called with each operation which was applied
+     * @return a future completed with whether every operation succeeded
+     */
+    private CompletableFuture<Boolean> executeHolderBatch(CommandSender sender, List<Operation> operations, Consumer<Operation> onApplied) {
+        if (operations.size() == 1) {
+            return execute(sender, operations.get(0), onApplied);
+        }
+
+        Operation first = operations.get(0);
+        List<Operation> applied = new ArrayList<>();
+        List<Operation> failed = new ArrayList<>();
+        List<OperationException> errors = new ArrayList<>();
+
+        Predicate<PermissionHolder> action = holder -> {
+            for (Operation operation : operations) {
+                try {
+                    apply(holder, operation);
+                    applied.add(operation);
+                } catch (OperationException e) {
+                    failed.add(operation);
+                    errors.add(e);
+                }
+            }
+            return !applied.isEmpty();
+        };
+
+        CompletableFuture<Boolean> future;
+        try {
+            if (first.getHolderType() == HolderType.USER) {
+                future = modifyUser(first.getHolder(), action::test);
+            } else {
+                future = modifyGroup(first.getHolder(), action::test);
+            }
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.handle((result, ex) -> {
+            if (ex != null) {
+                // the holder itself couldn't be loaded or saved
+                reportFailure(sender, first, ex);
+                return false;
+            }
+
+            if (!applied.isEmpty()) {
+                LuckPermsCompat.msg(sender, "Applied " + applied.size() + " change(s) to " + first.getHolderType().getLabel() + " &7" + first.getHolder());
+                applied.forEach(onApplied);
+            }
+            for (int i = 0; i < failed.size(); i++) {
+                reportFailure(sender, failed.get(i), errors.get(i));
+            }
+            return failed.isEmpty();
+        });
+    }
+
+    private CompletableFuture<Boolean> execute(CommandSender sender, Operation operation, Consumer<Operation> applied) {
+        return execute(sender, operation).thenApply(success -> {
+            if (success) {
+                applied.accept(operation);
+            }
+            return success;
+        });
+    }
+
+    private static void checkPermission(CommandSender sender, Operation operation) {
+        String permission = operation.getPermission();
+        if (!sender.hasPermission(permission)) {
+            throw new OperationException("No permission (" + permission + ").");
+        }
+    }
+
+    private static boolean isNodeOperation(Operation operation) {
+        switch (operation.getType()) {
+            case CREATE_GROUP:
+            case DELETE_GROUP:
+            case PROMOTE:
+            case DEMOTE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Sends the reason an operation failed to the sender
+     *
+     * @param sender the sender
+     * @param operation the operation
+     * @param ex the exception the operation failed with
+     */
+    void reportFailure(CommandSender sender, Operation operation, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof OperationException) {
+            LuckPermsCompat.msg(sender, "&cCould not apply '" + operation + "': " + cause.getMessage());
+        } else {
+            this.plugin.getLogger().log(Level.SEVERE, "Exception applying '" + operation + "'", cause);
+            LuckPermsCompat.msg(sender, "&cCould not apply '" + operation + "': an unexpected error occurred.");
+        }
+    }
+
+    /**
+     * Resolves the unique id of a user from a name or uuid string
+     *
+     * @param name the name or uuid
+     * @return a future of the uuid
+     */
+    CompletableFuture<UUID> lookupUser(String name) {
+        if (name.length() == 36 && name.indexOf('-') != -1) {
+            try {
+                return CompletableFuture.completedFuture(UUID.fromString(name));
+            } catch (IllegalArgumentException e) {
+                // not a uuid
+            }
+        }
+
+        Player player = this.plugin.getServer().getPlayerExact(name);
+        if (player != null) {
+            return CompletableFuture.completedFuture(player.getUniqueId());
+        }
+
+        NameCache names = this.plugin.getNameCache();
+        UUID cached = names == null ? null : names.get(name);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return this.luckPerms.getUserManager().lookupUniqueId(name).thenApply(uuid -> {
+            if (uuid == null) {
+                throw new OperationException("User '" + name + "' could not be found.");
+            }
+            if (names != null) {
+                names.put(name, uuid);
+            }
+            return uuid;
+        });
+    }
+
+    /**
+     * Loads a user, applies a change and saves the user if anything changed
+     *
+     * @param name the name or uuid of the user
+     * @param action the change, returning if anything was modified
+     * @return a future completed with whether anything changed
+     */
+    CompletableFuture<Boolean> modifyUser(String name, Predicate<User> action) {
+        return lookupUser(name)
+                .thenCompose(uuid -> this.luckPerms.getUserManager().loadUser(uuid))
+                .thenCompose(user -> {
+                    if (!action.test(user)) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return this.luckPerms.getUserManager().saveUser(user).thenApply(v -> {
+                        this.luckPerms.getMessagingService().ifPresent(service -> service.pushUserUpdate(user));
+                        return true;
+                    });
+                });
+    }
+
+    /**
+     * Loads a group, applies a change and saves the group if anything changed
+     *
+     * @param name the name of the group
+     * @param action the change, returning if anything was modified
+     * @return a future completed with whether anything changed
+     */
+    CompletableFuture<Boolean> modifyGroup(String name, Predicate<Group> action) {
+        return loadGroup(name).thenCompose(group -> {
+            if (!action.test(group)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return this.luckPerms.getGroupManager().saveGroup(group).thenApply(v -> {
+                this.luckPerms.getMessagingService().ifPresent(service -> service.pushUpdate());
+                return true;
+            });
+        });
+    }
+
+    private CompletableFuture<Group> loadGroup(String name) {
+        String groupName = name.toLowerCase(Locale.ROOT);
+        Group loaded = this.luckPerms.getGroupManager().getGroup(groupName);
+        if (loaded != null) {
+            return CompletableFuture.completedFuture(loaded);
+        }
+
+        return this.luckPerms.getGroupManager().loadGroup(groupName).thenApply(group -> group.orElseThrow(() ->
+                new OperationException("Group '" + groupName + "' does not exist.")
+        ));
+    }
+
+    private CompletableFuture<Boolean> createGroup(String name) {
+        String groupName = name.toLowerCase(Locale.ROOT);
+        if (this.luckPerms.getGroupManager().getGroup(groupName) != null) {
+            throw new OperationException("Group '" + groupName + "' already exists.");
+        }
+
+        return this.luckPerms.getGroupManager().createAndLoadGroup(groupName).thenApply(group -> {
+            this.luckPerms.getMessagingService().ifPresent(service -> service.pushUpdate());
+            return true;
+        });
+    }
+
+    private CompletableFuture<Boolean> deleteGroup(String name) {
+        String groupName = name.toLowerCase(Locale.ROOT);
+        if (groupName.equals("default")) {
+            throw new OperationException("The default group cannot be deleted.");
+        }
+
+        return loadGroup(groupName)
+                .thenCompose(group -> this.luckPerms.getGroupManager().deleteGroup(group))
+                .thenApply(v -> {
+                    this.luckPerms.getMessagingService().ifPresent(service -> service.pushUpdate());
+                    return true;
+                });
+    }
+
+    private CompletableFuture<Boolean> changeTrack(Operation operation) {
+        Track track = this.luckPerms.getTrackManager().getTrack(operation.getKey().toLowerCase(Locale.ROOT));
+        if (track == null) {
+            throw new OperationException("Track '" + operation.getKey() + "' does not exist.");
+        }
+
+        return modifyUser(operation.getHolder(), user -> {
+            if (operation.getType() == Operation.Type.PROMOTE) {
+                PromotionResult result = track.promote(user, ImmutableContextSet.empty());
+                if (!result.wasSuccessful()) {
+                    throw new OperationException("promotion failed (" + result.getStatus().name().toLowerCase(Locale.ROOT) + ")");
+                }
+            } else {
+                DemotionResult result = track.demote(user, ImmutableContextSet.empty());
+                if (!result.wasSuccessful()) {
+                    throw new OperationException("demotion failed (" + result.getStatus().name().toLowerCase(Locale.ROOT) + ")");
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Applies a node operation to a loaded holder, without saving it
+     *
+     * @param holder the holder
+     * @param operation the operation
+     * @return true if the holder was modified
+     */
+    boolean apply(PermissionHolder holder, Operation operation) {
+        ImmutableContextSet context = operation.hasWorld()
+                ? ImmutableContextSet.of(DefaultContextKeys.WORLD_KEY, operation.getWorld())
+                : ImmutableContextSet.empty();
+        NodeMap data = holder.data();
+        String key = operation.getKey();
+
+        switch (operation.getType()) {
+            case PARENT_SET: {
+                String group = requireGroup(key);
+                data.clear(context, NodeType.INHERITANCE::matches);
+                data.add(InheritanceNode.builder(group).context(context).build());
+                if (holder instanceof User && context.isEmpty()) {
+                    ((User) holder).setPrimaryGroup(group);
+                }
+                return true;
+            }
+            case PARENT_ADD:
+                return check(data.add(InheritanceNode.builder(requireGroup(key)).context(context).build()));
+            case PARENT_ADD_TEMP:
+                return check(data.add(InheritanceNode.builder(requireGroup(key))
+                        .expiry(operation.getDuration(), TimeUnit.SECONDS)
+                        .context(context)
+                        .build()));
+            case PARENT_REMOVE: {
+                String group = key.toLowerCase(Locale.ROOT);
+                return unset(holder, context, NodeType.INHERITANCE.predicate(n -> n.getGroupName().equals(group) && !n.hasExpiry()));
+            }
+            case PARENT_REMOVE_TEMP: {
+                String group = key.toLowerCase(Locale.ROOT);
+                return unset(holder, context, NodeType.INHERITANCE.predicate(n -> n.getGroupName().equals(group) && n.hasExpiry()));
+            }
+            case PARENT_CLEAR:
+                data.clear(NodeType.INHERITANCE::matches);
+                return true;
+            case PERMISSION_SET:
+                clear(holder, context, n -> n.getKey().equalsIgnoreCase(key) && !n.hasExpiry());
+                return check(data.add(Node.builder(key).value(operation.isPermissionValue()).context(context).build()));
+            case PERMISSION_SET_TEMP:
+                return check(data.add(Node.builder(key)
+                        .value(operation.isPermissionValue())
+                        .expiry(operation.getDuration(), TimeUnit.SECONDS)
+                        .context(context)
+                        .build()));
+            case PERMISSION_UNSET:
+                return unset(holder, context, n -> n.getKey().equalsIgnoreCase(key) && !n.hasExpiry());
+            case PERMISSION_UNSET_TEMP:
+                return unset(holder, context, n -> n.getKey().equalsIgnoreCase(key) && n.hasExpiry());
+            case META_SET:
+                clear(holder, context, NodeType.META.predicate(n -> n.getMetaKey().equalsIgnoreCase(key) && !n.hasExpiry()));
+                return check(data.add(MetaNode.builder(key, operation.getValue()).context(context).build()));
+            case META_UNSET:
+                return unset(holder, context, NodeType.META.predicate(n -> n.getMetaKey().equalsIgnoreCase(key) && !n.hasExpiry()));
+            case PREFIX_SET: {
+                int priority = Integer.parseInt(key);
+                clear(holder, context, NodeType.PREFIX.predicate(n -> n.getPriority() == priority && !n.hasExpiry()));
+                return check(data.add(PrefixNode.builder(operation.getValue(), priority).context(context).build()));
+            }
+            case PREFIX_UNSET: {
+                int priority = Integer.parseInt(key);
+                return unset(holder, context, NodeType.PREFIX.predicate(n -> n.getPriority() == priority && !n.hasExpiry()));
+            }
+            case SUFFIX_SET: {
+                int priority = Integer.parseInt(key);
+                clear(holder, context, NodeType.SUFFIX.predicate(n -> n.getPriority() == priority && !n.hasExpiry()));
+                return check(data.add(SuffixNode.builder(operation.getValue(), priority).context(context).build()));
+            }
+            case SUFFIX_UNSET: {
+                int priority = Integer.parseInt(key);
+                return unset(holder, context, NodeType.SUFFIX.predicate(n -> n.getPriority() == priority && !n.hasExpiry()));
+            }
+            case CLEAR:
+                data.clear();
+                return true;
+            case SET_WEIGHT:
+                data.clear(NodeType.WEIGHT::matches);
+                data.add(WeightNode.builder(Integer.parseInt(operation.getValue())).build());
+                return true;
+            case UNSET_WEIGHT:
+                return unset(holder, ImmutableContextSet.empty(), NodeType.WEIGHT::matches);
+            default:
+                throw new IllegalArgumentException("Not a node operation: " + operation.getType());
+        }
+    }
+
+    private String requireGroup(String name) {
+        String groupName = name.toLowerCase(Locale.ROOT);
+        if (this.luckPerms.getGroupManager().getGroup(groupName) == null) {
+            throw new OperationException("Group '" + groupName + "' does not exist.");
+        }
+        return groupName;
+    }
+
+    private static boolean check(DataMutateResult result) {
+        if (result == DataMutateResult.FAIL_ALREADY_HAS) {
+            throw new OperationException("it is already set.");
+        }
+        if (!result.wasSuccessful()) {
+            throw new OperationException("it is not set.");
+        }
+        return true;
+    }
+
+    private static boolean unset(PermissionHolder holder, ImmutableContextSet context, Predicate<? super Node> predicate) {
+        if (!clear(holder, context, predicate)) {
+            throw new OperationException("it is not set.");
+        }
+        return true;
+    }
+
+    private static boolean clear(PermissionHolder holder, ImmutableContextSet context, Predicate<? super Node> predicate) {
+        boolean present = holder.getNodes().stream()
+                .filter(n -> n.getContexts().equals(context))
+                .anyMatch(predicate);
+
+        if (present) {
+            holder.data().clear(context, predicate);
+        }
+        return present;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.context.DefaultContextKeys;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.model.PermissionHolder;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.types.InheritanceNode;
+import net.luckperms.api.node.types.MetaNode;
+import net.luckperms.api.node.types.PermissionNode;
+import net.luckperms.api.node.types.PrefixNode;
+import net.luckperms.api.node.types.SuffixNode;
+import net.luckperms.api.node.types.WeightNode;
+
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Reads holder data from the LuckPerms API. Only data LuckPerms already has loaded
+ * is read: all groups, and the users who are online.
+ */
+public class ApiNodeSource implements NodeSource {
+
+    /**
+     * Creates an API node source, if the LuckPerms API is available
+     *
+     * @param plugin the plugin instance
+     * @return the node source, or null if the API isn't available
+     */
+    public static ApiNodeSource create(LuckPermsCompat plugin) {
+        RegisteredServiceProvider<LuckPerms> provider = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return null;
+        }
+        return new ApiNodeSource(provider.getProvider());
+    }
+
+    private final LuckPerms luckPerms;
+
+    public ApiNodeSource(LuckPerms luckPerms) {
+        this.luckPerms = luckPerms;
+    }
+
+    @Override
+    public List<Operation> getNodes(HolderType holderType, String holder, boolean complete) {
+        PermissionHolder loaded = getHolder(holderType, holder);
+        if (loaded == null) {
+            return null;
+        }
+
+        List<Operation> operations = new ArrayList<>();
+        for (Node node : loaded.getNodes()) {
+            ImmutableContextSet contexts = node.getContexts();
+            String world;
+            if (contexts.isEmpty()) {
+                world = null;
+            } else if (contexts.size() == 1 && contexts.containsKey(DefaultContextKeys.WORLD_KEY)) {
+                world = contexts.getAnyValue(DefaultContextKeys.WORLD_KEY).orElse(null);
+            } else if (complete) {
+                // other contexts can't be expressed as an operation
+                return null;
+            } else {
+                continue;
+            }
+
+            long duration = 0;
+            if (node.hasExpiry()) {
+                duration = node.getExpiryDuration().getSeconds();
+                if (duration <= 0) {
+                    continue;
+                }
+            }
+
+            Operation operation = toOperation(holderType, holder, node, world, duration);
+            if (operation != null) {
+                operations.add(operation);
+            } else if (complete) {
+                return null;
+            }
+        }
+        return operations;
+    }
+
+    @Override
+    public boolean isSatisfied(Operation operation) {
+        switch (operation.getType()) {
+            case CREATE_GROUP:
+                return this.luckPerms.getGroupManager().getGroup(operation.getHolder().toLowerCase(Locale.ROOT)) != null;
+            case PARENT_SET:
+            case PARENT_ADD:
+            case PARENT_REMOVE:
+            case PERMISSION_SET:
+            case PERMISSION_UNSET:
+            case META_SET:
+            case META_UNSET:
+            case SET_WEIGHT:
+                break;
+            default:
+                return false;
+        }
+
+        PermissionHolder holder = getHolder(operation.getHolderType(), operation.getHolder());
+        if (holder == null) {
+            return false;
+        }
+
+        String key = operation.getKey();
+        String world = operation.getWorld();
+        int matches = 0;
+        switch (operation.getType()) {
+            case PARENT_SET: {
+                // the group must be the only parent in the context
+                for (Node node : holder.getNodes()) {
+                    if (node instanceof InheritanceNode && isInWorld(node, world)) {
+                        if (node.hasExpiry() || !((InheritanceNode) node).getGroupName().equalsIgnoreCase(key)) {
+                            return false;
+                        }
+                        matches++;
+                    }
+                }
+                if (holder instanceof User && world == null && !((User) holder).getPrimaryGroup().equalsIgnoreCase(key)) {
+                    return false;
+                }
+                return matches == 1;
+            }
+            case PARENT_ADD:
+            case PARENT_REMOVE:
+                for (Node node : holder.getNodes()) {
+                    if (node instanceof InheritanceNode && !node.hasExpiry() && isInWorld(node, world) && ((InheritanceNode) node).getGroupName().equalsIgnoreCase(key)) {
+                        matches++;
+                    }
+                }
+                return operation.getType() == Operation.Type.PARENT_ADD ? matches != 0 : matches == 0;
+            case PERMISSION_SET:
+            case PERMISSION_UNSET:
+                for (Node node : holder.getNodes()) {
+                    if (node instanceof PermissionNode && !node.hasExpiry() && isInWorld(node, world) && node.getKey().equalsIgnoreCase(key)) {
+                        if (operation.getType() == Operation.Type.PERMISSION_UNSET || node.getValue() != operation.isPermissionValue()) {
+                            return false;
+                        }
+                        matches++;
+                    }
+                }
+                return operation.getType() == Operation.Type.PERMISSION_SET ? matches != 0 : matches == 0;
+            case META_SET:
+            case META_UNSET:
+                for (Node node : holder.getNodes()) {
+                    if (node instanceof MetaNode && !node.hasExpiry() && isInWorld(node, world) && ((MetaNode) node).getMetaKey().equalsIgnoreCase(key)) {
+                        if (operation.getType() == Operation.Type.META_UNSET || !((MetaNode) node).getMetaValue().equals(operation.getValue())) {
+                            return false;
+                        }
+                        matches++;
+                    }
+                }
+                return operation.getType() == Operation.Type.META_SET ? matches == 1 : matches == 0;
+            case SET_WEIGHT:
+                for (Node node : holder.getNodes()) {
+                    if (node instanceof WeightNode) {
+                        if (!Integer.toString(((WeightNode) node).getWeight()).equals(operation.getValue())) {
+                            return false;
+                        }
+                        matches++;
+                    }
+                }
+                return matches == 1;
+            default:
+                throw new AssertionError(operation.getType());
+        }
+    }
+
+    private static boolean isInWorld(Node node, String world) {
+        ImmutableContextSet contexts = node.getContexts();
+        if (world == null) {
+            return contexts.isEmpty();
+        }
+        return contexts.size() == 1 && contexts.contains(DefaultContextKeys.WORLD_KEY, world);
+    }
+
+    private static Operation toOperation(HolderType holderType, String holder, Node node, String world, long duration) {
+        if (node instanceof InheritanceNode) {
+            String group = ((InheritanceNode) node).getGroupName();
+            return duration == 0
+                    ? Operation.parentAdd(holderType, holder, group, world)
+                    : Operation.parentAddTemp(holderType, holder, group, duration, world);
+        }
+        if (node instanceof MetaNode) {
+            MetaNode meta = (MetaNode) node;
+            return duration == 0 ? Operation.metaSet(holderType, holder, meta.getMetaKey(), meta.getMetaValue(), world) : null;
+        }
+        if (node instanceof PrefixNode) {
+            PrefixNode prefix = (PrefixNode) node;
+            return duration == 0 ? Operation.prefixSet(holderType, holder, prefix.getPriority(), prefix.getMetaValue(), world) : null;
+        }
+        if (node instanceof SuffixNode) {
+            SuffixNode suffix = (SuffixNode) node;
+            return duration == 0 ? Operation.suffixSet(holderType, holder, suffix.getPriority(), suffix.getMetaValue(), world) : null;
+        }
+        if (node instanceof WeightNode) {
+            return holderType == HolderType.GROUP && world == null ? Operation.setWeight(holder, ((WeightNode) node).getWeight()) : null;
+        }
+        if (node instanceof PermissionNode) {
+            return duration == 0
+                    ? Operation.permissionSet(holderType, holder, node.getKey(), node.getValue(), world)
+                    : Operation.permissionSetTemp(holderType, holder, node.getKey(), node.getValue(), duration, world);
+        }
+        return null;
+    }
+
+    private PermissionHolder getHolder(HolderType holderType, String name) {
+        if (holderType == HolderType.GROUP) {
+            return this.luckPerms.getGroupManager().getGroup(name.toLowerCase(Locale.ROOT));
+        }
+
+        if (name.length() == 36 && name.indexOf('-') != -1) {
+            try {
+                return this.luckPerms.getUserManager().getUser(UUID.fromString(name));
+            } catch (IllegalArgumentException e) {
+                // not a uuid
+            }
+        }
+        return this.luckPerms.getUserManager().getUser(name);
+    }
+}
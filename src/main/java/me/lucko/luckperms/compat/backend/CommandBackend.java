@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import lombok.RequiredArgsConstructor;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.names.NameCache;
+import me.lucko.luckperms.compat.output.OutputCapture;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Executes operations by dispatching the equivalent LuckPerms command
+ */
+@RequiredArgsConstructor
+public class CommandBackend implements ExecutionBackend {
+
+    // dispatching a command is fire and forget, so the result is always the same
+    private static final CompletableFuture<Boolean> DISPATCHED = CompletableFuture.completedFuture(true);
+
+    private final LuckPermsCompat plugin;
+
+    @Override
+    public BackendType getType() {
+        return BackendType.COMMAND;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> execute(CommandSender sender, Operation operation) {
+        // LuckPerms looks up the names of users it's given, so pass the uuid if it's known
+        NameCache names = this.plugin.getNameCache();
+        String holder = operation.getHolder();
+        if (names != null && operation.getHolderType() == HolderType.USER) {
+            holder = names.resolve(holder);
+        }
+        this.plugin.executeCommand(sender, operation.toCommand(holder));
+        return DISPATCHED;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeBatch(CommandSender sender, List<Operation> operations, Consumer<Operation> applied) {
+        // when the output is being summarised, give each command its own sender so replies can be told apart
+        OutputCapture capture = OutputCapture.of(sender);
+        for (Operation operation : operations) {
+            execute(capture == null ? sender : capture.expect(operation), operation);
+            applied.accept(operation);
+        }
+        return DISPATCHED;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Applies {@link Operation}s to LuckPerms
+ */
+public interface ExecutionBackend {
+
+    /**
+     * Gets the type of this backend
+     *
+     * @return the type
+     */
+    BackendType getType();
+
+    /**
+     * Applies an operation, sending any feedback to the sender
+     *
+     * @param sender the sender who caused the operation
+     * @param operation the operation
+     * @return a future completed with whether the operation succeeded
+     */
+    CompletableFuture<Boolean> execute(CommandSender sender, Operation operation);
+
+    /**
+     * Applies a number of operations, in order.
+     *
+     * <p>Backends may combine operations on the same holder, so that it is
+     * only loaded, saved and synced once.</p>
+     *
+     * @param sender the sender who caused the operations
+     * @param operations the operations
+     * @return a future completed with whether every operation succeeded
+     */
+    default CompletableFuture<Boolean> executeBatch(CommandSender sender, List<Operation> operations) {
+        return executeBatch(sender, operations, operation -> {});
+    }
+
+    /**
+     * Applies a number of operations, in order, as {@link #executeBatch(CommandSender, List)},
+     * reporting which of them were applied. Some may have been even if the batch failed.
+     *
+     * @param sender the sender who caused the operations
+     * @param operations the operations
+     * @param applied called with each operation which was applied, from any thread
+     * @return a future completed with whether every operation succeeded
+     */
+    default CompletableFuture<Boolean> executeBatch(CommandSender sender, List<Operation> operations, Consumer<Operation> applied) {
+        CompletableFuture<Boolean> result = CompletableFuture.completedFuture(true);
+        for (Operation operation : operations) {
+            CompletableFuture<Boolean> future = execute(sender, operation).thenApply(success -> {
+                if (success) {
+                    applied.accept(operation);
+                }
+                return success;
+            });
+            result = result.thenCombine(future, (a, b) -> a && b);
+        }
+        return result;
+    }
+
+}
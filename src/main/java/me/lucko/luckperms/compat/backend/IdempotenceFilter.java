@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drops operations which wouldn't change anything, e.g. adding a group a user already
+ * has, before they reach LuckPerms and cause a save and a sync.
+ *
+ * <p>Operations are checked against the data LuckPerms has loaded. Holders with
+ * changes still being applied by the API backend aren't checked, as the loaded data
+ * may not include those changes yet. Operations applied by dispatching commands can't
+ * be tracked like this, so aren't filtered at all.</p>
+ */
+public class IdempotenceFilter {
+    private final NodeSource nodes;
+
+    // the holders with operations in flight, and how many
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+
+    public IdempotenceFilter(NodeSource nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Checks if an operation can be skipped
+     *
+     * @param operation the operation
+     * @return true if applying it wouldn't change anything
+     */
+    public boolean isUnchanged(Operation operation) {
+        if (!this.pending.isEmpty() && this.pending.containsKey(holderKey(operation))) {
+            return false;
+        }
+        return this.nodes.isSatisfied(operation);
+    }
+
+    /**
+     * Removes the operations which can be skipped from a batch. Operations are only
+     * checked if no operation before them in the batch changes the same holder.
+     *
+     * @param operations the operations
+     * @return the operations to apply. this is the given list if none can be skipped
+     */
+    public List<Operation> filter(List<Operation> operations) {
+        List<Operation> remaining = null;
+        Set<String> changed = null;
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            String holder = operations.size() == 1 ? null : holderKey(operation);
+            if ((changed == null || !changed.contains(holder)) && isUnchanged(operation)) {
+                if (remaining == null) {
+                    remaining = new ArrayList<>(operations.subList(0, i));
+                }
+                continue;
+            }
+
+            if (remaining != null) {
+                remaining.add(operation);
+            }
+            if (holder != null) {
+                if (changed == null) {
+                    changed = new HashSet<>();
+                }
+                changed.add(holder);
+            }
+        }
+        return remaining == null ? operations : remaining;
+    }
+
+    /**
+     * Marks the holders of some operations as having changes in flight, until the future completes
+     *
+     * @param operations the operations
+     * @param future the future of the operations
+     */
+    public void track(List<Operation> operations, CompletableFuture<?> future) {
+        if (future.isDone()) {
+            return;
+        }
+
+        for (Operation operation : operations) {
+            this.pending.merge(holderKey(operation), 1, Integer::sum);
+        }
+        future.whenComplete((result, ex) -> {
+            for (Operation operation : operations) {
+                this.pending.computeIfPresent(holderKey(operation), (k, count) -> count == 1 ? null : count - 1);
+            }
+        });
+    }
+
+    private static String holderKey(Operation operation) {
+        return operation.getHolderType().getLabel() + ":" + operation.getHolder().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import java.util.List;
+
+/**
+ * Reads the current data of permission holders, e.g. so changes to it can be reversed,
+ * or skipped if they wouldn't change anything.
+ */
+public interface NodeSource {
+
+    /**
+     * Gets the nodes a holder currently has, as the operations which would add them again.
+     *
+     * <p>Only nodes which can be expressed as an {@link Operation} are returned, e.g. not those
+     * with contexts other than a world. Where every node is needed, such as to put back data
+     * which is about to be wiped, a holder with any other nodes is treated as unreadable.</p>
+     *
+     * @param holderType the type of the holder
+     * @param holder the name (or uuid) of the holder
+     * @param complete if null should be returned when any node can't be expressed
+     * @return the operations, or null if the holder isn't loaded
+     */
+    List<Operation> getNodes(HolderType holderType, String holder, boolean complete);
+
+    /**
+     * Checks if applying an operation would leave its holder unchanged
+     *
+     * @param operation the operation
+     * @return true if the holder is loaded, and already in the state the operation would leave it in
+     */
+    boolean isSatisfied(Operation operation);
+
+}
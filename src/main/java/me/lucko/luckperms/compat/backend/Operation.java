@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.backend;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A single mutation to LuckPerms data, produced by a remapped command.
+ *
+ * <p>Operations can either be rendered as a LuckPerms command, or applied
+ * directly through the LuckPerms API. See {@link ExecutionBackend}.</p>
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Operation {
+
+    public static Operation parentSet(HolderType holderType, String holder, String group, String world) {
+        return new Operation(Type.PARENT_SET, holderType, holder, group, null, true, 0, world);
+    }
+
+    public static Operation parentAdd(HolderType holderType, String holder, String group, String world) {
+        return new Operation(Type.PARENT_ADD, holderType, holder, group, null, true, 0, world);
+    }
+
+    public static Operation parentAddTemp(HolderType holderType, String holder, String group, long duration, String world) {
+        return new Operation(Type.PARENT_ADD_TEMP, holderType, holder, group, null, true, duration, world);
+    }
+
+    public static Operation parentRemove(HolderType holderType, String holder, String group, String world) {
+        return new Operation(Type.PARENT_REMOVE, holderType, holder, group, null, true, 0, world);
+    }
+
+    public static Operation parentRemoveTemp(HolderType holderType, String holder, String group, String world) {
+        return new Operation(Type.PARENT_REMOVE_TEMP, holderType, holder, group, null, true, 0, world);
+    }
+
+    public static Operation parentClear(HolderType holderType, String holder) {
+        return new Operation(Type.PARENT_CLEAR, holderType, holder, null, null, true, 0, null);
+    }
+
+    public static Operation permissionSet(HolderType holderType, String holder, String permission, boolean value, String world) {
+        return new Operation(Type.PERMISSION_SET, holderType, holder, permission, null, value, 0, world);
+    }
+
+    public static Operation permissionSetTemp(HolderType holderType, String holder, String permission, boolean value, long duration, String world) {
+        return new Operation(Type.PERMISSION_SET_TEMP, holderType, holder, permission, null, value, duration, world);
+    }
+
+    public static Operation permissionUnset(HolderType holderType, String holder, String permission, String world) {
+        return new Operation(Type.PERMISSION_UNSET, holderType, holder, permission, null, true, 0, world);
+    }
+
+    public static Operation permissionUnsetTemp(HolderType holderType, String holder, String permission, String world) {
+        return new Operation(Type.PERMISSION_UNSET_TEMP, holderType, holder, permission, null, true, 0, world);
+    }
+
+    public static Operation metaSet(HolderType holderType, String holder, String key, String value, String world) {
+        return new Operation(Type.META_SET, holderType, holder, key, value, true, 0, world);
+    }
+
+    public static Operation metaUnset(HolderType holderType, String holder, String key, String world) {
+        return new Operation(Type.META_UNSET, holderType, holder, key, null, true, 0, world);
+    }
+
+    public static Operation prefixSet(HolderType holderType, String holder, int priority, String prefix, String world) {
+        return new Operation(Type.PREFIX_SET, holderType, holder, Integer.toString(priority), prefix, true, 0, world);
+    }
+
+    public static Operation prefixUnset(HolderType holderType, String holder, int priority, String world) {
+        return new Operation(Type.PREFIX_UNSET, holderType, holder, Integer.toString(priority), null, true, 0, world);
+    }
+
+    public static Operation suffixSet(HolderType holderType, String holder, int priority, String suffix, String world) {
+        return new Operation(Type.SUFFIX_SET, holderType, holder, Integer.toString(priority), suffix, true, 0, world);
+    }
+
+    public static Operation suffixUnset(HolderType holderType, String holder, int priority, String world) {
+        return new Operation(Type.SUFFIX_UNSET, holderType, holder, Integer.toString(priority), null, true, 0, world);
+    }
+
+    public static Operation clear(HolderType holderType, String holder) {
+        return new Operation(Type.CLEAR, holderType, holder, null, null, true, 0, null);
+    }
+
+    public static Operation createGroup(String group) {
+        return new Operation(Type.CREATE_GROUP, HolderType.GROUP, group, null, null, true, 0, null);
+    }
+
+    public static Operation deleteGroup(String group) {
+        return new Operation(Type.DELETE_GROUP, HolderType.GROUP, group, null, null, true, 0, null);
+    }
+
+    public static Operation setWeight(String group, int weight) {
+        return new Operation(Type.SET_WEIGHT, HolderType.GROUP, group, null, Integer.toString(weight), true, 0, null);
+    }
+
+    public static Operation unsetWeight(String group, int weight) {
+        return new Operation(Type.UNSET_WEIGHT, HolderType.GROUP, group, null, Integer.toString(weight), true, 0, null);
+    }
+
+    public static Operation promote(String user, String track) {
+        return new Operation(Type.PROMOTE, HolderType.USER, user, track, null, true, 0, null);
+    }
+
+    public static Operation demote(String user, String track) {
+        return new Operation(Type.DEMOTE, HolderType.USER, user, track, null, true, 0, null);
+    }
+
+    /**
+     * Creates an operation from its fields, e.g. when reading one back from storage.
+     * The other factory methods should be preferred.
+     *
+     * @return the operation
+     */
+    public static Operation of(Type type, HolderType holderType, String holder, String key, String value, boolean permissionValue, long duration, String world) {
+        return new Operation(type, holderType, holder, key, value, permissionValue, duration, world);
+    }
+
+    /**
+     * The type of the operation
+     */
+    private final Type type;
+
+    /**
+     * The type of holder being modified
+     */
+    private final HolderType holderType;
+
+    /**
+     * The name (or uuid) of the holder being modified
+     */
+    private final String holder;
+
+    /**
+     * The group, permission, meta key, prefix/suffix priority or track the operation refers to, if any
+     */
+    private final String key;
+
+    /**
+     * The meta value, prefix, suffix or weight, if any
+     */
+    private final String value;
+
+    /**
+     * The value of the permission being set
+     */
+    private final boolean permissionValue;
+
+    /**
+     * The duration in seconds of temporary nodes, otherwise 0
+     */
+    private final long duration;
+
+    /**
+     * The world the operation applies in, or null for all worlds
+     */
+    private final String world;
+
+    /**
+     * Gets if the operation applies in a single world
+     *
+     * @return if the operation has a world context
+     */
+    public boolean hasWorld() {
+        return this.world != null;
+    }
+
+    /**
+     * Renders this operation as a LuckPerms command, without the "/luckperms" part
+     *
+     * @return the command
+     */
+    public String toCommand() {
+        return toCommand(this.holder);
+    }
+
+    /**
+     * Renders this operation as a LuckPerms command, referring to the holder by another
+     * name, e.g. a user's uuid
+     *
+     * @param holder the name (or uuid) of the holder
+     * @return the command
+     */
+    public String toCommand(String holder) {
+        StringBuilder sb = new StringBuilder(64);
+        switch (this.type) {
+            case CREATE_GROUP:
+                return sb.append("creategroup ").append(holder).toString();
+            case DELETE_GROUP:
+                return sb.append("deletegroup ").append(holder).toString();
+            default:
+                break;
+        }
+
+        sb.append(this.holderType.getLabel()).append(' ').append(holder).append(' ');
+        switch (this.type) {
+            case PARENT_SET:
+                sb.append("parent set ").append(this.key);
+                break;
+            case PARENT_ADD:
+                sb.append("parent add ").append(this.key);
+                break;
+            case PARENT_ADD_TEMP:
+                sb.append("parent addtemp ").append(this.key).append(' ').append(this.duration).append("seconds");
+                break;
+            case PARENT_REMOVE:
+                sb.append("parent remove ").append(this.key);
+                break;
+            case PARENT_REMOVE_TEMP:
+                sb.append("parent removetemp ").append(this.key);
+                break;
+            case PARENT_CLEAR:
+                sb.append("parent clear");
+                break;
+            case PERMISSION_SET:
+                sb.append("permission set ").append(this.key).append(' ').append(this.permissionValue);
+                break;
+            case PERMISSION_SET_TEMP:
+                sb.append("permission settemp ").append(this.key).append(' ').append(this.permissionValue).append(' ').append(this.duration).append("seconds");
+                break;
+            case PERMISSION_UNSET:
+                sb.append("permission unset ").append(this.key);
+                break;
+            case PERMISSION_UNSET_TEMP:
+                sb.append("permission unsettemp ").append(this.key);
+                break;
+            case META_SET:
+                sb.append("meta set ").append(this.key).append(' ').append(this.value);
+                break;
+            case META_UNSET:
+                sb.append("meta unset ").append(this.key);
+                break;
+            case PREFIX_SET:
+                sb.append("meta setprefix ").append(this.key).append(" \"").append(this.value).append('"');
+                break;
+            case PREFIX_UNSET:
+                sb.append("meta removeprefix ").append(this.key);
+                break;
+            case SUFFIX_SET:
+                sb.append("meta setsuffix ").append(this.key).append(" \"").append(this.value).append('"');
+                break;
+            case SUFFIX_UNSET:
+                sb.append("meta removesuffix ").append(this.key);
+                break;
+            case CLEAR:
+                sb.append("clear");
+                break;
+            case SET_WEIGHT:
+                sb.append("setweight ").append(this.value);
+                break;
+            case UNSET_WEIGHT:
+                // there's no command for this, so the node setweight added is removed
+                sb.append("permission unset weight.").append(this.value);
+                break;
+            case PROMOTE:
+                sb.append("promote ").append(this.key);
+                break;
+            case DEMOTE:
+                sb.append("demote ").append(this.key);
+                break;
+            default:
+                throw new AssertionError(this.type);
+        }
+
+        if (this.world != null) {
+            sb.append(" global ").append(this.world);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the permission LuckPerms requires to run the equivalent command
+     *
+     * @return the permission
+     */
+    public String getPermission() {
+        switch (this.type) {
+            case CREATE_GROUP:
+                return "luckperms.creategroup";
+            case DELETE_GROUP:
+                return "luckperms.deletegroup";
+            default:
+                break;
+        }
+
+        String prefix = "luckperms." + this.holderType.getLabel() + ".";
+        switch (this.type) {
+            case PARENT_SET:
+                return prefix + "parent.set";
+            case PARENT_ADD:
+                return prefix + "parent.add";
+            case PARENT_ADD_TEMP:
+                return prefix + "parent.addtemp";
+            case PARENT_REMOVE:
+                return prefix + "parent.remove";
+            case PARENT_REMOVE_TEMP:
+                return prefix + "parent.removetemp";
+            case PARENT_CLEAR:
+                return prefix + "parent.clear";
+            case PERMISSION_SET:
+                return prefix + "permission.set";
+            case PERMISSION_SET_TEMP:
+                return prefix + "permission.settemp";
+            case PERMISSION_UNSET:
+                return prefix + "permission.unset";
+            case PERMISSION_UNSET_TEMP:
+                return prefix + "permission.unsettemp";
+            case META_SET:
+                return prefix + "meta.set";
+            case META_UNSET:
+                return prefix + "meta.unset";
+            case PREFIX_SET:
+                return prefix + "meta.setprefix";
+            case PREFIX_UNSET:
+                return prefix + "meta.removeprefix";
+            case SUFFIX_SET:
+                return prefix + "meta.setsuffix";
+            case SUFFIX_UNSET:
+                return prefix + "meta.removesuffix";
+            case CLEAR:
+                return prefix + "clear";
+            case SET_WEIGHT:
+                return prefix + "setweight";
+            case UNSET_WEIGHT:
+                return prefix + "permission.unset";
+            case PROMOTE:
+                return prefix + "promote";
+            case DEMOTE:
+                return prefix + "demote";
+            default:
+                throw new AssertionError(this.type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toCommand();
+    }
+
+    public enum Type {
+        PARENT_SET,
+        PARENT_ADD,
+        PARENT_ADD_TEMP,
+        PARENT_REMOVE,
+        PARENT_REMOVE_TEMP,
+        PARENT_CLEAR,
+        PERMISSION_SET,
+        PERMISSION_SET_TEMP,
+        PERMISSION_UNSET,
+        PERMISSION_UNSET_TEMP,
+        META_SET,
+        META_UNSET,
+        CLEAR,
+        CREATE_GROUP,
+        DELETE_GROUP,
+        SET_WEIGHT,
+        PROMOTE,
+        DEMOTE,
+        PREFIX_SET,
+        PREFIX_UNSET,
+        SUFFIX_SET,
+        SUFFIX_UNSET,
+        UNSET_WEIGHT
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.check;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.cacheddata.Result;
+import net.luckperms.api.context.Context;
+import net.luckperms.api.context.ContextSet;
+import net.luckperms.api.model.PermissionHolder;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.metadata.types.InheritanceOriginMetadata;
+import net.luckperms.api.query.QueryOptions;
+import net.luckperms.api.util.Tristate;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.StringJoiner;
+
+/**
+ * Checks permissions using the data LuckPerms has cached for online players
+ */
+public class ApiPermissionQuery implements PermissionQuery {
+
+    /**
+     * Creates an API permission query, if the LuckPerms API is available
+     *
+     * @param plugin the plugin instance
+     * @return the query, or null if the API isn't available
+     */
+    public static ApiPermissionQuery create(LuckPermsCompat plugin) {
+        RegisteredServiceProvider<LuckPerms> provider = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return null;
+        }
+        return new ApiPermissionQuery(provider.getProvider());
+    }
+
+    private final LuckPerms luckPerms;
+
+    public ApiPermissionQuery(LuckPerms luckPerms) {
+        this.luckPerms = luckPerms;
+    }
+
+    @Override
+    public PermissionCheck query(Player player, String permission) {
+        User user = this.luckPerms.getUserManager().getUser(player.getUniqueId());
+        if (user == null) {
+            return null;
+        }
+
+        QueryOptions options = this.luckPerms.getContextManager().getQueryOptions(player);
+        Result<Tristate, Node> result = user.getCachedData().getPermissionData(options).queryPermission(permission);
+        Node node = result.node();
+        Tristate value = result.result();
+
+        String key = null;
+        String source = null;
+        String contexts = null;
+        if (node != null) {
+            key = node.getKey().equalsIgnoreCase(permission) ? null : node.getKey();
+            source = node.getMetadata(InheritanceOriginMetadata.KEY)
+                    .map(origin -> describe(user, origin.getOrigin()))
+                    .orElse(null);
+            contexts = describe(node.getContexts()) + (node.hasExpiry() ? ", expires in " + node.getExpiryDuration().getSeconds() + "s" : "");
+        }
+
+        return new PermissionCheck(
+                player.getName(),
+                permission,
+                value == Tristate.UNDEFINED ? null : value.asBoolean(),
+                key,
+                source,
+                contexts,
+                describe(options.context())
+        );
+    }
+
+    private static String describe(User user, PermissionHolder.Identifier origin) {
+        if (origin.getType().equals(PermissionHolder.Identifier.GROUP_TYPE)) {
+            return "group " + origin.getName();
+        }
+        return origin.getName().equals(user.getUniqueId().toString()) ? "the player" : "user " + origin.getName();
+    }
+
+    private static String describe(ContextSet contexts) {
+        if (contexts.isEmpty()) {
+            return "global";
+        }
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Context context : contexts) {
+            joiner.add(context.getKey() + "=" + context.getValue());
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.check;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import org.bukkit.command.CommandSender;
+
+/**
+ * The result of checking a permission of an online player
+ */
+@Getter
+@RequiredArgsConstructor
+public final class PermissionCheck {
+
+    /**
+     * The name of the player
+     */
+    private final String player;
+
+    /**
+     * The permission which was checked
+     */
+    private final String permission;
+
+    /**
+     * The value of the permission, or null if it isn't set
+     */
+    private final Boolean value;
+
+    /**
+     * The node which set the value, if it isn't the permission itself, e.g. a wildcard
+     */
+    private final String node;
+
+    /**
+     * Where the value comes from, e.g. the group it is inherited from, or null if it isn't known
+     */
+    private final String source;
+
+    /**
+     * The contexts the value is set in, or null if they aren't known
+     */
+    private final String contexts;
+
+    /**
+     * The contexts the player is currently in, or null if they aren't known
+     */
+    private final String activeContexts;
+
+    /**
+     * Sends the result to a sender
+     *
+     * @param sender the sender
+     */
+    public void send(CommandSender sender) {
+        LuckPermsCompat.msg(sender, "Permission check for &b" + this.player + "&a: &f" + this.permission);
+        LuckPermsCompat.msg(sender, "&3Value: " + (this.value == null ? "&7undefined" : this.value ? "&atrue" : "&cfalse"));
+        if (this.node != null) {
+            LuckPermsCompat.msg(sender, "&3Node: &f" + this.node);
+        }
+        if (this.source != null) {
+            LuckPermsCompat.msg(sender, "&3Set by: &f" + this.source);
+        }
+        if (this.contexts != null) {
+            LuckPermsCompat.msg(sender, "&3Set in: &f" + this.contexts);
+        }
+        if (this.activeContexts != null) {
+            LuckPermsCompat.msg(sender, "&3Current contexts: &f" + this.activeContexts);
+        }
+    }
+}
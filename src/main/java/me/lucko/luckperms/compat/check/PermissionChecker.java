@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.check;
+
+import lombok.RequiredArgsConstructor;
+
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Answers permission checks for online players without going through LuckPerms' commands,
+ * which may load the user from storage. Checks for offline players, and checks by senders
+ * without the permission the command requires, are left to the commands.
+ */
+@RequiredArgsConstructor
+public class PermissionChecker {
+    private final Server server;
+    private final PermissionQuery query;
+
+    /**
+     * Checks a permission of a player, and sends the result, if the player is online
+     *
+     * @param sender the sender to send the result to
+     * @param user the name or uuid of the player
+     * @param permission the permission
+     * @param required the permission LuckPerms requires for the command the check replaces
+     * @return false if the player isn't online or the sender lacks the required permission,
+     *         so the check wasn't made
+     */
+    public boolean sendCheck(CommandSender sender, String user, String permission, String required) {
+        if (!sender.hasPermission(required)) {
+            return false;
+        }
+
+        Player player = getOnlinePlayer(user);
+        if (player == null) {
+            return false;
+        }
+
+        PermissionCheck check = this.query.query(player, permission);
+        if (check == null) {
+            return false;
+        }
+        check.send(sender);
+        return true;
+    }
+
+    // players may be given by uuid
+    private Player getOnlinePlayer(String user) {
+        Player player;
+        if (user.length() == 36 && user.indexOf('-') == 8) {
+            try {
+                player = this.server.getPlayer(UUID.fromString(user));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        } else {
+            player = this.server.getPlayerExact(user);
+        }
+        return player != null && player.isOnline() ? player : null;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.check;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Checks a permission of an online player, using data which has already been calculated
+ */
+public interface PermissionQuery {
+
+    /**
+     * Checks using Bukkit's permissions, which know the value of a permission, but not where it's set
+     */
+    PermissionQuery BUKKIT = (player, permission) -> {
+        boolean set = player.isPermissionSet(permission);
+        return new PermissionCheck(player.getName(), permission, set ? player.hasPermission(permission) : null,
+                null, set ? null : "the permission's default (" + player.hasPermission(permission) + ")", null, null);
+    };
+
+    /**
+     * Checks a permission
+     *
+     * @param player the player
+     * @param permission the permission
+     * @return the result, or null if the player's data isn't loaded
+     */
+    PermissionCheck query(Player player, String permission);
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.completion;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The names offered when tab completing the placeholders of remapped commands.
+ *
+ * <p>Names are kept in memory and updated as players join and leave, and as
+ * groups and tracks are created and deleted in LuckPerms (see
+ * {@link LuckPermsNameListener}), so completing never has to query
+ * LuckPerms' storage.</p>
+ */
+public class CompletionIndex implements Listener {
+
+    /**
+     * The kinds of name which can be completed
+     */
+    public enum Type {
+        PLAYER, GROUP, TRACK;
+
+        /**
+         * Gets the kind of name a command placeholder takes
+         *
+         * @param placeholder the placeholder name, e.g. "group"
+         * @return the type, or null if the placeholder isn't completed
+         */
+        public static Type forPlaceholder(String placeholder) {
+            switch (placeholder) {
+                case "user":
+                case "player":
+                    return PLAYER;
+                case "group":
+                case "group1":
+                case "group2":
+                case "parents":
+                    return GROUP;
+                case "ladder":
+                    return TRACK;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final AtomicReferenceArray<PrefixIndex> names = new AtomicReferenceArray<>(Type.values().length);
+
+    public CompletionIndex() {
+        for (Type type : Type.values()) {
+            this.names.set(type.ordinal(), PrefixIndex.EMPTY);
+        }
+    }
+
+    /**
+     * Starts tracking online players
+     *
+     * @param plugin the plugin to register the listener with
+     */
+    public void start(Plugin plugin) {
+        List<String> players = new ArrayList<>();
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            players.add(player.getName());
+        }
+        set(Type.PLAYER, players);
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Adds the names matching a placeholder to a list
+     *
+     * @param placeholder the placeholder name, e.g. "group"
+     * @param prefix what has been typed so far
+     * @param out the list to add to
+     */
+    public void complete(String placeholder, String prefix, List<String> out) {
+        Type type = Type.forPlaceholder(placeholder);
+        if (type != null) {
+            this.names.get(type.ordinal()).complete(prefix, out);
+        }
+    }
+
+    /**
+     * Gets the names of a type
+     *
+     * @param type the type
+     * @return the names
+     */
+    public PrefixIndex get(Type type) {
+        return this.names.get(type.ordinal());
+    }
+
+    public void add(Type type, String name) {
+        this.names.updateAndGet(type.ordinal(), index -> index.with(name));
+    }
+
+    public void remove(Type type, String name) {
+        this.names.updateAndGet(type.ordinal(), index -> index.without(name));
+    }
+
+    public void set(Type type, Collection<String> names) {
+        this.names.set(type.ordinal(), PrefixIndex.of(names));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        add(Type.PLAYER, e.getPlayer().getName());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        remove(Type.PLAYER, e.getPlayer().getName());
+    }
+
+}
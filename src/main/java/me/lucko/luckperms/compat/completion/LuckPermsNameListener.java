@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.completion;
+
+import me.lucko.luckperms.compat.completion.CompletionIndex.Type;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.event.EventBus;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.group.GroupCreateEvent;
+import net.luckperms.api.event.group.GroupDeleteEvent;
+import net.luckperms.api.event.group.GroupLoadAllEvent;
+import net.luckperms.api.event.group.GroupLoadEvent;
+import net.luckperms.api.event.track.TrackCreateEvent;
+import net.luckperms.api.event.track.TrackDeleteEvent;
+import net.luckperms.api.event.track.TrackLoadAllEvent;
+import net.luckperms.api.event.track.TrackLoadEvent;
+import net.luckperms.api.model.group.Group;
+import net.luckperms.api.track.Track;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the group and track names of a {@link CompletionIndex} up to date with
+ * LuckPerms, using the LuckPerms event bus.
+ */
+public final class LuckPermsNameListener implements AutoCloseable {
+
+    /**
+     * Loads the current groups and tracks into the index, and subscribes to changes
+     *
+     * @param plugin the plugin instance
+     * @param index the index to update
+     * @return the listener, or null if the LuckPerms API isn't available
+     */
+    public static LuckPermsNameListener subscribe(Plugin plugin, CompletionIndex index) {
+        RegisteredServiceProvider<LuckPerms> provider = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return null;
+        }
+
+        LuckPermsNameListener listener = new LuckPermsNameListener(provider.getProvider(), index);
+        listener.subscribe(plugin);
+        listener.loadGroups();
+        listener.loadTracks();
+        return listener;
+    }
+
+    private final LuckPerms luckPerms;
+    private final CompletionIndex index;
+    private final List<EventSubscription<?>> subscriptions = new ArrayList<>();
+
+    private LuckPermsNameListener(LuckPerms luckPerms, CompletionIndex index) {
+        this.luckPerms = luckPerms;
+        this.index = index;
+    }
+
+    private void subscribe(Plugin plugin) {
+        EventBus bus = this.luckPerms.getEventBus();
+        this.subscriptions.add(bus.subscribe(plugin, GroupCreateEvent.class, e -> this.index.add(Type.GROUP, e.getGroup().getName())));
+        this.subscriptions.add(bus.subscribe(plugin, GroupLoadEvent.class, e -> this.index.add(Type.GROUP, e.getGroup().getName())));
+        this.subscriptions.add(bus.subscribe(plugin, GroupDeleteEvent.class, e -> this.index.remove(Type.GROUP, e.getGroupName())));
+        this.subscriptions.add(bus.subscribe(plugin, GroupLoadAllEvent.class, e -> loadGroups()));
+
+        this.subscriptions.add(bus.subscribe(plugin, TrackCreateEvent.class, e -> this.index.add(Type.TRACK, e.getTrack().getName())));
+        this.subscriptions.add(bus.subscribe(plugin, TrackLoadEvent.class, e -> this.index.add(Type.TRACK, e.getTrack().getName())));
+        this.subscriptions.add(bus.subscribe(plugin, TrackDeleteEvent.class, e -> this.index.remove(Type.TRACK, e.getTrackName())));
+        this.subscriptions.add(bus.subscribe(plugin, TrackLoadAllEvent.class, e -> loadTracks()));
+    }
+
+    // a full load also drops groups which no longer exist, so the names are replaced rather than merged
+    private void loadGroups() {
+        List<String> names = new ArrayList<>();
+        for (Group group : this.luckPerms.getGroupManager().getLoadedGroups()) {
+            names.add(group.getName());
+        }
+        this.index.set(Type.GROUP, names);
+    }
+
+    private void loadTracks() {
+        List<String> names = new ArrayList<>();
+        for (Track track : this.luckPerms.getTrackManager().getLoadedTracks()) {
+            names.add(track.getName());
+        }
+        this.index.set(Type.TRACK, names);
+    }
+
+    @Override
+    public void close() {
+        for (EventSubscription<?> subscription : this.subscriptions) {
+            subscription.close();
+        }
+        this.subscriptions.clear();
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * An immutable, case-insensitive set of names, which can be searched by prefix.
+ *
+ * <p>The names are held sorted by their lowercase form, so every name starting
+ * with a prefix sits in one contiguous range, found with a binary search. This
+ * gives the same lookups as a prefix trie, in two flat arrays.</p>
+ */
+public final class PrefixIndex {
+
+    /**
+     * An index with no names
+     */
+    public static final PrefixIndex EMPTY = new PrefixIndex(new String[0], new String[0]);
+
+    /**
+     * Creates an index of the given names. Of names which only differ in case, the last one is kept.
+     *
+     * @param names the names
+     * @return an index
+     */
+    public static PrefixIndex of(Collection<String> names) {
+        TreeMap<String, String> sorted = new TreeMap<>();
+        for (String name : names) {
+            sorted.put(name.toLowerCase(Locale.ROOT), name);
+        }
+        return new PrefixIndex(sorted.keySet().toArray(new String[0]), sorted.values().toArray(new String[0]));
+    }
+
+    // the lowercase names, sorted, and the original names in the same order
+    private final String[] keys;
+    private final String[] names;
+
+    private PrefixIndex(String[] keys, String[] names) {
+        this.keys = keys;
+        this.names = names;
+    }
+
+    /**
+     * Adds every name starting with the given prefix to a list, in order
+     *
+     * @param prefix the prefix
+     * @param out the list to add to
+     */
+    public void complete(String prefix, List<String> out) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int i = Arrays.binarySearch(this.keys, key);
+        if (i < 0) {
+            i = -(i + 1);
+        }
+        for (; i < this.keys.length && this.keys[i].startsWith(key); i++) {
+            out.add(this.names[i]);
+        }
+    }
+
+    /**
+     * Gets if the index contains a name, ignoring case
+     *
+     * @param name the name
+     * @return true if the name is in the index
+     */
+    public boolean contains(String name) {
+        return Arrays.binarySearch(this.keys, name.toLowerCase(Locale.ROOT)) >= 0;
+    }
+
+    /**
+     * Returns a copy of this index with a name added
+     *
+     * @param name the name
+     * @return the new index
+     */
+    public PrefixIndex with(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        int i = Arrays.binarySearch(this.keys, key);
+        if (i >= 0) {
+            if (this.names[i].equals(name)) {
+                return this;
+            }
+            String[] names = this.names.clone();
+            names[i] = name;
+            return new PrefixIndex(this.keys, names);
+        }
+
+        i = -(i + 1);
+        return new PrefixIndex(insert(this.keys, i, key), insert(this.names, i, name));
+    }
+
+    /**
+     * Returns a copy of this index with a name removed
+     *
+     * @param name the name
+     * @return the new index
+     */
+    public PrefixIndex without(String name) {
+        int i = Arrays.binarySearch(this.keys, name.toLowerCase(Locale.ROOT));
+        if (i < 0) {
+            return this;
+        }
+        return new PrefixIndex(remove(this.keys, i), remove(this.names, i));
+    }
+
+    /**
+     * Gets the names in the index, in order
+     *
+     * @return the names
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(Arrays.asList(this.names));
+    }
+
+    /**
+     * Gets the number of names in the index
+     *
+     * @return the size
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    private static String[] insert(String[] array, int index, String value) {
+        String[] result = new String[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static String[] remove(String[] array, int index) {
+        String[] result = new String[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+}
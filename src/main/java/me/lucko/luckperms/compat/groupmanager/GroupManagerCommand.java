@@ -22,71 +22,121 @@
 
 package me.lucko.luckperms.compat.groupmanager;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 import lombok.Setter;
 
 import me.lucko.luckperms.compat.LuckPermsCompat;
-import me.lucko.luckperms.compat.MappingFunction;
+import me.lucko.luckperms.compat.MappingAction;
+import me.lucko.luckperms.compat.MappingContext;
+import me.lucko.luckperms.compat.Parameters;
+import me.lucko.luckperms.compat.RemappedCommand;
 
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Abstract command executor for remapped commands
  */
-@RequiredArgsConstructor(staticName = "of")
-public class GroupManagerCommand implements CommandExecutor {
+public class GroupManagerCommand implements RemappedCommand, TabCompleter {
+
+    public static GroupManagerCommand of(List<String> arguments, MappingAction function) {
+        return of(arguments, function, false);
+    }
+
+    /**
+     * Creates a command whose mapping does nothing but apply operations,
+     * see {@link MappingContext#isOperationsOnly()}
+     */
+    public static GroupManagerCommand ofOperations(List<String> arguments, MappingAction function) {
+        return of(arguments, function, true);
+    }
+
+    private static GroupManagerCommand of(List<String> arguments, MappingAction function, boolean operationsOnly) {
+        String usage = arguments.stream().map(str -> "<" + str + ">").collect(Collectors.joining(" "));
+        return new GroupManagerCommand(Parameters.of(arguments), usage, function, operationsOnly);
+    }
 
     /**
-     * Plugin instance. This is set when the command is registered with the server
+     * The mapping context. This is set when the command is registered with the server
      */
+    @Getter
     @Setter
-    private LuckPermsCompat plugin = null;
+    private volatile MappingContext context = null;
+
+    /**
+     * The expected arguments, resolved to slots
+     */
+    private final Parameters parameters;
 
     /**
-     * A list of expected arguments
+     * The usage of the command, e.g. "&lt;player&gt; &lt;group&gt;"
      */
-    private final List<String> arguments;
+    @Getter
+    private final String usage;
 
     /**
      * The function responsible for remapping and executing the LP command equivalent
      */
-    private final MappingFunction function;
+    private final MappingAction function;
+
+    /**
+     * If the function does nothing but apply operations
+     */
+    @Getter
+    private final boolean operationsOnly;
+
+    private GroupManagerCommand(Parameters parameters, String usage, MappingAction function, boolean operationsOnly) {
+        this.parameters = parameters;
+        this.usage = usage;
+        this.function = function;
+        this.operationsOnly = operationsOnly;
+    }
 
     @Override
-    public boolean onCommand(CommandSender sender, Command command, String s, String[] a) {
+    public LuckPermsCompat getPlugin() {
+        return context.getPlugin();
+    }
+
+    @Override
+    public MappingContext resolve(String[] args) {
+        return args.length < parameters.size() ? null : context;
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String s, String[] a) {
         if (!sender.hasPermission("luckpermscompat.use")) {
             LuckPermsCompat.msg(sender, "&cNo permission.");
-            return true;
+            return false;
         }
 
-        List<String> args = new ArrayList<>(Arrays.asList(a));
-
-        if (args.size() < arguments.size()) {
-            LuckPermsCompat.msg(sender, "&cUsage: /" + s + " " + getUsage());
-            return true;
-        }
+        MappingContext context = this.context;
+        context.getMetrics().recordInvocation();
 
-        Map<String, String> values = new HashMap<>();
-        AtomicInteger counter = new AtomicInteger(-1);
-        for (String expected : arguments) {
-            values.put(expected, args.get(counter.incrementAndGet()));
+        if (a.length < parameters.size()) {
+            context.getMetrics().recordUsageError();
+            LuckPermsCompat.msg(sender, "&cUsage: /" + s + " " + usage);
+            return false;
         }
 
-        function.perform(plugin, sender, values);
+        // the view is the only allocation here, everything else is left to the mapping
+        context.perform(function, sender, parameters.view(a));
         return true;
     }
 
-    public String getUsage() {
-        return arguments.stream().map(str -> "<" + str + ">").collect(Collectors.joining(" "));
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 0 || args.length > parameters.size() || !sender.hasPermission("luckpermscompat.use")) {
+            return Collections.emptyList();
+        }
+
+        List<String> completions = new ArrayList<>();
+        getPlugin().getCompletionIndex().complete(parameters.getName(args.length - 1), args[args.length - 1], completions);
+        return completions;
     }
 }
@@ -27,9 +27,14 @@ import lombok.experimental.UtilityClass;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import me.lucko.luckperms.compat.Dialect;
+import me.lucko.luckperms.compat.DialectConfig;
 import me.lucko.luckperms.compat.LuckPermsCompat;
-
-import org.bukkit.command.CommandSender;
+import me.lucko.luckperms.compat.MappingContext;
+import me.lucko.luckperms.compat.RemappedCommand;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+import me.lucko.luckperms.compat.check.PermissionChecker;
 
 import java.util.Map;
 
@@ -38,20 +43,34 @@ import java.util.Map;
  */
 @UtilityClass
 public class GroupManagerMapping {
-    private static final Map<String, GroupManagerCommand> MAPPING = buildMapping();
 
-    public static void sendUsage(CommandSender sender) {
-        LuckPermsCompat.msg(sender, "&bMapped commands: &7(GroupManager)");
-        for (Map.Entry<String, GroupManagerCommand> cmd : MAPPING.entrySet()) {
-            LuckPermsCompat.msg(sender, "&3> &a/" + cmd.getKey() + " " + cmd.getValue().getUsage());
-        }
-    }
+    /**
+     * Builds the enabled GroupManager commands. The mapping is only built here,
+     * so nothing is loaded for servers which don't enable the dialect.
+     *
+     * @param plugin the plugin instance
+     * @param config the dialect configuration
+     * @return the dialect
+     */
+    public static Dialect createDialect(LuckPermsCompat plugin, DialectConfig config) {
+        ImmutableMap.Builder<String, RemappedCommand> commands = ImmutableMap.builder();
+        ImmutableList.Builder<String> usage = ImmutableList.builder();
+
+        for (Map.Entry<String, GroupManagerCommand> e : buildMapping().entrySet()) {
+            if (!config.isEnabled(e.getKey())) {
+                continue;
+            }
 
-    public static void registerMapping(LuckPermsCompat plugin) {
-        for (Map.Entry<String, GroupManagerCommand> e : MAPPING.entrySet()) {
-            e.getValue().setPlugin(plugin);
-            plugin.registerCommand(e.getKey(), e.getValue());
+            MappingContext context = new MappingContext(plugin, e.getKey());
+            context.setBackend(config.getBackend());
+            context.setOperationsOnly(e.getValue().isOperationsOnly());
+            e.getValue().setContext(context);
+
+            commands.put(e.getKey(), e.getValue());
+            usage.add("/" + e.getKey() + " " + e.getValue().getUsage());
         }
+
+        return new Dialect("GroupManager", commands.build(), usage.build());
     }
 
     private static Map<String, GroupManagerCommand> buildMapping() {
@@ -60,50 +79,50 @@ public class GroupManagerMapping {
         /*
          * User commands
          */
-        commands.put("manuadd", GroupManagerCommand.of(ImmutableList.of("player", "group"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String group = arguments.get("group");
+        commands.put("manuadd", GroupManagerCommand.ofOperations(ImmutableList.of("player", "group"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String group = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + player + " parent set " + group);
+            context.execute(sender, Operation.parentSet(HolderType.USER, player, group, null));
         }));
 
-        commands.put("manudel", GroupManagerCommand.of(ImmutableList.of("player"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            plugin.executeCommand(sender, "user " + player + " clear");
+        commands.put("manudel", GroupManagerCommand.ofOperations(ImmutableList.of("player"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            context.execute(sender, Operation.clear(HolderType.USER, player));
         }));
 
-        commands.put("manuaddsub", GroupManagerCommand.of(ImmutableList.of("player", "group"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String group = arguments.get("group");
+        commands.put("manuaddsub", GroupManagerCommand.ofOperations(ImmutableList.of("player", "group"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String group = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + player + " parent add " + group);
+            context.execute(sender, Operation.parentAdd(HolderType.USER, player, group, null));
         }));
 
-        commands.put("manudelsub", GroupManagerCommand.of(ImmutableList.of("player", "group"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String group = arguments.get("group");
+        commands.put("manudelsub", GroupManagerCommand.ofOperations(ImmutableList.of("player", "group"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String group = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + player + " parent remove " + group);
+            context.execute(sender, Operation.parentRemove(HolderType.USER, player, group, null));
         }));
 
-        commands.put("manpromote", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
+        commands.put("manpromote", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "Promotions in LuckPerms are performed using tracks. &7(see /lp track)");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Tracks");
         }));
 
-        commands.put("mandemote", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
+        commands.put("mandemote", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "Promotions in LuckPerms are performed using tracks. &7(see /lp track)");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Tracks");
         }));
 
-        commands.put("manuwhois", GroupManagerCommand.of(ImmutableList.of("player"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            plugin.executeCommand(sender, "user " + player + " info");
+        commands.put("manuwhois", GroupManagerCommand.of(ImmutableList.of("player"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            context.executeCommand(sender, "user " + context.resolveUser(player) + " info");
         }));
 
-        commands.put("manuaddp", GroupManagerCommand.of(ImmutableList.of("player", "permission"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String permission = arguments.get("permission");
+        commands.put("manuaddp", GroupManagerCommand.ofOperations(ImmutableList.of("player", "permission"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String permission = arguments.get(1);
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -111,32 +130,35 @@ public class GroupManagerMapping {
                 permission = permission.substring(1);
             }
 
-            plugin.executeCommand(sender, "user " + player + " permission set " + permission + " " + value);
+            context.execute(sender, Operation.permissionSet(HolderType.USER, player, permission, value, null));
         }));
 
-        commands.put("manudelp", GroupManagerCommand.of(ImmutableList.of("player", "permission"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String permission = arguments.get("permission");
+        commands.put("manudelp", GroupManagerCommand.ofOperations(ImmutableList.of("player", "permission"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String permission = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + player + " permission unset " + permission);
+            context.execute(sender, Operation.permissionUnset(HolderType.USER, player, permission, null));
         }));
 
-        commands.put("manulistp", GroupManagerCommand.of(ImmutableList.of("player"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            plugin.executeCommand(sender, "user " + player + " permission info");
+        commands.put("manulistp", GroupManagerCommand.of(ImmutableList.of("player"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            context.executeCommand(sender, "user " + context.resolveUser(player) + " permission info");
         }));
 
-        commands.put("manucheckp", GroupManagerCommand.of(ImmutableList.of("player", "permission"), (plugin, sender, arguments) -> {
-            String player = arguments.get("player");
-            String permission = arguments.get("permission");
+        commands.put("manucheckp", GroupManagerCommand.of(ImmutableList.of("player", "permission"), (context, sender, arguments) -> {
+            String player = arguments.get(0);
+            String permission = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + player + " permission checkinherits " + permission);
+            PermissionChecker checker = context.getPlugin().getPermissionChecker();
+            if (checker == null || !checker.sendCheck(sender, player, permission, "luckperms.user.permission.checkinherits")) {
+                context.executeCommand(sender, "user " + context.resolveUser(player) + " permission checkinherits " + permission);
+            }
         }));
 
-        commands.put("manuaddv", GroupManagerCommand.of(ImmutableList.of("user", "variable", "value"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String variable = arguments.get("variable");
-            String value = arguments.get("value");
+        commands.put("manuaddv", GroupManagerCommand.ofOperations(ImmutableList.of("user", "variable", "value"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String variable = arguments.get(1);
+            String value = arguments.get(2);
 
             if (variable.equalsIgnoreCase("prefix")) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -150,12 +172,12 @@ public class GroupManagerMapping {
                 return;
             }
 
-            plugin.executeCommand(sender, "user " + user + " meta set " + variable + " " + value);
+            context.execute(sender, Operation.metaSet(HolderType.USER, user, variable, value, null));
         }));
 
-        commands.put("manudelv", GroupManagerCommand.of(ImmutableList.of("user", "variable"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String variable = arguments.get("variable");
+        commands.put("manudelv", GroupManagerCommand.ofOperations(ImmutableList.of("user", "variable"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String variable = arguments.get(1);
 
             if (variable.equalsIgnoreCase("prefix")) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -169,54 +191,54 @@ public class GroupManagerMapping {
                 return;
             }
 
-            plugin.executeCommand(sender, "user " + user + " meta unset " + variable);
+            context.execute(sender, Operation.metaUnset(HolderType.USER, user, variable, null));
         }));
 
-        commands.put("manulistv", GroupManagerCommand.of(ImmutableList.of("user"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            plugin.executeCommand(sender, "user " + user + " meta info");
+        commands.put("manulistv", GroupManagerCommand.of(ImmutableList.of("user"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            context.executeCommand(sender, "user " + context.resolveUser(user) + " meta info");
         }));
 
-        commands.put("manucheckv", GroupManagerCommand.of(ImmutableList.of("user"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            plugin.executeCommand(sender, "user " + user + " meta info");
+        commands.put("manucheckv", GroupManagerCommand.of(ImmutableList.of("user"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            context.executeCommand(sender, "user " + context.resolveUser(user) + " meta info");
         }));
 
 
         /*
          * Group commands
          */
-        commands.put("mangadd", GroupManagerCommand.of(ImmutableList.of("group"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            plugin.executeCommand(sender, "creategroup " + group);
+        commands.put("mangadd", GroupManagerCommand.ofOperations(ImmutableList.of("group"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            context.execute(sender, Operation.createGroup(group));
         }));
 
-        commands.put("mangdel", GroupManagerCommand.of(ImmutableList.of("group"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            plugin.executeCommand(sender, "deletegroup " + group);
+        commands.put("mangdel", GroupManagerCommand.ofOperations(ImmutableList.of("group"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            context.execute(sender, Operation.deleteGroup(group));
         }));
 
-        commands.put("mangaddi", GroupManagerCommand.of(ImmutableList.of("group1", "group2"), (plugin, sender, arguments) -> {
-            String group1 = arguments.get("group1");
-            String group2 = arguments.get("group2");
+        commands.put("mangaddi", GroupManagerCommand.ofOperations(ImmutableList.of("group1", "group2"), (context, sender, arguments) -> {
+            String group1 = arguments.get(0);
+            String group2 = arguments.get(1);
 
-            plugin.executeCommand(sender, "group " + group1 + " parent add " + group2);
+            context.execute(sender, Operation.parentAdd(HolderType.GROUP, group1, group2, null));
         }));
 
-        commands.put("mangdeli", GroupManagerCommand.of(ImmutableList.of("group1", "group2"), (plugin, sender, arguments) -> {
-            String group1 = arguments.get("group1");
-            String group2 = arguments.get("group2");
+        commands.put("mangdeli", GroupManagerCommand.ofOperations(ImmutableList.of("group1", "group2"), (context, sender, arguments) -> {
+            String group1 = arguments.get(0);
+            String group2 = arguments.get(1);
 
-            plugin.executeCommand(sender, "group " + group1 + " parent remove " + group2);
+            context.execute(sender, Operation.parentRemove(HolderType.GROUP, group1, group2, null));
         }));
 
-        commands.put("listgroups", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "listgroups");
+        commands.put("listgroups", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
+            context.executeCommand(sender, "listgroups");
         }));
 
-        commands.put("mangaddp", GroupManagerCommand.of(ImmutableList.of("group", "permission"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
+        commands.put("mangaddp", GroupManagerCommand.ofOperations(ImmutableList.of("group", "permission"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -224,32 +246,32 @@ public class GroupManagerMapping {
                 permission = permission.substring(1);
             }
 
-            plugin.executeCommand(sender, "group " + group + " permission set " + permission + " " + value);
+            context.execute(sender, Operation.permissionSet(HolderType.GROUP, group, permission, value, null));
         }));
 
-        commands.put("mangdelp", GroupManagerCommand.of(ImmutableList.of("group", "permission"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
+        commands.put("mangdelp", GroupManagerCommand.ofOperations(ImmutableList.of("group", "permission"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
 
-            plugin.executeCommand(sender, "group " + group + " permission unset " + permission);
+            context.execute(sender, Operation.permissionUnset(HolderType.GROUP, group, permission, null));
         }));
 
-        commands.put("manglistp", GroupManagerCommand.of(ImmutableList.of("group"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            plugin.executeCommand(sender, "group " + group + " permission info");
+        commands.put("manglistp", GroupManagerCommand.of(ImmutableList.of("group"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            context.executeCommand(sender, "group " + group + " permission info");
         }));
 
-        commands.put("mangcheckp", GroupManagerCommand.of(ImmutableList.of("group", "permission"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
+        commands.put("mangcheckp", GroupManagerCommand.of(ImmutableList.of("group", "permission"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
 
-            plugin.executeCommand(sender, "group " + group + " permission checkinherits " + permission);
+            context.executeCommand(sender, "group " + group + " permission checkinherits " + permission);
         }));
 
-        commands.put("mangaddv", GroupManagerCommand.of(ImmutableList.of("group", "variable", "value"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String variable = arguments.get("variable");
-            String value = arguments.get("value");
+        commands.put("mangaddv", GroupManagerCommand.ofOperations(ImmutableList.of("group", "variable", "value"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String variable = arguments.get(1);
+            String value = arguments.get(2);
 
             if (variable.equalsIgnoreCase("prefix")) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -263,12 +285,12 @@ public class GroupManagerMapping {
                 return;
             }
 
-            plugin.executeCommand(sender, "group " + group + " meta set " + variable + " " + value);
+            context.execute(sender, Operation.metaSet(HolderType.GROUP, group, variable, value, null));
         }));
 
-        commands.put("mangdelv", GroupManagerCommand.of(ImmutableList.of("group", "variable"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String variable = arguments.get("variable");
+        commands.put("mangdelv", GroupManagerCommand.ofOperations(ImmutableList.of("group", "variable"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String variable = arguments.get(1);
 
             if (variable.equalsIgnoreCase("prefix")) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -282,42 +304,42 @@ public class GroupManagerMapping {
                 return;
             }
 
-            plugin.executeCommand(sender, "group " + group + " meta unset " + variable);
+            context.execute(sender, Operation.metaUnset(HolderType.GROUP, group, variable, null));
         }));
 
-        commands.put("manglistv", GroupManagerCommand.of(ImmutableList.of("group"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            plugin.executeCommand(sender, "group " + group + " meta info");
+        commands.put("manglistv", GroupManagerCommand.of(ImmutableList.of("group"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            context.executeCommand(sender, "group " + group + " meta info");
         }));
 
-        commands.put("mangcheckv", GroupManagerCommand.of(ImmutableList.of("group"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            plugin.executeCommand(sender, "group " + group + " meta info");
+        commands.put("mangcheckv", GroupManagerCommand.of(ImmutableList.of("group"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            context.executeCommand(sender, "group " + group + " meta info");
         }));
 
 
         /*
          * Utility commands
          */
-        commands.put("mansave", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "sync");
+        commands.put("mansave", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
+            context.requestSync(sender, "sync");
         }));
 
-        commands.put("manload", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "sync");
+        commands.put("manload", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
+            context.requestSync(sender, "sync");
         }));
 
-        commands.put("manworld", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
+        commands.put("manworld", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "World specific permissions are granted via added command arguments.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Command-Usage");
         }));
 
-        commands.put("manselect", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
+        commands.put("manselect", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "World specific permissions are granted via added command arguments.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Command-Usage");
         }));
 
-        commands.put("manclear", GroupManagerCommand.of(ImmutableList.of(), (plugin, sender, arguments) -> {
+        commands.put("manclear", GroupManagerCommand.of(ImmutableList.of(), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "World specific permissions are granted via added command arguments.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Command-Usage");
         }));
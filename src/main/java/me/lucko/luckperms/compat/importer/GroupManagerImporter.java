@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.RequiredArgsConstructor;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Imports the worlds of a GroupManager data folder. See {@link GroupManagerLayout} for
+ * how the worlds and their mirrors are mapped to LuckPerms.
+ *
+ * <p>Groups are created first, then the groups, and lastly the users, of every world are imported.</p>
+ *
+ * <ul>
+ *     <li>permissions become permission nodes, negated if they start with '-'</li>
+ *     <li>the group and subgroups of users, and the inheritance of groups, become parent groups</li>
+ *     <li>the prefix and suffix info become prefixes and suffixes. Those of users take precedence</li>
+ *     <li>other info becomes meta</li>
+ *     <li>global groups are imported without the "g:" they are referred to with</li>
+ *     <li>the default group of each world is added as a parent of the LuckPerms default group</li>
+ * </ul>
+ */
+public class GroupManagerImporter extends ImportJob {
+
+    // the priority of the prefixes and suffixes of users, so they override those of groups
+    private static final int USER_PRIORITY = 1000;
+
+    // the priority of the prefixes and suffixes of groups
+    private static final int GROUP_PRIORITY = 50;
+
+    private final GroupManagerLayout layout;
+
+    // the groups created so far. the same group is usually in the files of several worlds
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    public GroupManagerImporter(LuckPermsCompat plugin, CommandSender sender, Path folder, ImportSettings settings) throws IOException {
+        this(plugin, sender, folder, load(folder), settings);
+    }
+
+    private GroupManagerImporter(LuckPermsCompat plugin, CommandSender sender, Path folder, GroupManagerLayout layout, ImportSettings settings) throws IOException {
+        super(plugin, sender, settings, "groupmanager", folder.toAbsolutePath().toString(), fingerprint(layout));
+        this.layout = layout;
+    }
+
+    private static GroupManagerLayout load(Path folder) throws IOException {
+        GroupManagerLayout layout = GroupManagerLayout.load(folder);
+        if (layout.getFiles().isEmpty()) {
+            throw new IOException("there are no users or groups files in it");
+        }
+        return layout;
+    }
+
+    // changes if any of the files are added, removed or modified
+    private static String fingerprint(GroupManagerLayout layout) throws IOException {
+        long size = 0;
+        long modified = 0;
+        for (GroupManagerLayout.DataFile file : layout.getFiles()) {
+            size += Files.size(file.getPath());
+            modified = Math.max(modified, Files.getLastModifiedTime(file.getPath()).toMillis());
+        }
+        return layout.getFiles().size() + "/" + size + "/" + modified;
+    }
+
+    @Override
+    protected List<Phase<?>> getPhases() {
+        return ImmutableList.of(
+                new FilesPhase("Creating groups", "groups created", HolderType.GROUP, true) {
+                    @Override
+                    protected void convert(Entry entry, List<Operation> operations) {
+                        String name = stripGlobal(entry.entity.getName());
+                        if (GroupManagerImporter.this.created.add(name.toLowerCase(Locale.ROOT))) {
+                            operations.add(Operation.createGroup(name));
+                        }
+                    }
+                },
+                new FilesPhase("Importing groups", "groups imported", HolderType.GROUP, false) {
+                    @Override
+                    protected void convert(Entry entry, List<Operation> operations) {
+                        for (String world : entry.file.getWorlds()) {
+                            GroupManagerImporter.convert(entry.entity, world, operations);
+                        }
+                    }
+                },
+                new FilesPhase("Importing users", "users imported", HolderType.USER, false) {
+                    @Override
+                    protected void convert(Entry entry, List<Operation> operations) {
+                        for (String world : entry.file.getWorlds()) {
+                            GroupManagerImporter.convert(entry.entity, world, operations);
+                        }
+                    }
+                }
+        );
+    }
+
+    @Override
+    protected void sendNotes(CommandSender sender) {
+        Map<String, String> rewrites = this.layout.getRewrites();
+        if (!rewrites.isEmpty()) {
+            LuckPermsCompat.msg(sender, "&7These worlds mirrored another in GroupManager. Add them to world-rewrite in the LuckPerms config so they share its data:");
+            for (Map.Entry<String, String> rewrite : rewrites.entrySet()) {
+                LuckPermsCompat.msg(sender, "&7  " + rewrite.getKey() + ": " + rewrite.getValue());
+            }
+        }
+        for (String root : this.layout.getUnnamedRoots()) {
+            LuckPermsCompat.msg(sender, "&7Worlds not named in the GroupManager config used the data of &b" + root + "&7. Add any still in use to world-rewrite too.");
+        }
+    }
+
+    /**
+     * Converts a user or group, as it applies in a world, to the operations which import it
+     *
+     * @param entity the entity
+     * @param world the world, or null for all worlds
+     * @param operations the list to add the operations to
+     */
+    static void convert(ImportEntity entity, String world, List<Operation> operations) {
+        HolderType type = entity.getType();
+        String name = type == HolderType.GROUP ? stripGlobal(entity.getName()) : entity.getName();
+        ImportEntity.Scope scope = entity.getScope(null);
+        int priority = type == HolderType.GROUP ? GROUP_PRIORITY : USER_PRIORITY;
+
+        if (type == HolderType.GROUP && entity.isDefaultGroup() && !name.equalsIgnoreCase("default")) {
+            operations.add(Operation.parentAdd(HolderType.GROUP, "default", name, world));
+        }
+
+        // the first parent replaces any the holder already has, so importing twice has the same result
+        Set<String> parents = new LinkedHashSet<>();
+        for (String parent : scope.getParents()) {
+            parent = stripGlobal(parent);
+            if (!parent.isEmpty() && parents.add(parent.toLowerCase(Locale.ROOT))) {
+                operations.add(parents.size() == 1 ? Operation.parentSet(type, name, parent, world) : Operation.parentAdd(type, name, parent, world));
+            }
+        }
+
+        for (String permission : scope.getPermissions()) {
+            // GroupManager gives '+' nodes precedence over negations, which LuckPerms does by specificity instead
+            boolean value = !permission.startsWith("-");
+            String node = permission.startsWith("-") || permission.startsWith("+") ? permission.substring(1) : permission;
+            if (!node.isEmpty()) {
+                operations.add(Operation.permissionSet(type, name, node, value, world));
+            }
+        }
+
+        for (Map.Entry<String, String> info : scope.getOptions().entrySet()) {
+            String value = info.getValue();
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+
+            switch (info.getKey().toLowerCase(Locale.ROOT)) {
+                case "prefix":
+                    operations.add(Operation.prefixSet(type, name, priority, value, world));
+                    break;
+                case "suffix":
+                    operations.add(Operation.suffixSet(type, name, priority, value, world));
+                    break;
+                default:
+                    operations.add(Operation.metaSet(type, name, info.getKey(), value, world));
+                    break;
+            }
+        }
+    }
+
+    private static String stripGlobal(String group) {
+        return group.regionMatches(true, 0, "g:", 0, 2) ? group.substring(2) : group;
+    }
+
+    /**
+     * An entity, and the file it was read from
+     */
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final ImportEntity entity;
+        private final GroupManagerLayout.DataFile file;
+    }
+
+    /**
+     * A phase which reads the users or groups of every world, one file after another
+     */
+    private abstract class FilesPhase extends Phase<Entry> {
+        private final HolderType type;
+        private final boolean namesOnly;
+        private final List<GroupManagerLayout.DataFile> files;
+
+        // the number of files read, and the one being read
+        private volatile int index = 0;
+        private volatile GroupManagerReader reader = null;
+
+        FilesPhase(String description, String summary, HolderType type, boolean namesOnly) {
+            super(description, summary);
+            this.type = type;
+            this.namesOnly = namesOnly;
+            this.files = GroupManagerImporter.this.layout.getFiles(type);
+        }
+
+        @Override
+        protected void read(long skip, Predicate<Entry> consumer) throws IOException {
+            // entries are counted across all of the files, so resuming skips whole files too
+            boolean[] stopped = {false};
+            for (int i = 0; i < this.files.size() && !stopped[0]; i++) {
+                GroupManagerLayout.DataFile file = this.files.get(i);
+                this.index = i;
+                try (GroupManagerReader reader = new GroupManagerReader(file.getPath())) {
+                    this.reader = reader;
+                    skip -= reader.read(this.type, skip, this.namesOnly, entity -> {
+                        if (consumer.test(new Entry(entity, file))) {
+                            return true;
+                        }
+                        stopped[0] = true;
+                        return false;
+                    });
+                    skip = Math.max(0, skip);
+                }
+            }
+            this.index = this.files.size();
+            this.reader = null;
+        }
+
+        @Override
+        protected double getProgress() {
+            if (this.files.isEmpty()) {
+                return 1;
+            }
+            GroupManagerReader reader = this.reader;
+            return Math.min(1, (this.index + (reader == null ? 0 : reader.getProgress())) / this.files.size());
+        }
+    }
+}
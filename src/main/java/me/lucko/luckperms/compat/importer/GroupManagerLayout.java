@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import me.lucko.luckperms.compat.backend.HolderType;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The files of a GroupManager data folder, and the worlds each applies in.
+ *
+ * <p>GroupManager keeps a users.yml and groups.yml per world, under worlds/&lt;world&gt;, and
+ * worlds can mirror the users, groups or both of another world instead of having their own.
+ * LuckPerms has no mirrors, so this works out once where each file should be written:</p>
+ *
+ * <ul>
+ *     <li>if a file is the only one of its kind, it applies everywhere, so is written without a world</li>
+ *     <li>otherwise it is written in the world it belongs to</li>
+ *     <li>a world which mirrors both the users and groups of another can share its data with
+ *     a LuckPerms world-rewrite, so nothing is written for it</li>
+ *     <li>a world which mirrors only one of them has that file written in its own world as well</li>
+ * </ul>
+ *
+ * <p>Each file is read once however many worlds it applies in.</p>
+ */
+@Getter
+public class GroupManagerLayout {
+
+    /**
+     * Loads the layout of a GroupManager data folder
+     *
+     * @param folder the folder, usually plugins/GroupManager
+     * @return the layout
+     * @throws IOException if the worlds folder can't be listed
+     */
+    public static GroupManagerLayout load(Path folder) throws IOException {
+        Map<HolderType, Map<String, String>> mirrors = new EnumMap<>(HolderType.class);
+        Map<HolderType, Set<String>> unnamed = new EnumMap<>(HolderType.class);
+        for (HolderType type : HolderType.values()) {
+            mirrors.put(type, new HashMap<>());
+            unnamed.put(type, new TreeSet<>());
+        }
+
+        Path config = folder.resolve("config.yml");
+        if (Files.isRegularFile(config)) {
+            ConfigurationSection section = YamlConfiguration.loadConfiguration(config.toFile()).getConfigurationSection("settings.mirrors");
+            if (section != null) {
+                readMirrors(section, mirrors, unnamed);
+            }
+        }
+
+        // the worlds with files of their own, ignoring those GroupManager wouldn't read as they're mirrored
+        Map<HolderType, List<String>> roots = new EnumMap<>(HolderType.class);
+        for (HolderType type : HolderType.values()) {
+            roots.put(type, new ArrayList<>());
+        }
+        Path worlds = folder.resolve("worlds");
+        if (Files.isDirectory(worlds)) {
+            Set<String> names = new TreeSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(worlds, Files::isDirectory)) {
+                for (Path world : stream) {
+                    names.add(world.getFileName().toString());
+                }
+            }
+            for (String world : names) {
+                for (HolderType type : HolderType.values()) {
+                    if (Files.isRegularFile(worlds.resolve(world).resolve(fileName(type))) && !mirrors.get(type).containsKey(world.toLowerCase(Locale.ROOT))) {
+                        roots.get(type).add(world);
+                    }
+                }
+            }
+        }
+
+        List<DataFile> files = new ArrayList<>();
+        Path global = folder.resolve("globalgroups.yml");
+        if (Files.isRegularFile(global)) {
+            files.add(new DataFile(HolderType.GROUP, global, Collections.singletonList(null)));
+        }
+
+        Map<String, String> rewrites = new TreeMap<>();
+        Set<String> unnamedRoots = new TreeSet<>();
+        for (HolderType type : HolderType.values()) {
+            List<String> typeRoots = roots.get(type);
+            for (String root : typeRoots) {
+                List<String> applies = new ArrayList<>();
+                if (typeRoots.size() == 1) {
+                    applies.add(null);
+                } else {
+                    applies.add(root);
+                    for (Map.Entry<String, String> mirror : mirrors.get(type).entrySet()) {
+                        String world = mirror.getKey();
+                        if (mirror.getValue().equalsIgnoreCase(root) && !isFullMirror(world, mirrors)) {
+                            applies.add(world);
+                        }
+                    }
+                    if (unnamed.get(type).contains(root.toLowerCase(Locale.ROOT))) {
+                        unnamedRoots.add(root);
+                    }
+                }
+                files.add(new DataFile(type, worlds.resolve(root).resolve(fileName(type)), applies));
+            }
+        }
+
+        // worlds which mirror everything from one other world, where something is written in that world
+        for (Map.Entry<String, String> mirror : mirrors.get(HolderType.USER).entrySet()) {
+            String world = mirror.getKey();
+            String root = mirror.getValue();
+            if (isFullMirror(world, mirrors) && (roots.get(HolderType.USER).size() > 1 || roots.get(HolderType.GROUP).size() > 1)) {
+                rewrites.put(world, root);
+            }
+        }
+
+        return new GroupManagerLayout(files, rewrites, unnamedRoots);
+    }
+
+    // reads the mirrors section, which maps each world to the worlds mirroring it. those are either
+    // a list of names, which mirror everything, or a section, of the data types each one mirrors
+    private static void readMirrors(ConfigurationSection section, Map<HolderType, Map<String, String>> mirrors, Map<HolderType, Set<String>> unnamed) {
+        for (String root : section.getKeys(false)) {
+            Map<String, List<HolderType>> children = new HashMap<>();
+            if (section.isList(root)) {
+                for (String child : section.getStringList(root)) {
+                    children.put(child, null);
+                }
+            } else if (section.isConfigurationSection(root)) {
+                ConfigurationSection childSection = section.getConfigurationSection(root);
+                for (String child : childSection.getKeys(false)) {
+                    List<HolderType> types = null;
+                    if (childSection.isList(child)) {
+                        types = new ArrayList<>();
+                        for (String type : childSection.getStringList(child)) {
+                            if (type.equalsIgnoreCase("users")) {
+                                types.add(HolderType.USER);
+                            } else if (type.equalsIgnoreCase("groups")) {
+                                types.add(HolderType.GROUP);
+                            }
+                        }
+                    }
+                    children.put(child, types);
+                }
+            }
+
+            for (Map.Entry<String, List<HolderType>> child : children.entrySet()) {
+                String world = child.getKey().toLowerCase(Locale.ROOT);
+                for (HolderType type : child.getValue() == null ? Arrays.asList(HolderType.values()) : child.getValue()) {
+                    if (world.equals("all_unnamed_worlds")) {
+                        unnamed.get(type).add(root.toLowerCase(Locale.ROOT));
+                    } else if (!world.equalsIgnoreCase(root)) {
+                        mirrors.get(type).put(world, root);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isFullMirror(String world, Map<HolderType, Map<String, String>> mirrors) {
+        String users = mirrors.get(HolderType.USER).get(world);
+        return users != null && users.equalsIgnoreCase(mirrors.get(HolderType.GROUP).get(world));
+    }
+
+    private static String fileName(HolderType type) {
+        return type == HolderType.USER ? "users.yml" : "groups.yml";
+    }
+
+    /**
+     * The files to import, global groups first
+     */
+    private final List<DataFile> files;
+
+    /**
+     * The world-rewrite entries LuckPerms needs for worlds which mirrored all of their
+     * data, keyed by the mirroring world
+     */
+    private final Map<String, String> rewrites;
+
+    /**
+     * The worlds whose data GroupManager also used for any world not named in its
+     * config, when that data couldn't be written without a world
+     */
+    private final Set<String> unnamedRoots;
+
+    private GroupManagerLayout(List<DataFile> files, Map<String, String> rewrites, Set<String> unnamedRoots) {
+        this.files = files;
+        this.rewrites = rewrites;
+        this.unnamedRoots = unnamedRoots;
+    }
+
+    /**
+     * Gets the files of a type
+     *
+     * @param type the type
+     * @return the files
+     */
+    public List<DataFile> getFiles(HolderType type) {
+        List<DataFile> files = new ArrayList<>();
+        for (DataFile file : this.files) {
+            if (file.getType() == type) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * A users or groups file, and the worlds it is written in
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class DataFile {
+        private final HolderType type;
+        private final Path path;
+
+        /**
+         * The worlds the file's data is written in. null means all worlds
+         */
+        private final List<String> worlds;
+    }
+}
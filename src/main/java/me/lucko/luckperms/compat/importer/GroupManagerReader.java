@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the users or groups from a GroupManager users.yml, groups.yml or
+ * globalgroups.yml file one at a time.
+ *
+ * <p>GroupManager keeps the data of each world in its own files, so everything
+ * read is put in the scope of all worlds, and placed in a world when it is converted.</p>
+ */
+public class GroupManagerReader extends YamlEntityReader {
+
+    public GroupManagerReader(Path file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected void readEntity(ImportEntity entity, Event start) {
+        if (!(start instanceof MappingStartEvent)) {
+            skip(start);
+            return;
+        }
+
+        ImportEntity.Scope scope = entity.getScope(null);
+        String key;
+        while ((key = nextKey()) != null) {
+            Event event = next();
+            switch (key.toLowerCase(Locale.ROOT)) {
+                case "default":
+                    entity.setDefaultGroup(event instanceof ScalarEvent && ((ScalarEvent) event).getValue().equalsIgnoreCase("true"));
+                    skip(event);
+                    break;
+                // the main group of a user comes first, whichever order the file lists them in
+                case "group":
+                    List<String> group = new ArrayList<>(1);
+                    readList(group, event);
+                    scope.getParents().addAll(0, group);
+                    break;
+                case "subgroups":
+                case "inheritance":
+                    readList(scope.getParents(), event);
+                    break;
+                case "permissions":
+                    readList(scope.getPermissions(), event);
+                    break;
+                case "info":
+                    readMap(scope.getOptions(), event);
+                    break;
+                default:
+                    skip(event);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * How far an import got, so it can be resumed if it is stopped part way through.
+ *
+ * <p>The checkpoint records the source it was taken for, along with a fingerprint of
+ * it (e.g. the size and modification time of the file). If the source has changed
+ * since, the checkpoint is ignored.</p>
+ */
+@Getter
+public final class ImportCheckpoint {
+
+    /**
+     * Reads a checkpoint
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint, or null if there isn't one or it can't be read
+     */
+    public static ImportCheckpoint load(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            return new ImportCheckpoint(
+                    properties.getProperty("source"),
+                    properties.getProperty("fingerprint"),
+                    Integer.parseInt(properties.getProperty("phase")),
+                    Long.parseLong(properties.getProperty("done"))
+            );
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The source being imported, e.g. the path of the file
+     */
+    private final String source;
+
+    /**
+     * The fingerprint of the source when the checkpoint was taken
+     */
+    private final String fingerprint;
+
+    /**
+     * The index of the phase the import was in
+     */
+    private final int phase;
+
+    /**
+     * The number of entries of the phase which had been imported
+     */
+    private final long done;
+
+    public ImportCheckpoint(String source, String fingerprint, int phase, long done) {
+        this.source = source;
+        this.fingerprint = fingerprint;
+        this.phase = phase;
+        this.done = done;
+    }
+
+    /**
+     * Gets if this checkpoint was taken for a source
+     *
+     * @param source the source
+     * @param fingerprint the current fingerprint of the source
+     * @return if the import of the source can be resumed from this checkpoint
+     */
+    public boolean matches(String source, String fingerprint) {
+        return source.equals(this.source) && fingerprint.equals(this.fingerprint);
+    }
+
+    /**
+     * Writes this checkpoint, replacing the previous one
+     *
+     * @param file the checkpoint file
+     * @throws IOException if the checkpoint can't be written
+     */
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("source", this.source);
+        properties.setProperty("fingerprint", this.fingerprint);
+        properties.setProperty("phase", Integer.toString(this.phase));
+        properties.setProperty("done", Long.toString(this.done));
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
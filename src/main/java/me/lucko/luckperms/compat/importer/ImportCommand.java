@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Handles /lpc import, which imports the data of another permissions plugin. Only one
+ * import can run at a time.
+ */
+public class ImportCommand {
+
+    // imports read files from anywhere in the server folder, so aren't covered by luckpermscompat.use
+    private static final String PERMISSION = "luckpermscompat.import";
+
+    // where PermissionsEx keeps its file, relative to the plugins folder
+    private static final String PEX_FILE = "PermissionsEx/permissions.yml";
+
+    // where GroupManager keeps its data, relative to the plugins folder
+    private static final String GROUP_MANAGER_FOLDER = "GroupManager";
+
+    private final LuckPermsCompat plugin;
+
+    // the running or last import, if any
+    private ImportJob current = null;
+
+    public ImportCommand(LuckPermsCompat plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Executes the command
+     *
+     * @param sender the sender
+     * @param args the arguments after "import"
+     */
+    public void execute(CommandSender sender, String[] args) {
+        if (!LuckPermsCompat.checkPermission(sender, PERMISSION)) {
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("pex")) {
+            importPex(sender, args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length)) : null);
+            return;
+        }
+        if (args.length > 0 && (args[0].equalsIgnoreCase("gm") || args[0].equalsIgnoreCase("groupmanager"))) {
+            importGroupManager(sender, args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length)) : null);
+            return;
+        }
+
+        ImportJob job = getRunning();
+        if (args.length > 0 && args[0].equalsIgnoreCase("cancel")) {
+            if (job == null) {
+                LuckPermsCompat.msg(sender, "No import is running.");
+            } else {
+                job.cancel();
+                LuckPermsCompat.msg(sender, "Cancelling the import once the changes already read are written.");
+            }
+            return;
+        }
+
+        if (job != null) {
+            job.sendProgress(sender);
+        }
+        LuckPermsCompat.msg(sender, "&7Use /lpc import pex [file] to import a PermissionsEx file (" + PEX_FILE + " by default), " +
+                "/lpc import gm [folder] to import the worlds of GroupManager (" + GROUP_MANAGER_FOLDER + " by default), or /lpc import cancel to stop the running import.");
+    }
+
+    /**
+     * Starts importing a PermissionsEx permissions.yml file
+     *
+     * @param sender the sender
+     * @param path the path of the file, relative to the plugins folder, or null for the default
+     */
+    public void importPex(CommandSender sender, String path) {
+        if (!LuckPermsCompat.checkPermission(sender, PERMISSION)) {
+            return;
+        }
+        Path file = resolve(sender, path == null ? PEX_FILE : path, false);
+        if (file != null) {
+            start(sender, file, settings -> new PexImporter(this.plugin, sender, file, settings));
+        }
+    }
+
+    /**
+     * Starts importing the worlds of a GroupManager data folder
+     *
+     * @param sender the sender
+     * @param path the path of the folder, relative to the plugins folder, or null for the default
+     */
+    public void importGroupManager(CommandSender sender, String path) {
+        if (!LuckPermsCompat.checkPermission(sender, PERMISSION)) {
+            return;
+        }
+        Path folder = resolve(sender, path == null ? GROUP_MANAGER_FOLDER : path, true);
+        if (folder != null) {
+            start(sender, folder, settings -> new GroupManagerImporter(this.plugin, sender, folder, settings));
+        }
+    }
+
+    private synchronized void start(CommandSender sender, Path path, JobFactory factory) {
+        if (getRunning() != null) {
+            LuckPermsCompat.msg(sender, "&cAn import is already running. &7Use /lpc import to see its progress.");
+            return;
+        }
+
+        try {
+            this.current = factory.create(ImportSettings.of(this.plugin.getConfig().getConfigurationSection("import")));
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Unable to read " + path, e);
+            LuckPermsCompat.msg(sender, "&cUnable to read " + path + ": " + e.getMessage());
+            return;
+        }
+        this.current.start();
+    }
+
+    /**
+     * Cancels the running import, if any, and waits a short while for it to stop
+     */
+    public void shutdown() {
+        ImportJob job = getRunning();
+        if (job == null) {
+            return;
+        }
+
+        job.cancel();
+        try {
+            job.await(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized ImportJob getRunning() {
+        return this.current != null && this.current.isRunning() ? this.current : null;
+    }
+
+    // resolves a path against the plugins folder, refusing anything outside of the server folder
+    private Path resolve(CommandSender sender, String path, boolean directory) {
+        Path plugins = this.plugin.getDataFolder().getAbsoluteFile().getParentFile().toPath();
+        Path server = plugins.getParent() == null ? plugins : plugins.getParent();
+        Path file = plugins.resolve(path).toAbsolutePath().normalize();
+
+        if (!file.startsWith(server.normalize())) {
+            LuckPermsCompat.msg(sender, "&cOnly files inside the server folder can be imported.");
+            return null;
+        }
+        if (directory ? !Files.isDirectory(file) : !Files.isRegularFile(file)) {
+            LuckPermsCompat.msg(sender, "&cCould not find " + file + ".");
+            return null;
+        }
+        return file;
+    }
+
+    private interface JobFactory {
+        ImportJob create(ImportSettings settings) throws IOException;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import me.lucko.luckperms.compat.backend.HolderType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A user or group read from the data of another permissions plugin
+ */
+@Getter
+public class ImportEntity {
+
+    /**
+     * If the entity is a user or a group
+     */
+    private final HolderType type;
+
+    /**
+     * The name of the group, or the uuid (or name, in old files) of the user
+     */
+    private final String name;
+
+    /**
+     * If the group is the default group of the plugin it was read from
+     */
+    @Setter
+    private boolean defaultGroup = false;
+
+    /**
+     * The entity's data in each world, keyed by world name. Data which applies
+     * in all worlds is keyed by null.
+     */
+    private final Map<String, Scope> scopes = new LinkedHashMap<>();
+
+    public ImportEntity(HolderType type, String name) {
+        this.type = type;
+        this.name = name;
+    }
+
+    /**
+     * Gets the data of the entity in a world, creating it if it doesn't exist yet
+     *
+     * @param world the world, or null for all worlds
+     * @return the data
+     */
+    public Scope getScope(String world) {
+        return this.scopes.computeIfAbsent(world, w -> new Scope());
+    }
+
+    /**
+     * The permissions, parents and options of an entity in a single world, or in all worlds.
+     * Options are what PermissionsEx calls options and GroupManager calls info.
+     */
+    @Getter
+    public static final class Scope {
+        // permissions, negated with a leading '-'
+        private final List<String> permissions = new ArrayList<>();
+        private final List<String> parents = new ArrayList<>();
+        private final Map<String, String> options = new LinkedHashMap<>();
+    }
+}
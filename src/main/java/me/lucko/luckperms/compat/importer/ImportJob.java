@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.Getter;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.ExecutionBackend;
+import me.lucko.luckperms.compat.backend.IdempotenceFilter;
+import me.lucko.luckperms.compat.backend.NodeSource;
+import me.lucko.luckperms.compat.backend.Operation;
+import me.lucko.luckperms.compat.output.QuietSender;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Imports the users and groups of another permissions plugin into LuckPerms.
+ *
+ * <p>An import runs in phases, e.g. creating every group before anything refers to them.
+ * Each phase streams its entries from the source, and hands them in batches to a pool of
+ * workers, which convert them to {@link Operation}s and write them through the default
+ * backend. Writes are rate limited, and only a few batches are queued at once, so memory
+ * use doesn't depend on the size of the source.</p>
+ *
+ * <p>Batches complete out of order, so the checkpoint only moves past a batch once every
+ * batch before it is written. Resuming from it may repeat a few batches, but never misses one.
+ * A batch which can't be written holds the checkpoint back, and stops the import at the end of
+ * its phase, so resuming retries it.</p>
+ */
+public abstract class ImportJob implements Runnable {
+
+    // how often the checkpoint is written
+    private static final long CHECKPOINT_INTERVAL = 1000;
+
+    protected final LuckPermsCompat plugin;
+
+    /**
+     * The sender who started the import, who progress is reported to
+     */
+    @Getter
+    private final CommandSender sender;
+
+    /**
+     * A description of what is being imported, e.g. the path of the file
+     */
+    @Getter
+    private final String source;
+
+    private final String fingerprint;
+    private final Path checkpointFile;
+    private final ImportSettings settings;
+
+    private final ExecutionBackend backend;
+    private final IdempotenceFilter filter;
+    private final QuietSender quiet;
+    private final RateLimiter limiter;
+    private final ExecutorService workers;
+
+    // limits the number of batches read but not yet written
+    private final Semaphore slots;
+    private final int slotCount;
+
+    private final Thread thread;
+    private volatile boolean cancelled = false;
+
+    // the phases, and the one being run
+    private volatile List<Phase<?>> phases = null;
+    private volatile int phaseIndex = 0;
+    private volatile long phaseStart = 0;
+    private final AtomicLong imported = new AtomicLong();
+
+    // the number of entries imported by each phase, by index
+    private final Map<Integer, Long> totals = new HashMap<>();
+
+    // errors thrown by the backend, rather than reported to the sender. guarded by itself
+    private final List<String> errors = new ArrayList<>();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    // the batches which have been written, keyed by sequence, with the index after their last entry.
+    // guarded by itself
+    private final Map<Long, Long> written = new HashMap<>();
+    private long failedBatches = 0;
+    private long nextSequence = 0;
+    private long committedSequence = 0;
+    private long committed = 0;
+    private long lastCheckpoint = 0;
+
+    protected ImportJob(LuckPermsCompat plugin, CommandSender sender, ImportSettings settings, String name, String source, String fingerprint) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.settings = settings;
+        this.source = source;
+        this.fingerprint = fingerprint;
+        this.checkpointFile = plugin.getDataFolder().toPath().resolve("import").resolve(name + ".checkpoint");
+
+        NodeSource nodeSource = plugin.getNodeSource();
+        this.backend = plugin.getBackend(null);
+        this.filter = nodeSource == null ? null : new IdempotenceFilter(nodeSource);
+        this.quiet = QuietSender.of(sender, settings.getErrorsShown());
+        this.limiter = settings.getRate() == 0 ? null : RateLimiter.create(settings.getRate());
+        this.workers = Executors.newFixedThreadPool(settings.getWorkers(), new ThreadFactoryBuilder()
+                .setNameFormat("LuckPermsCompat Import Worker %d")
+                .setDaemon(true)
+                .build());
+        this.slotCount = settings.getWorkers() * 2;
+        this.slots = new Semaphore(this.slotCount);
+        this.thread = new Thread(this, "LuckPermsCompat Import");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Creates the phases of the import, in the order they run. This is called once, when the import starts.
+     *
+     * @return the phases
+     */
+    protected abstract List<Phase<?>> getPhases();
+
+    /**
+     * Sends anything which should be done by hand once the import is complete
+     *
+     * @param sender the sender to send it to
+     */
+    protected void sendNotes(CommandSender sender) {
+    }
+
+    /**
+     * Starts the import on its own thread
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stops the import once the batches already read are written. The checkpoint is kept,
+     * so it can be resumed.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Waits for the import to stop
+     *
+     * @param millis the maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await(long millis) throws InterruptedException {
+        this.thread.join(millis);
+    }
+
+    public boolean isRunning() {
+        return this.thread.isAlive();
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        List<Phase<?>> phases = getPhases();
+        this.phases = phases;
+
+        int first = 0;
+        long skip = 0;
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(this.checkpointFile);
+        if (checkpoint != null && checkpoint.matches(this.source, this.fingerprint) && checkpoint.getPhase() < phases.size()) {
+            first = checkpoint.getPhase();
+            skip = checkpoint.getDone();
+            LuckPermsCompat.msg(this.sender, "Resuming the import of &b" + this.source + "&a from its checkpoint: " +
+                    phases.get(first).getDescription().toLowerCase(Locale.ROOT) + ", after &b" + skip + "&a entries.");
+        } else {
+            LuckPermsCompat.msg(this.sender, "Importing &b" + this.source + "&a.");
+        }
+
+        boolean failed = false;
+        try {
+            for (int i = first; i < phases.size() && !this.cancelled; i++) {
+                runPhase(i, phases.get(i), i == first ? skip : 0);
+            }
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            this.plugin.getLogger().log(Level.SEVERE, "Exception importing " + this.source, e);
+            LuckPermsCompat.msg(this.sender, "&cThe import failed: " + e.getMessage() + ". &7It can be resumed once the problem is fixed.");
+        } finally {
+            this.workers.shutdown();
+        }
+
+        if (this.cancelled) {
+            LuckPermsCompat.msg(this.sender, "The import was cancelled. &7Run it again to resume from where it stopped.");
+            return;
+        }
+        if (failed) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(this.checkpointFile);
+        } catch (IOException e) {
+            this.plugin.getLogger().log(Level.WARNING, "Unable to delete " + this.checkpointFile, e);
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < phases.size(); i++) {
+            Long total = this.totals.get(i);
+            if (total != null) {
+                summary.append(summary.length() == 0 ? "" : ", ").append("&b").append(total).append("&a ").append(phases.get(i).getSummary());
+            }
+        }
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start);
+        LuckPermsCompat.msg(this.sender, "Import of &b" + this.source + "&a complete in &b" + seconds + "s&a: " + summary + ".");
+        sendNotes(this.sender);
+        sendErrors(this.sender);
+    }
+
+    private <T> void runPhase(int index, Phase<T> phase, long skip) throws IOException {
+        this.phaseIndex = index;
+        this.phaseStart = System.currentTimeMillis();
+        this.imported.set(0);
+        synchronized (this.written) {
+            this.written.clear();
+            this.failedBatches = 0;
+            this.nextSequence = 0;
+            this.committedSequence = 0;
+            this.committed = skip;
+        }
+
+        List<T> batch = new ArrayList<>(this.settings.getBatchSize());
+        long[] position = {skip};
+        long[] lastReport = {System.currentTimeMillis()};
+        phase.read(skip, entry -> {
+            batch.add(entry);
+            position[0]++;
+            if (batch.size() >= this.settings.getBatchSize()) {
+                submit(phase, new ArrayList<>(batch), position[0]);
+                batch.clear();
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastReport[0] >= this.settings.getProgressInterval()) {
+                lastReport[0] = now;
+                sendProgress(this.sender);
+            }
+            return !this.cancelled;
+        });
+        if (!batch.isEmpty()) {
+            submit(phase, batch, position[0]);
+        }
+
+        // wait for every batch to be written
+        this.slots.acquireUninterruptibly(this.slotCount);
+        this.slots.release(this.slotCount);
+
+        this.totals.merge(index, this.imported.get(), Long::sum);
+        saveCheckpoint(true);
+
+        long failed;
+        synchronized (this.written) {
+            failed = this.failedBatches;
+        }
+        if (failed != 0) {
+            throw new IllegalStateException(failed + " batch(es) of " + phase.getDescription().toLowerCase(Locale.ROOT) + " could not be written, see the console");
+        }
+    }
+
+    private <T> void submit(Phase<T> phase, List<T> entries, long end) {
+        long sequence = this.nextSequence++;
+        this.slots.acquireUninterruptibly();
+        this.workers.execute(() -> {
+            boolean success = false;
+            try {
+                List<Operation> operations = new ArrayList<>(entries.size() * 4);
+                for (T entry : entries) {
+                    phase.convert(entry, operations);
+                }
+                if (this.filter != null) {
+                    operations = this.filter.filter(operations);
+                }
+                if (this.limiter != null) {
+                    this.limiter.acquire(entries.size());
+                }
+                if (!operations.isEmpty()) {
+                    this.backend.executeBatch(this.quiet.getSender(), operations).join();
+                }
+                success = true;
+            } catch (RuntimeException e) {
+                this.errorCount.incrementAndGet();
+                synchronized (this.errors) {
+                    if (this.errors.size() < this.settings.getErrorsShown()) {
+                        this.errors.add(String.valueOf(e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                    }
+                }
+                this.plugin.getLogger().log(Level.WARNING, "Exception importing a batch from " + this.source, e);
+            } finally {
+                this.imported.addAndGet(entries.size());
+                if (success) {
+                    written(sequence, end);
+                } else {
+                    failed();
+                }
+                this.slots.release();
+            }
+        });
+    }
+
+    private void written(long sequence, long end) {
+        synchronized (this.written) {
+            this.written.put(sequence, end);
+            Long next;
+            while ((next = this.written.remove(this.committedSequence)) != null) {
+                this.committed = next;
+                this.committedSequence++;
+            }
+        }
+        saveCheckpoint(false);
+    }
+
+    // the failed batch's sequence is never written, so the checkpoint can't move past it
+    private void failed() {
+        synchronized (this.written) {
+            this.failedBatches++;
+        }
+    }
+
+    private void saveCheckpoint(boolean force) {
+        ImportCheckpoint checkpoint;
+        synchronized (this.written) {
+            long now = System.currentTimeMillis();
+            if (!force && now - this.lastCheckpoint < CHECKPOINT_INTERVAL) {
+                return;
+            }
+            this.lastCheckpoint = now;
+
+            // once a phase is complete, the next starts from the beginning
+            boolean complete = force && !this.cancelled && this.failedBatches == 0;
+            checkpoint = new ImportCheckpoint(this.source, this.fingerprint,
+                    complete ? this.phaseIndex + 1 : this.phaseIndex,
+                    complete ? 0 : this.committed);
+
+            try {
+                checkpoint.save(this.checkpointFile);
+            } catch (IOException e) {
+                this.plugin.getLogger().log(Level.WARNING, "Unable to save the import checkpoint", e);
+            }
+        }
+    }
+
+    /**
+     * Sends the progress of the import
+     *
+     * @param sender the sender to send it to
+     */
+    public void sendProgress(CommandSender sender) {
+        List<Phase<?>> phases = this.phases;
+        if (phases == null) {
+            LuckPermsCompat.msg(sender, "&7The import of " + this.source + " is starting.");
+            return;
+        }
+
+        Phase<?> phase = phases.get(this.phaseIndex);
+        long imported = this.imported.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - this.phaseStart);
+        long errors = this.errorCount.get() + this.quiet.getErrorCount();
+        LuckPermsCompat.msg(sender, "&7" + phase.getDescription() + ": &b" + (int) (phase.getProgress() * 100) + "%&7 read, &b" +
+                imported + "&7 done (&b" + (imported * 1000 / elapsed) + "/s&7), " + (errors == 0 ? "no" : "&c" + errors + "&7") + " errors.");
+    }
+
+    private void sendErrors(CommandSender sender) {
+        long count = this.errorCount.get() + this.quiet.getErrorCount();
+        if (count == 0) {
+            return;
+        }
+
+        List<String> shown = new ArrayList<>(this.quiet.getErrors());
+        synchronized (this.errors) {
+            shown.addAll(this.errors);
+        }
+        LuckPermsCompat.msg(sender, "&c" + count + " change(s) could not be imported:");
+        for (int i = 0; i < shown.size() && i < this.settings.getErrorsShown(); i++) {
+            LuckPermsCompat.msg(sender, "&c- &7" + shown.get(i));
+        }
+    }
+
+    /**
+     * A phase of an import
+     *
+     * @param <T> the type of entry the phase reads
+     */
+    @Getter
+    protected abstract static class Phase<T> {
+
+        /**
+         * What the phase is doing, e.g. "Importing users"
+         */
+        private final String description;
+
+        /**
+         * How the phase's entries are described once done, e.g. "users imported"
+         */
+        private final String summary;
+
+        protected Phase(String description, String summary) {
+            this.description = description;
+            this.summary = summary;
+        }
+
+        /**
+         * Reads the entries of this phase, in the same order every time
+         *
+         * @param skip the number of entries to skip
+         * @param consumer the consumer of the entries, returning false to stop reading
+         * @throws IOException if the source can't be read
+         */
+        protected abstract void read(long skip, Predicate<T> consumer) throws IOException;
+
+        /**
+         * Gets how much of the source this phase has read
+         *
+         * @return the fraction read, from 0 to 1
+         */
+        protected abstract double getProgress();
+
+        /**
+         * Converts an entry to the operations which import it
+         *
+         * @param entry the entry
+         * @param operations the list to add the operations to
+         */
+        protected abstract void convert(T entry, List<Operation> operations);
+    }
+}
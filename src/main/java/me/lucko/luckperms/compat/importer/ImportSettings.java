@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import lombok.Getter;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * How imports are run, from the "import" section of the config
+ */
+@Getter
+public final class ImportSettings {
+
+    /**
+     * Reads the settings from the config
+     *
+     * @param config the "import" section, or null to use the defaults
+     * @return the settings
+     */
+    public static ImportSettings of(ConfigurationSection config) {
+        if (config == null) {
+            return new ImportSettings(100, 2, 500, 5000, 5);
+        }
+        return new ImportSettings(
+                config.getInt("batch-size", 100),
+                config.getInt("workers", 2),
+                config.getDouble("rate", 500),
+                config.getLong("progress-interval", 5) * 1000,
+                config.getInt("errors-shown", 5)
+        );
+    }
+
+    /**
+     * The number of users or groups written in each batch
+     */
+    private final int batchSize;
+
+    /**
+     * The number of threads converting and writing batches
+     */
+    private final int workers;
+
+    /**
+     * The maximum number of users or groups written per second, or 0 for no limit
+     */
+    private final double rate;
+
+    /**
+     * How often progress is reported, in milliseconds
+     */
+    private final long progressInterval;
+
+    /**
+     * The number of errors listed once the import is done
+     */
+    private final int errorsShown;
+
+    public ImportSettings(int batchSize, int workers, double rate, long progressInterval, int errorsShown) {
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.rate = Math.max(0, rate);
+        this.progressInterval = Math.max(1000, progressInterval);
+        this.errorsShown = Math.max(0, errorsShown);
+    }
+}
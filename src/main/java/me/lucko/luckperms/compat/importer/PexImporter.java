@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Imports a PermissionsEx permissions.yml file.
+ *
+ * <p>Groups are created first, so that users and other groups can inherit from them
+ * regardless of the order they appear in the file. Then the groups, and lastly the users,
+ * are imported.</p>
+ *
+ * <ul>
+ *     <li>permissions become permission nodes, negated if they start with '-'</li>
+ *     <li>inheritance becomes parent groups. A group-&lt;name&gt;-until option makes it temporary</li>
+ *     <li>the prefix and suffix options become prefixes and suffixes. Those of users take precedence</li>
+ *     <li>the rank option of a group becomes its weight, as 1000 - rank</li>
+ *     <li>other options become meta</li>
+ *     <li>anything under worlds is imported in that world</li>
+ *     <li>the PermissionsEx default group is added as a parent of the LuckPerms default group</li>
+ * </ul>
+ */
+public class PexImporter extends ImportJob {
+
+    // the priority of the prefixes and suffixes of users, so they override those of groups
+    private static final int USER_PRIORITY = 1000;
+
+    // the priority of the prefixes and suffixes of groups without a rank
+    private static final int GROUP_PRIORITY = 50;
+
+    private final Path file;
+
+    public PexImporter(LuckPermsCompat plugin, CommandSender sender, Path file, ImportSettings settings) throws IOException {
+        super(plugin, sender, settings, "pex", file.toAbsolutePath().toString(), Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis());
+        this.file = file;
+    }
+
+    @Override
+    protected List<Phase<?>> getPhases() {
+        return ImmutableList.of(
+                new FilePhase("Creating groups", "groups created", HolderType.GROUP, true) {
+                    @Override
+                    protected void convert(ImportEntity entity, List<Operation> operations) {
+                        operations.add(Operation.createGroup(entity.getName()));
+                    }
+                },
+                new FilePhase("Importing groups", "groups imported", HolderType.GROUP, false) {
+                    @Override
+                    protected void convert(ImportEntity entity, List<Operation> operations) {
+                        PexImporter.convert(entity, System.currentTimeMillis() / 1000, operations);
+                    }
+                },
+                new FilePhase("Importing users", "users imported", HolderType.USER, false) {
+                    @Override
+                    protected void convert(ImportEntity entity, List<Operation> operations) {
+                        PexImporter.convert(entity, System.currentTimeMillis() / 1000, operations);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Converts a user or group to the operations which import it
+     *
+     * @param entity the entity
+     * @param now the current unix time, in seconds
+     * @param operations the list to add the operations to
+     */
+    static void convert(ImportEntity entity, long now, List<Operation> operations) {
+        HolderType type = entity.getType();
+        String name = entity.getName();
+        ImportEntity.Scope global = entity.getScopes().get(null);
+
+        int priority = USER_PRIORITY;
+        if (type == HolderType.GROUP) {
+            priority = GROUP_PRIORITY;
+            String rank = global == null ? null : global.getOptions().get("rank");
+            if (rank != null) {
+                try {
+                    priority = Math.max(0, Math.min(USER_PRIORITY - 1, USER_PRIORITY - Integer.parseInt(rank.trim())));
+                    operations.add(Operation.setWeight(name, priority));
+                } catch (NumberFormatException e) {
+                    // not a rank PermissionsEx would have understood either
+                }
+            }
+            if (entity.isDefaultGroup() && !name.equalsIgnoreCase("default")) {
+                operations.add(Operation.parentAdd(HolderType.GROUP, "default", name, null));
+            }
+        }
+
+        for (Map.Entry<String, ImportEntity.Scope> e : entity.getScopes().entrySet()) {
+            String world = e.getKey();
+            ImportEntity.Scope scope = e.getValue();
+            Set<String> parents = new LinkedHashSet<>(scope.getParents());
+
+            // the first parent replaces any the holder already has, so importing twice has the same result.
+            // temporary parents are added afterwards, as setting a parent removes them too
+            boolean first = true;
+            for (String parent : parents) {
+                if (parent.isEmpty() || getExpiry(scope, global, parent) != 0) {
+                    continue;
+                }
+                operations.add(first ? Operation.parentSet(type, name, parent, world) : Operation.parentAdd(type, name, parent, world));
+                first = false;
+            }
+            for (String parent : parents) {
+                long expiry = parent.isEmpty() ? 0 : getExpiry(scope, global, parent);
+                if (expiry > now) {
+                    operations.add(Operation.parentAddTemp(type, name, parent, expiry - now, world));
+                }
+            }
+
+            for (String permission : scope.getPermissions()) {
+                boolean value = !permission.startsWith("-");
+                String node = value ? permission : permission.substring(1);
+                if (!node.isEmpty()) {
+                    operations.add(Operation.permissionSet(type, name, node, value, world));
+                }
+            }
+
+            for (Map.Entry<String, String> option : scope.getOptions().entrySet()) {
+                String key = option.getKey().toLowerCase(Locale.ROOT);
+                String value = option.getValue();
+                if (value == null || value.isEmpty()) {
+                    continue;
+                }
+
+                switch (key) {
+                    case "prefix":
+                        operations.add(Operation.prefixSet(type, name, priority, value, world));
+                        break;
+                    case "suffix":
+                        operations.add(Operation.suffixSet(type, name, priority, value, world));
+                        break;
+                    case "name":
+                        // the last known name of the user, which LuckPerms keeps track of itself
+                        break;
+                    default:
+                        if ((key.equals("rank") && type == HolderType.GROUP && world == null) || isExpiry(key)) {
+                            break;
+                        }
+                        operations.add(Operation.metaSet(type, name, option.getKey(), value, world));
+                        break;
+                }
+            }
+        }
+    }
+
+    // gets when a parent expires, from the group-<name>-until option, or 0 if it doesn't
+    private static long getExpiry(ImportEntity.Scope scope, ImportEntity.Scope global, String parent) {
+        String key = "group-" + parent + "-until";
+        String value = scope.getOptions().get(key);
+        if (value == null && global != null) {
+            value = global.getOptions().get(key);
+        }
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            // an expiry which can't be read is treated as already passed, rather than permanent
+            return Math.max(1, (long) Double.parseDouble(value.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static boolean isExpiry(String key) {
+        return key.startsWith("group-") && key.endsWith("-until");
+    }
+
+    /**
+     * A phase which reads one of the sections of the file
+     */
+    private abstract class FilePhase extends Phase<ImportEntity> {
+        private final HolderType type;
+        private final boolean namesOnly;
+        private volatile PexReader reader = null;
+
+        FilePhase(String description, String summary, HolderType type, boolean namesOnly) {
+            super(description, summary);
+            this.type = type;
+            this.namesOnly = namesOnly;
+        }
+
+        @Override
+        protected void read(long skip, Predicate<ImportEntity> consumer) throws IOException {
+            try (PexReader reader = new PexReader(PexImporter.this.file)) {
+                this.reader = reader;
+                reader.read(this.type, skip, this.namesOnly, consumer);
+            }
+        }
+
+        @Override
+        protected double getProgress() {
+            PexReader reader = this.reader;
+            return reader == null ? 0 : reader.getProgress();
+        }
+    }
+}
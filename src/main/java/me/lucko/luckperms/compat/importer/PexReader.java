@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Reads the users or groups from a PermissionsEx permissions.yml file one at a time
+ */
+public class PexReader extends YamlEntityReader {
+
+    public PexReader(Path file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected void readEntity(ImportEntity entity, Event start) {
+        if (!(start instanceof MappingStartEvent)) {
+            skip(start);
+            return;
+        }
+
+        String key;
+        while ((key = nextKey()) != null) {
+            Event event = next();
+            key = key.toLowerCase(Locale.ROOT);
+
+            if (key.equals("default")) {
+                entity.setDefaultGroup(event instanceof ScalarEvent && ((ScalarEvent) event).getValue().equalsIgnoreCase("true"));
+                skip(event);
+            } else if (key.equals("worlds") && event instanceof MappingStartEvent) {
+                String world;
+                while ((world = nextKey()) != null) {
+                    readScope(entity.getScope(world), next());
+                }
+            } else {
+                readScopeEntry(entity.getScope(null), key, event);
+            }
+        }
+    }
+
+    private void readScope(ImportEntity.Scope scope, Event start) {
+        if (!(start instanceof MappingStartEvent)) {
+            skip(start);
+            return;
+        }
+
+        String key;
+        while ((key = nextKey()) != null) {
+            readScopeEntry(scope, key.toLowerCase(Locale.ROOT), next());
+        }
+    }
+
+    private void readScopeEntry(ImportEntity.Scope scope, String key, Event value) {
+        switch (key) {
+            case "permissions":
+                readList(scope.getPermissions(), value);
+                break;
+            // users list their groups under "group", and groups under "inheritance"
+            case "group":
+            case "groups":
+            case "inheritance":
+            case "parents":
+                readList(scope.getParents(), value);
+                break;
+            case "options":
+                readMap(scope.getOptions(), value);
+                break;
+            // older files have the prefix and suffix outside of the options
+            case "prefix":
+            case "suffix":
+                if (value instanceof ScalarEvent) {
+                    scope.getOptions().putIfAbsent(key, ((ScalarEvent) value).getValue());
+                } else {
+                    skip(value);
+                }
+                break;
+            default:
+                skip(value);
+                break;
+        }
+    }
+}
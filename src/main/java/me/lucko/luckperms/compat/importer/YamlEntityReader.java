@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.importer;
+
+import com.google.common.io.CountingInputStream;
+
+import me.lucko.luckperms.compat.backend.HolderType;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Reads the users or groups from a YAML file one at a time.
+ *
+ * <p>The file is read as a stream of YAML events rather than loaded as a whole,
+ * so only the entity currently being read is held in memory. Subclasses read
+ * the entities themselves, in whatever format the file uses.</p>
+ */
+public abstract class YamlEntityReader implements Closeable {
+    private final long size;
+    private final CountingInputStream input;
+    private final Iterator<Event> events;
+
+    protected YamlEntityReader(Path file) throws IOException {
+        this.size = Files.size(file);
+        this.input = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 65536));
+        Reader reader = new InputStreamReader(this.input, StandardCharsets.UTF_8);
+        this.events = new Yaml().parse(reader).iterator();
+    }
+
+    /**
+     * Gets how much of the file has been read
+     *
+     * @return the fraction read, from 0 to 1
+     */
+    public double getProgress() {
+        return this.size == 0 ? 1 : Math.min(1, (double) this.input.getCount() / this.size);
+    }
+
+    /**
+     * Reads the entities of a top level section of the file
+     *
+     * @param type the type of entity in the section, USER for "users" and GROUP for "groups"
+     * @param skip the number of entities to skip without reading them
+     * @param namesOnly if only the names of the entities should be read
+     * @param consumer the consumer of the entities, returning false to stop reading
+     * @return the number of entities read or skipped
+     */
+    public long read(HolderType type, long skip, boolean namesOnly, Predicate<ImportEntity> consumer) {
+        String section = type == HolderType.USER ? "users" : "groups";
+        if (!skipTo(MappingStartEvent.class)) {
+            return 0;
+        }
+
+        long index = 0;
+        String key;
+        while ((key = nextKey()) != null) {
+            Event event = next();
+            if (!key.equals(section) || !(event instanceof MappingStartEvent)) {
+                skip(event);
+                continue;
+            }
+
+            String name;
+            while ((name = nextKey()) != null) {
+                ImportEntity entity = new ImportEntity(type, name);
+                event = next();
+                if (index++ < skip) {
+                    skip(event);
+                    continue;
+                }
+                if (namesOnly) {
+                    skip(event);
+                } else {
+                    readEntity(entity, event);
+                }
+                if (!consumer.test(entity)) {
+                    return index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads the data of an entity
+     *
+     * @param entity the entity to read into
+     * @param start the first event of the entity's value
+     */
+    protected abstract void readEntity(ImportEntity entity, Event start);
+
+    /**
+     * Reads a list of scalars, or a single scalar, into a list
+     *
+     * @param list the list to add to
+     * @param start the first event of the value
+     */
+    protected void readList(List<String> list, Event start) {
+        if (start instanceof ScalarEvent) {
+            String value = ((ScalarEvent) start).getValue();
+            if (!value.isEmpty()) {
+                list.add(value);
+            }
+            return;
+        }
+        if (!(start instanceof SequenceStartEvent)) {
+            skip(start);
+            return;
+        }
+
+        while (true) {
+            Event event = next();
+            if (event instanceof CollectionEndEvent) {
+                return;
+            }
+            if (event instanceof ScalarEvent) {
+                list.add(((ScalarEvent) event).getValue());
+            } else {
+                skip(event);
+            }
+        }
+    }
+
+    /**
+     * Reads a mapping of scalars into a map, skipping any values which aren't scalars
+     *
+     * @param map the map to add to
+     * @param start the first event of the value
+     */
+    protected void readMap(Map<String, String> map, Event start) {
+        if (!(start instanceof MappingStartEvent)) {
+            skip(start);
+            return;
+        }
+
+        String key;
+        while ((key = nextKey()) != null) {
+            Event event = next();
+            if (event instanceof ScalarEvent) {
+                map.put(key, ((ScalarEvent) event).getValue());
+            } else {
+                skip(event);
+            }
+        }
+    }
+
+    /**
+     * Reads the next key of a mapping, or returns null at the end of it. Keys which
+     * aren't scalars are skipped along with their value.
+     *
+     * @return the key, or null
+     */
+    protected String nextKey() {
+        while (true) {
+            Event event = next();
+            if (event instanceof ScalarEvent) {
+                return ((ScalarEvent) event).getValue();
+            }
+            if (event instanceof CollectionEndEvent) {
+                return null;
+            }
+            skip(event);
+            skip(next());
+        }
+    }
+
+    /**
+     * Skips the rest of a value
+     *
+     * @param start the first event of the value
+     */
+    protected void skip(Event start) {
+        if (!(start instanceof CollectionStartEvent)) {
+            return;
+        }
+
+        int depth = 1;
+        while (depth != 0) {
+            Event event = next();
+            if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    protected Event next() {
+        if (!this.events.hasNext()) {
+            throw new IllegalStateException("Unexpected end of file");
+        }
+        return this.events.next();
+    }
+
+    private boolean skipTo(Class<? extends Event> type) {
+        while (this.events.hasNext()) {
+            if (type.isInstance(this.events.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.journal;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.luckperms.compat.backend.NodeSource;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Works out the operations which reverse others.
+ *
+ * <p>Additions are reversed by removing what was added, unless the holder already had it,
+ * in which case nothing was. Changes which remove or replace
+ * data are reversed by adding back what the holder had before, which is read from a
+ * {@link NodeSource}. If that isn't possible, e.g. because the API isn't available, the
+ * user is offline, or they have data which can't be expressed as an operation, the change
+ * is treated as irreversible.</p>
+ */
+public class Inverter {
+
+    // reads the data of holders before they are changed, or null if it can't be read
+    private final NodeSource nodes;
+
+    public Inverter(NodeSource nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Gets the operations which reverse a number of operations, applied in order.
+     * This must be called before the operations are applied.
+     *
+     * @param operations the operations
+     * @return the reversing operations, in the order they should be applied, or null if
+     *         any of the operations can't be reversed
+     */
+    public List<Operation> invert(List<Operation> operations) {
+        if (operations.size() == 1) {
+            return invert(operations.get(0));
+        }
+        return combine(invertEach(operations));
+    }
+
+    /**
+     * Gets the operations which reverse each of a number of operations.
+     * This must be called before the operations are applied.
+     *
+     * @param operations the operations
+     * @return the reversing operations of each operation, null where it can't be reversed
+     */
+    public List<List<Operation>> invertEach(List<Operation> operations) {
+        List<List<Operation>> inverses = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            inverses.add(invert(operation));
+        }
+        return inverses;
+    }
+
+    /**
+     * Combines the reversing operations of a number of operations which were applied in order
+     *
+     * @param inverses the reversing operations of each operation, see {@link #invertEach(List)}
+     * @return the reversing operations, in the order they should be applied, or null if
+     *         any of the operations can't be reversed
+     */
+    public static List<Operation> combine(List<List<Operation>> inverses) {
+        List<Operation> inverse = new ArrayList<>();
+        for (int i = inverses.size() - 1; i >= 0; i--) {
+            List<Operation> part = inverses.get(i);
+            if (part == null) {
+                return null;
+            }
+            inverse.addAll(part);
+        }
+        return inverse;
+    }
+
+    /**
+     * Gets the operations which reverse an operation.
+     * This must be called before the operation is applied.
+     *
+     * @param op the operation
+     * @return the reversing operations, in the order they should be applied, or null if
+     *         the operation can't be reversed
+     */
+    public List<Operation> invert(Operation op) {
+        switch (op.getType()) {
+            case PROMOTE:
+                return ImmutableList.of(Operation.demote(op.getHolder(), op.getKey()));
+            case DEMOTE:
+                return ImmutableList.of(Operation.promote(op.getHolder(), op.getKey()));
+            default:
+                break;
+        }
+
+        List<Operation> before = this.nodes == null ? null : this.nodes.getNodes(op.getHolderType(), op.getHolder(), isWipe(op));
+        switch (op.getType()) {
+            // additions, reversed by removing what was added. if the holder already had it,
+            // nothing was added. if the previous state isn't known, assume it didn't
+            case PARENT_ADD:
+                if (find(before, Operation.Type.PARENT_ADD, op) != null) {
+                    return ImmutableList.of();
+                }
+                return ImmutableList.of(Operation.parentRemove(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld()));
+            case PARENT_ADD_TEMP: {
+                // a temporary node which was already there may have had its expiry changed, so is put back
+                Operation remove = Operation.parentRemoveTemp(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld());
+                Operation previous = find(before, Operation.Type.PARENT_ADD_TEMP, op);
+                return previous == null ? ImmutableList.of(remove) : ImmutableList.of(remove, previous);
+            }
+            case PERMISSION_SET_TEMP: {
+                Operation remove = Operation.permissionUnsetTemp(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld());
+                Operation previous = find(before, Operation.Type.PERMISSION_SET_TEMP, op);
+                return previous == null ? ImmutableList.of(remove) : ImmutableList.of(remove, previous);
+            }
+            case CREATE_GROUP:
+                // groups are always loaded, so if there are nodes the group already existed
+                if (before != null) {
+                    return ImmutableList.of();
+                }
+                return ImmutableList.of(Operation.deleteGroup(op.getHolder()));
+
+            // replacements. if the previous value can't be read, assume there wasn't one
+            case PERMISSION_SET: {
+                Operation previous = find(before, Operation.Type.PERMISSION_SET, op);
+                return ImmutableList.of(previous != null ? previous : Operation.permissionUnset(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld()));
+            }
+            case META_SET: {
+                Operation previous = find(before, Operation.Type.META_SET, op);
+                return ImmutableList.of(previous != null ? previous : Operation.metaUnset(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld()));
+            }
+            case PREFIX_SET: {
+                Operation previous = find(before, Operation.Type.PREFIX_SET, op);
+                return ImmutableList.of(previous != null ? previous : Operation.prefixUnset(op.getHolderType(), op.getHolder(), Integer.parseInt(op.getKey()), op.getWorld()));
+            }
+            case SUFFIX_SET: {
+                Operation previous = find(before, Operation.Type.SUFFIX_SET, op);
+                return ImmutableList.of(previous != null ? previous : Operation.suffixUnset(op.getHolderType(), op.getHolder(), Integer.parseInt(op.getKey()), op.getWorld()));
+            }
+
+            // removals. these fail if there is nothing to remove, so if the
+            // previous state isn't known, assume what was removed was there
+            case PARENT_REMOVE:
+                if (before == null) {
+                    return ImmutableList.of(Operation.parentAdd(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld()));
+                }
+                return findAll(before, Operation.Type.PARENT_ADD, op);
+            case PARENT_REMOVE_TEMP:
+                return before == null ? null : findAll(before, Operation.Type.PARENT_ADD_TEMP, op);
+            case PERMISSION_UNSET:
+                return before == null ? null : findAll(before, Operation.Type.PERMISSION_SET, op);
+            case PERMISSION_UNSET_TEMP:
+                return before == null ? null : findAll(before, Operation.Type.PERMISSION_SET_TEMP, op);
+            case META_UNSET:
+                return before == null ? null : findAll(before, Operation.Type.META_SET, op);
+            case PREFIX_UNSET:
+                return before == null ? null : findAll(before, Operation.Type.PREFIX_SET, op);
+            case SUFFIX_UNSET:
+                return before == null ? null : findAll(before, Operation.Type.SUFFIX_SET, op);
+
+            // changes which wipe data, which can only be reversed if it was read beforehand
+            case PARENT_SET: {
+                if (before == null) {
+                    return null;
+                }
+                List<Operation> inverse = new ArrayList<>();
+                inverse.add(Operation.parentRemove(op.getHolderType(), op.getHolder(), op.getKey(), op.getWorld()));
+                for (Operation previous : before) {
+                    if (isParent(previous) && sameWorld(previous, op)) {
+                        inverse.add(previous);
+                    }
+                }
+                return inverse;
+            }
+            case PARENT_CLEAR: {
+                if (before == null) {
+                    return null;
+                }
+                List<Operation> inverse = new ArrayList<>();
+                for (Operation previous : before) {
+                    if (isParent(previous)) {
+                        inverse.add(previous);
+                    }
+                }
+                return inverse;
+            }
+            case CLEAR:
+                return before;
+            case DELETE_GROUP: {
+                if (before == null) {
+                    return null;
+                }
+                List<Operation> inverse = new ArrayList<>(before.size() + 1);
+                inverse.add(Operation.createGroup(op.getHolder()));
+                inverse.addAll(before);
+                return inverse;
+            }
+            case SET_WEIGHT:
+                for (Operation previous : before == null ? Collections.<Operation>emptyList() : before) {
+                    if (previous.getType() == Operation.Type.SET_WEIGHT) {
+                        return ImmutableList.of(previous);
+                    }
+                }
+                return ImmutableList.of(Operation.unsetWeight(op.getHolder(), Integer.parseInt(op.getValue())));
+            case UNSET_WEIGHT:
+                if (before == null) {
+                    return ImmutableList.of(Operation.setWeight(op.getHolder(), Integer.parseInt(op.getValue())));
+                }
+                for (Operation previous : before) {
+                    if (previous.getType() == Operation.Type.SET_WEIGHT) {
+                        return ImmutableList.of(previous);
+                    }
+                }
+                return ImmutableList.of();
+            default:
+                throw new AssertionError(op.getType());
+        }
+    }
+
+    // changes which remove data they don't name, so can only be reversed if every node can be put back
+    private static boolean isWipe(Operation op) {
+        switch (op.getType()) {
+            case PARENT_SET:
+            case PARENT_CLEAR:
+            case CLEAR:
+            case DELETE_GROUP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Operation find(List<Operation> before, Operation.Type type, Operation op) {
+        if (before == null) {
+            return null;
+        }
+        for (Operation previous : before) {
+            if (matches(previous, type, op)) {
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    private static List<Operation> findAll(List<Operation> before, Operation.Type type, Operation op) {
+        List<Operation> found = new ArrayList<>(1);
+        for (Operation previous : before) {
+            if (matches(previous, type, op)) {
+                found.add(previous);
+            }
+        }
+        return found;
+    }
+
+    private static boolean matches(Operation previous, Operation.Type type, Operation op) {
+        return previous.getType() == type && previous.getKey().equalsIgnoreCase(op.getKey()) && sameWorld(previous, op);
+    }
+
+    private static boolean isParent(Operation op) {
+        return op.getType() == Operation.Type.PARENT_ADD || op.getType() == Operation.Type.PARENT_ADD_TEMP;
+    }
+
+    private static boolean sameWorld(Operation a, Operation b) {
+        return a.getWorld() == null ? b.getWorld() == null : a.getWorld().equalsIgnoreCase(b.getWorld());
+    }
+}
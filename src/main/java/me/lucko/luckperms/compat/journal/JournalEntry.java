@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.journal;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import me.lucko.luckperms.compat.backend.Operation;
+
+import java.util.List;
+
+/**
+ * A change read back from the {@link UndoJournal}
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public final class JournalEntry {
+
+    /**
+     * The segment the entry is stored in, and its position in the segment
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final long segment;
+    @Getter(AccessLevel.PACKAGE)
+    private final int offset;
+
+    /**
+     * The sequence number of the entry
+     */
+    private final long sequence;
+
+    /**
+     * The command invocation the change was made by. One command may make several changes.
+     */
+    private final long invocation;
+
+    /**
+     * When the change was made
+     */
+    private final long time;
+
+    /**
+     * The name of the sender of the command
+     */
+    private final String sender;
+
+    /**
+     * The label and arguments of the command. The arguments are null if they aren't known
+     */
+    private final String label;
+    private final String[] args;
+
+    /**
+     * The operations which were applied
+     */
+    private final List<Operation> operations;
+
+    /**
+     * The operations which reverse the change, in order, or null if it can't be reversed
+     */
+    private final List<Operation> inverse;
+
+    /**
+     * If the change has been undone already
+     */
+    private final boolean undone;
+
+    /**
+     * Gets the command which made the change, as it was sent
+     *
+     * @return the command
+     */
+    public String getCommand() {
+        StringBuilder sb = new StringBuilder().append('/').append(this.label);
+        if (this.args != null) {
+            for (String arg : this.args) {
+                sb.append(' ').append(arg);
+            }
+        }
+        return sb.toString();
+    }
+}
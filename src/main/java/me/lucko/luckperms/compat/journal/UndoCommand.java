@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.journal;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.audit.AuditLog;
+import me.lucko.luckperms.compat.backend.ExecutionBackend;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Handles /lpc undo, which reverses the most recent changes in the {@link UndoJournal}
+ */
+public class UndoCommand {
+    private final LuckPermsCompat plugin;
+    private final UndoJournal journal;
+
+    public UndoCommand(LuckPermsCompat plugin, UndoJournal journal) {
+        this.plugin = plugin;
+        this.journal = journal;
+    }
+
+    /**
+     * Executes the command
+     *
+     * @param sender the sender
+     * @param args the arguments after "undo"
+     */
+    public void execute(CommandSender sender, String[] args) {
+        List<JournalEntry> entries;
+        if (args.length == 1 && isNumber(args[0])) {
+            entries = this.journal.select(Integer.parseInt(args[0]), 0);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("since") && parseDuration(args[1]) > 0) {
+            entries = this.journal.select(0, System.currentTimeMillis() - parseDuration(args[1]));
+        } else {
+            this.journal.sendStatus(sender, 5);
+            LuckPermsCompat.msg(sender, "&7Use /lpc undo <count> to undo the last commands, or /lpc undo since <time> (e.g. 30m) to undo those sent since.");
+            return;
+        }
+
+        if (entries.isEmpty()) {
+            LuckPermsCompat.msg(sender, "Nothing to undo.");
+            return;
+        }
+
+        // changes can only be undone in order, so stop at the first one which can't be
+        int count = 0;
+        while (count < entries.size() && entries.get(count).getInverse() != null) {
+            count++;
+        }
+        if (count < entries.size()) {
+            JournalEntry irreversible = entries.get(count);
+            LuckPermsCompat.msg(sender, "&c'" + irreversible.getCommand() + "' by " + irreversible.getSender() + " can't be undone, so only the changes made after it will be.");
+            if (count == 0) {
+                return;
+            }
+        }
+
+        ExecutionBackend backend = this.plugin.getBackend(null);
+        String[] auditArgs = new String[args.length + 1];
+        auditArgs[0] = "undo";
+        System.arraycopy(args, 0, auditArgs, 1, args.length);
+
+        Set<Long> invocations = new HashSet<>();
+        CompletableFuture<Boolean> future = CompletableFuture.completedFuture(true);
+        for (JournalEntry entry : entries.subList(0, count)) {
+            invocations.add(entry.getInvocation());
+            future = future.thenCompose(previous -> {
+                audit(sender, auditArgs, entry.getInverse());
+                return apply(backend, sender, entry.getInverse()).thenApply(result -> {
+                    // a reversal which failed is left in the journal, so it can be tried again
+                    if (result) {
+                        this.journal.markUndone(entry);
+                    }
+                    return previous && result;
+                });
+            });
+        }
+
+        int commands = invocations.size();
+        future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                this.plugin.getLogger().log(Level.SEVERE, "Exception undoing changes", ex);
+                LuckPermsCompat.msg(sender, "&cUndo failed: an unexpected error occurred.");
+            } else if (result) {
+                LuckPermsCompat.msg(sender, "Undid &b" + commands + "&a command(s).");
+            } else {
+                LuckPermsCompat.msg(sender, "Undid &b" + commands + "&a command(s), &csome changes could not be reversed.");
+            }
+        });
+    }
+
+    // records a reversal under the sender undoing it, as the mappings do for the changes themselves
+    private void audit(CommandSender sender, String[] args, List<Operation> inverse) {
+        AuditLog auditLog = this.plugin.getAuditLog();
+        if (auditLog != null && !inverse.isEmpty()) {
+            auditLog.record(sender, "lpc", args, inverse);
+        }
+    }
+
+    /**
+     * Applies operations strictly in order. Consecutive changes to holders are applied
+     * as a batch, but group creation, deletion and track changes are applied on their own.
+     */
+    private static CompletableFuture<Boolean> apply(ExecutionBackend backend, CommandSender sender, List<Operation> operations) {
+        CompletableFuture<Boolean> future = CompletableFuture.completedFuture(true);
+        List<Operation> batch = new ArrayList<>();
+        for (Operation operation : operations) {
+            if (isNodeOperation(operation)) {
+                batch.add(operation);
+                continue;
+            }
+            future = then(future, backend, sender, batch);
+            batch = new ArrayList<>();
+            future = future.thenCompose(previous -> backend.execute(sender, operation).thenApply(result -> previous && result));
+        }
+        return then(future, backend, sender, batch);
+    }
+
+    private static CompletableFuture<Boolean> then(CompletableFuture<Boolean> future, ExecutionBackend backend, CommandSender sender, List<Operation> batch) {
+        if (batch.isEmpty()) {
+            return future;
+        }
+        return future.thenCompose(previous -> backend.executeBatch(sender, batch).thenApply(result -> previous && result));
+    }
+
+    private static boolean isNodeOperation(Operation operation) {
+        switch (operation.getType()) {
+            case CREATE_GROUP:
+            case DELETE_GROUP:
+            case PROMOTE:
+            case DEMOTE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty() || s.length() > 6) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return Integer.parseInt(s) > 0;
+    }
+
+    /**
+     * Parses a duration such as "30m" or "1h30m"
+     *
+     * @param s the duration
+     * @return the duration in milliseconds, or -1 if it's invalid
+     */
+    static long parseDuration(String s) {
+        long total = 0;
+        long value = -1;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value == -1 ? 0 : value * 10) + (c - '0');
+                if (value > Integer.MAX_VALUE) {
+                    return -1;
+                }
+                continue;
+            }
+            if (value == -1) {
+                return -1;
+            }
+
+            switch (Character.toLowerCase(c)) {
+                case 's':
+                    total += TimeUnit.SECONDS.toMillis(value);
+                    break;
+                case 'm':
+                    total += TimeUnit.MINUTES.toMillis(value);
+                    break;
+                case 'h':
+                    total += TimeUnit.HOURS.toMillis(value);
+                    break;
+                case 'd':
+                    total += TimeUnit.DAYS.toMillis(value);
+                    break;
+                default:
+                    return -1;
+            }
+            value = -1;
+        }
+        return value == -1 && total > 0 ? total : -1;
+    }
+}
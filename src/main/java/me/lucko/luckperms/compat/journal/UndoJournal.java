@@ -0,0 +1,594 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.journal;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made by remapped commands, along with the
+ * operations which reverse them, so they can be undone.
+ *
+ * <p>The journal is split into fixed size segment files, which are memory mapped.
+ * Appending a record only copies it into the mapped segment, and leaves writing it
+ * to disk to the operating system. Once there are too many segments, the oldest is
+ * deleted.</p>
+ *
+ * <p>Each record is prefixed with its length and a CRC32 checksum, so a record which
+ * was only partly written when the server stopped is detected and discarded.</p>
+ */
+public class UndoJournal {
+
+    // segment header: magic, version, the sequence of the first record and the invocation counter
+    private static final int MAGIC = 0x4C50434A;
+    // version 2 stores operation and holder types by name, rather than by ordinal
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+
+    // record header: body length, checksum of the body, flags
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final byte FLAG_UNDONE = 1;
+
+    // string lengths above this mark null strings, and references to a string already in the record
+    private static final int NULL = 0xFFFF;
+    private static final int REFERENCE = 0xFFFE;
+    private static final int MAX_REFERENCES = 32;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Logger logger;
+
+    // the invocation ids handed out to commands
+    private final AtomicLong invocations = new AtomicLong();
+
+    // everything below is guarded by this. records are encoded into the scratch
+    // buffer, then copied into the active segment in one go
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private char[] chars = new char[256];
+
+    // the strings written to the record being encoded. the inverse of an operation mostly
+    // refers to the same strings as the operation, so they are only written once
+    private final String[] references = new String[MAX_REFERENCES];
+    private int referenceCount = 0;
+
+    // the indexes of the segments on disk, oldest first. the last one is appended to
+    private final List<Long> segments = new ArrayList<>();
+    private MappedByteBuffer active = null;
+    private long nextSequence = 1;
+
+    private long appended = 0;
+    private long dropped = 0;
+
+    /**
+     * Creates an undo journal
+     *
+     * @param directory the directory to store the segments in
+     * @param segmentSize the size of each segment in bytes
+     * @param maxSegments the most segments to keep
+     * @param logger the logger to report errors to
+     */
+    public UndoJournal(Path directory, int segmentSize, int maxSegments, Logger logger) {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, 64 * 1024);
+        this.maxSegments = Math.max(maxSegments, 1);
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the journal, recovering the segments already on disk
+     *
+     * @throws IOException if the journal can't be opened
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(this.directory);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "journal-*.dat")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    this.segments.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".dat".length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(this.segments);
+
+        if (!this.segments.isEmpty()) {
+            long index = this.segments.get(this.segments.size() - 1);
+            MappedByteBuffer buffer = map(index, FileChannel.MapMode.READ_WRITE);
+            if (buffer.capacity() >= HEADER_SIZE && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+                this.nextSequence = buffer.getLong(8);
+                this.invocations.set(buffer.getLong(16));
+
+                List<JournalEntry> entries = new ArrayList<>();
+                int end = read(index, buffer, entries);
+                if (!entries.isEmpty()) {
+                    JournalEntry last = entries.get(entries.size() - 1);
+                    this.nextSequence = last.getSequence() + 1;
+                    this.invocations.set(Math.max(this.invocations.get(), last.getInvocation()));
+                }
+
+                // discard anything after the last intact record
+                for (int i = end; i < buffer.capacity(); i++) {
+                    if (buffer.get(i) != 0) {
+                        buffer.put(i, (byte) 0);
+                    }
+                }
+                buffer.position(end);
+                this.active = buffer;
+                return;
+            }
+
+            this.logger.warning("Undo journal segment " + index + " is unreadable, starting a new one.");
+        }
+
+        roll();
+    }
+
+    /**
+     * Closes the journal. Changes are no longer recorded after this.
+     */
+    public synchronized void close() {
+        if (this.active != null) {
+            this.active.force();
+            this.active = null;
+        }
+    }
+
+    /**
+     * Gets a new id for a command invocation, to group the changes it makes
+     *
+     * @return the id
+     */
+    public long nextInvocation() {
+        return this.invocations.incrementAndGet();
+    }
+
+    /**
+     * Appends a change to the journal
+     *
+     * @param sender the sender of the command
+     * @param label the label of the command
+     * @param args the arguments of the command, or null if unknown
+     * @param invocation the id of the invocation, see {@link #nextInvocation()}
+     * @param operations the operations which were applied
+     * @param inverse the operations which reverse them, or null if they can't be reversed
+     */
+    public synchronized void append(CommandSender sender, String label, String[] args, long invocation, List<Operation> operations, List<Operation> inverse) {
+        if (this.active == null) {
+            return;
+        }
+
+        int length = encode(sender.getName(), label, args, invocation, operations, inverse);
+        if (length == -1) {
+            this.dropped++;
+            return;
+        }
+
+        if (length > this.active.remaining()) {
+            try {
+                roll();
+            } catch (IOException e) {
+                this.logger.log(Level.SEVERE, "Unable to start a new undo journal segment", e);
+                this.dropped++;
+                return;
+            }
+        }
+
+        // the length is at the start of the record, so it is only visible once it is complete
+        int start = this.active.position();
+        this.active.position(start + 4);
+        this.active.put(this.scratch.array(), 4, length - 4);
+        this.active.putInt(start, length - RECORD_HEADER_SIZE);
+        this.nextSequence++;
+        this.appended++;
+    }
+
+    /**
+     * Encodes a record into the scratch buffer, growing it if needed
+     *
+     * @return the length of the record, or -1 if it can't fit in a segment
+     */
+    private int encode(String sender, String label, String[] args, long invocation, List<Operation> operations, List<Operation> inverse) {
+        while (true) {
+            ByteBuffer buf = this.scratch;
+            buf.clear();
+            Arrays.fill(this.references, 0, this.referenceCount, null);
+            this.referenceCount = 0;
+            try {
+                buf.position(RECORD_HEADER_SIZE);
+                buf.putLong(this.nextSequence);
+                buf.putLong(invocation);
+                buf.putLong(System.currentTimeMillis());
+                putString(buf, sender);
+                putString(buf, label);
+                if (args == null) {
+                    buf.putInt(-1);
+                } else {
+                    buf.putInt(args.length);
+                    for (String arg : args) {
+                        putString(buf, arg);
+                    }
+                }
+                putOperations(buf, operations);
+                if (inverse == null) {
+                    buf.putInt(-1);
+                } else {
+                    putOperations(buf, inverse);
+                }
+            } catch (BufferOverflowException e) {
+                if (buf.capacity() >= this.segmentSize - HEADER_SIZE) {
+                    return -1;
+                }
+                this.scratch = ByteBuffer.allocate(Math.min(buf.capacity() * 2, this.segmentSize - HEADER_SIZE));
+                continue;
+            } catch (IllegalArgumentException e) {
+                return -1;
+            }
+
+            int end = buf.position();
+            this.crc.reset();
+            this.crc.update(buf.array(), RECORD_HEADER_SIZE, end - RECORD_HEADER_SIZE);
+            buf.putInt(4, (int) this.crc.getValue());
+            buf.put(8, (byte) 0);
+            return end;
+        }
+    }
+
+    private void putOperations(ByteBuffer buf, List<Operation> operations) {
+        buf.putInt(operations.size());
+        for (Operation operation : operations) {
+            putString(buf, operation.getType().name());
+            putString(buf, operation.getHolderType().name());
+            putString(buf, operation.getHolder());
+            putString(buf, operation.getKey());
+            putString(buf, operation.getValue());
+            buf.put((byte) (operation.isPermissionValue() ? 1 : 0));
+            buf.putLong(operation.getDuration());
+            putString(buf, operation.getWorld());
+        }
+    }
+
+    private void putString(ByteBuffer buf, String s) {
+        if (s == null) {
+            buf.putShort((short) NULL);
+            return;
+        }
+
+        for (int i = 0; i < this.referenceCount; i++) {
+            if (this.references[i] == s) {
+                buf.putShort((short) REFERENCE);
+                buf.put((byte) i);
+                return;
+            }
+        }
+        if (this.referenceCount < MAX_REFERENCES) {
+            this.references[this.referenceCount++] = s;
+        }
+
+        // most strings are ascii, so copy them a char at a time rather than encoding them
+        int length = s.length();
+        if (length < REFERENCE && buf.remaining() >= length + 2) {
+            if (this.chars.length < length) {
+                this.chars = new char[length];
+            }
+            char[] chars = this.chars;
+            s.getChars(0, length, chars, 0);
+
+            byte[] array = buf.array();
+            int pos = buf.position() + 2;
+            int i = 0;
+            while (i < length && chars[i] < 0x80) {
+                array[pos + i] = (byte) chars[i];
+                i++;
+            }
+            if (i == length) {
+                buf.putShort((short) length);
+                buf.position(pos + length);
+                return;
+            }
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= REFERENCE) {
+            throw new IllegalArgumentException("String too long");
+        }
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf, List<String> strings) {
+        int length = buf.getShort() & 0xFFFF;
+        if (length == NULL) {
+            return null;
+        }
+        if (length == REFERENCE) {
+            return strings.get(buf.get());
+        }
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        if (strings.size() < MAX_REFERENCES) {
+            strings.add(s);
+        }
+        return s;
+    }
+
+    private static List<Operation> getOperations(ByteBuffer buf, List<String> strings) {
+        int count = buf.getInt();
+        if (count < 0) {
+            return null;
+        }
+
+        List<Operation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Operation.Type type = Operation.Type.valueOf(getString(buf, strings));
+            HolderType holderType = HolderType.valueOf(getString(buf, strings));
+            String holder = getString(buf, strings);
+            String key = getString(buf, strings);
+            String value = getString(buf, strings);
+            boolean permissionValue = buf.get() != 0;
+            long duration = buf.getLong();
+            String world = getString(buf, strings);
+            operations.add(Operation.of(type, holderType, holder, key, value, permissionValue, duration, world));
+        }
+        return operations;
+    }
+
+    /**
+     * Reads the intact records of a segment
+     *
+     * @param index the index of the segment
+     * @param segment the segment
+     * @param out the list to add the records to
+     * @return the position after the last intact record
+     */
+    private int read(long index, ByteBuffer segment, List<JournalEntry> out) {
+        ByteBuffer buf = segment.duplicate();
+        CRC32 crc = new CRC32();
+
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= buf.capacity()) {
+            int length = buf.getInt(pos);
+            int bodyStart = pos + RECORD_HEADER_SIZE;
+            if (length <= 0 || length > buf.capacity() - bodyStart) {
+                break;
+            }
+
+            buf.limit(bodyStart + length).position(bodyStart);
+            crc.reset();
+            crc.update(buf);
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) {
+                break;
+            }
+
+            buf.position(bodyStart);
+            try {
+                List<String> strings = new ArrayList<>();
+                long sequence = buf.getLong();
+                long invocation = buf.getLong();
+                long time = buf.getLong();
+                String sender = getString(buf, strings);
+                String label = getString(buf, strings);
+                int argCount = buf.getInt();
+                String[] args = null;
+                if (argCount >= 0) {
+                    args = new String[argCount];
+                    for (int i = 0; i < argCount; i++) {
+                        args[i] = getString(buf, strings);
+                    }
+                }
+                List<Operation> operations = getOperations(buf, strings);
+                List<Operation> inverse = getOperations(buf, strings);
+                boolean undone = (buf.get(pos + 8) & FLAG_UNDONE) != 0;
+                out.add(new JournalEntry(index, pos, sequence, invocation, time, sender, label, args, operations, inverse, undone));
+            } catch (RuntimeException e) {
+                // intact, but not something we wrote
+                break;
+            }
+
+            buf.limit(buf.capacity());
+            pos = bodyStart + length;
+        }
+        return pos;
+    }
+
+    /**
+     * Selects the most recent changes which haven't been undone yet, newest first
+     *
+     * @param count the number of commands to select the changes of, if since is 0
+     * @param since the time to select the changes made after, or 0
+     * @return the changes
+     */
+    public synchronized List<JournalEntry> select(int count, long since) {
+        List<JournalEntry> selected = new ArrayList<>();
+        Set<Long> invocations = new HashSet<>();
+
+        for (int i = this.segments.size() - 1; i >= 0; i--) {
+            long index = this.segments.get(i);
+            List<JournalEntry> entries = new ArrayList<>();
+            try {
+                ByteBuffer segment = index == this.segments.get(this.segments.size() - 1) && this.active != null
+                        ? this.active
+                        : map(index, FileChannel.MapMode.READ_ONLY);
+                if (segment.capacity() < HEADER_SIZE || segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) {
+                    continue;
+                }
+                read(index, segment, entries);
+            } catch (IOException e) {
+                this.logger.log(Level.WARNING, "Unable to read undo journal segment " + index, e);
+                continue;
+            }
+
+            for (int j = entries.size() - 1; j >= 0; j--) {
+                JournalEntry entry = entries.get(j);
+                if (entry.isUndone()) {
+                    continue;
+                }
+                if (since > 0 ? entry.getTime() < since : invocations.size() >= count && !invocations.contains(entry.getInvocation())) {
+                    return selected;
+                }
+                invocations.add(entry.getInvocation());
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Marks a change as undone, so it isn't selected again
+     *
+     * @param entry the change
+     */
+    public synchronized void markUndone(JournalEntry entry) {
+        try {
+            boolean isActive = entry.getSegment() == this.segments.get(this.segments.size() - 1) && this.active != null;
+            if (!isActive && !this.segments.contains(entry.getSegment())) {
+                return;
+            }
+
+            MappedByteBuffer segment = isActive ? this.active : map(entry.getSegment(), FileChannel.MapMode.READ_WRITE);
+            segment.put(entry.getOffset() + 8, (byte) (segment.get(entry.getOffset() + 8) | FLAG_UNDONE));
+            if (!isActive) {
+                segment.force();
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to mark undo journal entry " + entry.getSequence() + " as undone", e);
+        }
+    }
+
+    /**
+     * Starts a new segment, deleting the oldest ones if there are too many
+     */
+    private void roll() throws IOException {
+        if (this.active != null) {
+            this.active.force();
+            this.active = null;
+        }
+
+        long index = this.segments.isEmpty() ? 1 : this.segments.get(this.segments.size() - 1) + 1;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        }
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(this.nextSequence);
+        buffer.putLong(this.invocations.get());
+        this.segments.add(index);
+        this.active = buffer;
+
+        while (this.segments.size() > this.maxSegments) {
+            long oldest = this.segments.remove(0);
+            try {
+                Files.deleteIfExists(segmentPath(oldest));
+            } catch (IOException e) {
+                this.logger.log(Level.WARNING, "Unable to delete undo journal segment " + oldest, e);
+            }
+        }
+    }
+
+    private MappedByteBuffer map(long index, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(segmentPath(index), options)) {
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return this.directory.resolve(String.format("journal-%08d.dat", index));
+    }
+
+    /**
+     * Sends the state of the journal, and the most recent changes in it, to a sender
+     *
+     * @param sender the sender
+     * @param count the number of commands to list
+     */
+    public void sendStatus(CommandSender sender, int count) {
+        long used;
+        long appended;
+        long dropped;
+        int segmentCount;
+        synchronized (this) {
+            used = this.active == null ? 0 : this.active.position();
+            appended = this.appended;
+            dropped = this.dropped;
+            segmentCount = this.segments.size();
+        }
+
+        LuckPermsCompat.msg(sender, "&bUndo journal:");
+        LuckPermsCompat.msg(sender, "&3> &aSegments: &f" + segmentCount + "&7/" + this.maxSegments + " &a(current " + (used * 100 / this.segmentSize) + "% full)");
+        LuckPermsCompat.msg(sender, "&3> &aRecorded: &f" + appended + " &adropped: &f" + dropped + " &7(since startup)");
+
+        List<JournalEntry> recent = select(count, 0);
+        if (recent.isEmpty()) {
+            LuckPermsCompat.msg(sender, "&3> &7Nothing to undo.");
+            return;
+        }
+
+        LuckPermsCompat.msg(sender, "&bMost recent changes:");
+        long now = System.currentTimeMillis();
+        long invocation = -1;
+        for (JournalEntry entry : recent) {
+            if (entry.getInvocation() == invocation) {
+                continue;
+            }
+            invocation = entry.getInvocation();
+            LuckPermsCompat.msg(sender, "&3> &f" + entry.getCommand() + " &7by " + entry.getSender() + ", "
+                    + TimeUnit.MILLISECONDS.toMinutes(now - entry.getTime()) + "m ago"
+                    + (entry.getInverse() == null ? " &c(irreversible)" : ""));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.membership;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.event.EventBus;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.group.GroupCreateEvent;
+import net.luckperms.api.event.group.GroupDeleteEvent;
+import net.luckperms.api.event.node.NodeMutateEvent;
+import net.luckperms.api.event.user.UserLoadEvent;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.model.group.Group;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.matcher.NodeMatcher;
+import net.luckperms.api.node.types.InheritanceNode;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Builds a {@link MembershipIndex} from LuckPerms' storage, and keeps it up to date
+ * using the LuckPerms event bus.
+ */
+public final class LuckPermsMembershipListener implements AutoCloseable {
+
+    /**
+     * Subscribes to changes, and starts building the index in the background
+     *
+     * @param plugin the plugin instance
+     * @param index the index to build and update
+     * @return the listener, or null if the LuckPerms API isn't available
+     */
+    public static LuckPermsMembershipListener subscribe(Plugin plugin, MembershipIndex index) {
+        RegisteredServiceProvider<LuckPerms> provider = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
+            return null;
+        }
+
+        // start recording before subscribing, so no change made while the index builds is missed
+        LuckPermsMembershipListener listener = new LuckPermsMembershipListener(plugin, provider.getProvider(), index);
+        index.startBuild();
+        listener.subscribe();
+        listener.build();
+        return listener;
+    }
+
+    private final Plugin plugin;
+    private final LuckPerms luckPerms;
+    private final MembershipIndex index;
+    private final List<EventSubscription<?>> subscriptions = new ArrayList<>();
+
+    private LuckPermsMembershipListener(Plugin plugin, LuckPerms luckPerms, MembershipIndex index) {
+        this.plugin = plugin;
+        this.luckPerms = luckPerms;
+        this.index = index;
+    }
+
+    private void subscribe() {
+        EventBus bus = this.luckPerms.getEventBus();
+        this.subscriptions.add(bus.subscribe(this.plugin, NodeMutateEvent.class, this::onNodeMutate));
+        this.subscriptions.add(bus.subscribe(this.plugin, UserLoadEvent.class, e -> {
+            User user = e.getUser();
+            this.index.setGroups(user.getUniqueId(), getGroups(user.getNodes()));
+        }));
+        this.subscriptions.add(bus.subscribe(this.plugin, GroupCreateEvent.class, e -> this.index.addGroup(e.getGroup().getName())));
+        this.subscriptions.add(bus.subscribe(this.plugin, GroupDeleteEvent.class, e -> this.index.removeGroup(e.getGroupName())));
+    }
+
+    private void onNodeMutate(NodeMutateEvent e) {
+        // transient nodes aren't saved, so /lp search wouldn't find them either
+        if (!e.isUser() || e.getDataType() != DataType.NORMAL) {
+            return;
+        }
+
+        Set<String> before = getGroups(e.getDataBefore());
+        Set<String> after = getGroups(e.getDataAfter());
+        if (before.equals(after)) {
+            return;
+        }
+
+        Set<String> removed = new HashSet<>(before);
+        removed.removeAll(after);
+        after.removeAll(before);
+        this.index.update(((User) e.getTarget()).getUniqueId(), removed, after);
+    }
+
+    private static Set<String> getGroups(Collection<? extends Node> nodes) {
+        Set<String> groups = new HashSet<>();
+        for (Node node : nodes) {
+            if (node instanceof InheritanceNode) {
+                groups.add(((InheritanceNode) node).getGroupName().toLowerCase(Locale.ROOT));
+            }
+        }
+        return groups;
+    }
+
+    // searches for the members of each group in turn, so that only one group's search
+    // results are held in memory at once
+    private void build() {
+        long start = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        for (Group group : this.luckPerms.getGroupManager().getLoadedGroups()) {
+            names.add(group.getName());
+        }
+
+        Map<String, UuidSet> built = new HashMap<>();
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (String name : names) {
+            future = future.thenCompose(v -> this.luckPerms.getUserManager()
+                    .searchAll(NodeMatcher.key(InheritanceNode.builder(name).build()))
+                    .thenAccept(results -> {
+                        UuidSet members = new UuidSet(results.size());
+                        for (UUID uuid : results.keySet()) {
+                            members.add(uuid);
+                        }
+                        built.put(name.toLowerCase(Locale.ROOT), members);
+                    }));
+        }
+
+        future.whenComplete((v, ex) -> {
+            if (ex != null) {
+                this.index.abortBuild();
+                this.plugin.getLogger().log(Level.WARNING, "Unable to index group members, group listings will search LuckPerms instead", ex);
+                return;
+            }
+
+            this.index.completeBuild(built);
+            long members = 0;
+            for (UuidSet set : built.values()) {
+                members += set.size();
+            }
+            this.plugin.getLogger().info("Indexed " + members + " members of " + built.size() + " groups in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        });
+    }
+
+    @Override
+    public void close() {
+        for (EventSubscription<?> subscription : this.subscriptions) {
+            subscription.close();
+        }
+        this.subscriptions.clear();
+    }
+
+}
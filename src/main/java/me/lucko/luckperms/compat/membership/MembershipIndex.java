@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.membership;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The users who inherit each group, kept in memory so that listing the members of a
+ * group doesn't need a search of LuckPerms' storage.
+ *
+ * <p>The index is built once in the background, and kept up to date from LuckPerms'
+ * events by {@link LuckPermsMembershipListener}. Like /lp search, a user is a member
+ * if they inherit the group in any context, temporarily or not. Until the index has
+ * been built, it reports itself as not ready, and callers should fall back to a search.</p>
+ */
+public class MembershipIndex {
+    private final Server server;
+    private final int pageSize;
+
+    // the members of each group, keyed by lowercase group name
+    private final Map<String, UuidSet> groups = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    // changes made while the index is being built, which are replayed onto it once it
+    // is, as the searches it is built from may have missed them. guarded by this
+    private List<Consumer<Map<String, UuidSet>>> recording = null;
+
+    public MembershipIndex(Server server, int pageSize) {
+        this.server = server;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * Gets the members of a group
+     *
+     * @param group the group name
+     * @return the members, or null if the group isn't indexed
+     */
+    public UuidSet getMembers(String group) {
+        return this.groups.get(group.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Updates the groups a user inherits
+     *
+     * @param user the user
+     * @param removed the groups they no longer inherit, in lowercase
+     * @param added the groups they now inherit, in lowercase
+     */
+    public void update(UUID user, Collection<String> removed, Collection<String> added) {
+        apply(groups -> {
+            for (String group : removed) {
+                UuidSet members = groups.get(group);
+                if (members != null) {
+                    members.remove(user);
+                }
+            }
+            for (String group : added) {
+                groups.computeIfAbsent(group, g -> new UuidSet()).add(user);
+            }
+        });
+    }
+
+    /**
+     * Sets every group a user inherits, e.g. when the user is loaded from storage
+     *
+     * @param user the user
+     * @param inherited the groups they inherit, in lowercase
+     */
+    public void setGroups(UUID user, Collection<String> inherited) {
+        apply(groups -> {
+            for (Map.Entry<String, UuidSet> e : groups.entrySet()) {
+                if (!inherited.contains(e.getKey())) {
+                    e.getValue().remove(user);
+                }
+            }
+            for (String group : inherited) {
+                groups.computeIfAbsent(group, g -> new UuidSet()).add(user);
+            }
+        });
+    }
+
+    public void addGroup(String group) {
+        String name = group.toLowerCase(Locale.ROOT);
+        apply(groups -> groups.computeIfAbsent(name, g -> new UuidSet()));
+    }
+
+    public void removeGroup(String group) {
+        String name = group.toLowerCase(Locale.ROOT);
+        apply(groups -> groups.remove(name));
+    }
+
+    private synchronized void apply(Consumer<Map<String, UuidSet>> change) {
+        change.accept(this.groups);
+        if (this.recording != null) {
+            this.recording.add(change);
+        }
+    }
+
+    /**
+     * Starts recording changes, before the searches the index is built from are made
+     */
+    synchronized void startBuild() {
+        this.recording = new ArrayList<>();
+    }
+
+    /**
+     * Replaces the index with the result of the searches, and replays the changes
+     * made since they started
+     *
+     * @param built the members of each group, keyed by lowercase group name
+     */
+    synchronized void completeBuild(Map<String, UuidSet> built) {
+        List<Consumer<Map<String, UuidSet>>> recording = this.recording;
+        this.recording = null;
+        if (recording != null) {
+            for (Consumer<Map<String, UuidSet>> change : recording) {
+                change.accept(built);
+            }
+        }
+
+        this.groups.clear();
+        this.groups.putAll(built);
+        this.ready = true;
+    }
+
+    synchronized void abortBuild() {
+        this.recording = null;
+    }
+
+    /**
+     * Sends a page of the members of a group
+     *
+     * @param sender the sender to send it to
+     * @param group the group name
+     * @param page the page, starting from 1
+     * @return false if the index can't answer, because it isn't ready or doesn't know the group
+     */
+    public boolean sendMembers(CommandSender sender, String group, int page) {
+        UuidSet members = this.ready ? getMembers(group) : null;
+        if (members == null) {
+            return false;
+        }
+
+        List<UUID> uuids = new ArrayList<>(this.pageSize);
+        members.page((Math.max(1, page) - 1) * this.pageSize, this.pageSize, uuids);
+        int size = members.size();
+        int pages = Math.max(1, (size + this.pageSize - 1) / this.pageSize);
+
+        LuckPermsCompat.msg(sender, "Members of &b" + group + "&a: &b" + size + "&a, page &b" + Math.max(1, page) + "&a of &b" + pages + "&a.");
+        if (uuids.isEmpty()) {
+            LuckPermsCompat.msg(sender, "&7No members on this page.");
+        }
+        for (UUID uuid : uuids) {
+            LuckPermsCompat.msg(sender, "&7- &f" + getName(uuid) + " &8(" + uuid + ")");
+        }
+        return true;
+    }
+
+    // the names of offline players come from the server's user cache
+    private String getName(UUID uuid) {
+        Player player = this.server.getPlayer(uuid);
+        if (player != null) {
+            return player.getName();
+        }
+        OfflinePlayer offline = this.server.getOfflinePlayer(uuid);
+        String name = offline == null ? null : offline.getName();
+        return name == null ? uuid.toString() : name;
+    }
+}
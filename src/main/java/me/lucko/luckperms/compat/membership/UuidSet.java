@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.membership;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A set of uuids, held as pairs of longs in a single open addressed table rather
+ * than as objects. This takes under half the memory of a HashSet of UUIDs, which
+ * matters for groups like default with millions of members.
+ *
+ * <p>The nil uuid marks an empty slot, so is tracked separately. Methods are
+ * synchronized, as sets are read on the main thread and updated from LuckPerms'
+ * event threads.</p>
+ */
+public final class UuidSet {
+    private static final int MIN_CAPACITY = 16;
+
+    // pairs of (most, least) significant bits, with a capacity which is a power of two
+    private long[] table;
+    private int size = 0;
+    private boolean containsNil = false;
+
+    public UuidSet() {
+        this(0);
+    }
+
+    /**
+     * Creates a set with room for a number of uuids
+     *
+     * @param expected the number of uuids expected
+     */
+    public UuidSet(int expected) {
+        this.table = new long[capacityFor(expected) * 2];
+    }
+
+    private static int capacityFor(int size) {
+        // keeps the table at most three quarters full
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long most, long least) {
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    public synchronized int size() {
+        return this.size + (this.containsNil ? 1 : 0);
+    }
+
+    public synchronized boolean contains(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        if (most == 0 && least == 0) {
+            return this.containsNil;
+        }
+        return find(most, least) >= 0;
+    }
+
+    /**
+     * Adds a uuid to the set
+     *
+     * @param uuid the uuid
+     * @return true if it wasn't already in the set
+     */
+    public synchronized boolean add(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        if (most == 0 && least == 0) {
+            boolean added = !this.containsNil;
+            this.containsNil = true;
+            return added;
+        }
+
+        if (find(most, least) >= 0) {
+            return false;
+        }
+        if ((this.size + 1) > (this.table.length / 2) * 3L / 4) {
+            grow();
+        }
+        insert(this.table, most, least);
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes a uuid from the set
+     *
+     * @param uuid the uuid
+     * @return true if it was in the set
+     */
+    public synchronized boolean remove(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        if (most == 0 && least == 0) {
+            boolean removed = this.containsNil;
+            this.containsNil = false;
+            return removed;
+        }
+
+        int slot = find(most, least);
+        if (slot < 0) {
+            return false;
+        }
+
+        // shift back the entries after the removed one which were displaced past it,
+        // so that lookups never stop early at the gap
+        long[] table = this.table;
+        int mask = table.length / 2 - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (table[next * 2] != 0 || table[next * 2 + 1] != 0) {
+            int home = hash(table[next * 2], table[next * 2 + 1]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap * 2] = table[next * 2];
+                table[gap * 2 + 1] = table[next * 2 + 1];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap * 2] = 0;
+        table[gap * 2 + 1] = 0;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Adds a page of the uuids in the set to a list. Pages are in the order the uuids
+     * are stored, which stays the same unless the set is changed.
+     *
+     * @param offset the number of uuids to skip
+     * @param count the maximum number of uuids to add
+     * @param out the list to add to
+     */
+    public synchronized void page(int offset, int count, List<UUID> out) {
+        int skipped = 0;
+        if (this.containsNil) {
+            if (offset == 0 && count > 0) {
+                out.add(new UUID(0, 0));
+                count--;
+            } else {
+                skipped++;
+            }
+        }
+
+        long[] table = this.table;
+        for (int i = 0; i < table.length && count > 0; i += 2) {
+            if (table[i] == 0 && table[i + 1] == 0) {
+                continue;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+            out.add(new UUID(table[i], table[i + 1]));
+            count--;
+        }
+    }
+
+    // returns the slot holding the uuid, or -1
+    private int find(long most, long least) {
+        long[] table = this.table;
+        int mask = table.length / 2 - 1;
+        int slot = hash(most, least) & mask;
+        while (true) {
+            long m = table[slot * 2];
+            long l = table[slot * 2 + 1];
+            if (m == most && l == least) {
+                return slot;
+            }
+            if (m == 0 && l == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void insert(long[] table, long most, long least) {
+        int mask = table.length / 2 - 1;
+        int slot = hash(most, least) & mask;
+        while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot * 2] = most;
+        table[slot * 2 + 1] = least;
+    }
+
+    // doubles the capacity of the table
+    private void grow() {
+        long[] old = this.table;
+        long[] table = new long[old.length * 2];
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                insert(table, old[i], old[i + 1]);
+            }
+        }
+        this.table = table;
+    }
+}
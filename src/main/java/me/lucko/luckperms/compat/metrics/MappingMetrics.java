@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counts and latencies for one mapping.
+ *
+ * <p>The time taken to handle a command is split into three parts: matching
+ * the arguments to a mapping, translating them into LuckPerms operations, and
+ * executing those operations through the backend. Execution happens inside
+ * the mapping's action, so it is subtracted from the translation time.</p>
+ */
+public final class MappingMetrics implements MappingMetricsMXBean {
+
+    // time spent executing on this thread since the current translation began
+    private static final ThreadLocal<long[]> EXECUTION_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * The mapping key, e.g. "manuadd"
+     */
+    @Getter
+    private final String key;
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder usageErrors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LatencyHistogram match = new LatencyHistogram();
+    private final LatencyHistogram translation = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    public MappingMetrics(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Records an invocation which didn't need matching, e.g. of a command with its own label
+     */
+    public void recordInvocation() {
+        this.invocations.increment();
+    }
+
+    /**
+     * Records an invocation, and the time taken to match it
+     *
+     * @param matchNanos the time spent matching the arguments
+     */
+    public void recordInvocation(long matchNanos) {
+        this.invocations.increment();
+        this.match.record(matchNanos);
+    }
+
+    public void recordFailure() {
+        this.failures.increment();
+    }
+
+    public void recordUsageError() {
+        this.usageErrors.increment();
+    }
+
+    /**
+     * Records operations which were skipped, as they wouldn't have changed anything
+     *
+     * @param count the number of operations
+     */
+    public void recordSkipped(int count) {
+        this.skipped.add(count);
+    }
+
+    /**
+     * Marks the start of a translation on the current thread
+     *
+     * @return the start time, to pass to {@link #endTranslation(long)}
+     */
+    public long beginTranslation() {
+        EXECUTION_NANOS.get()[0] = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a translation, less the time spent executing during it
+     *
+     * @param start the value returned by {@link #beginTranslation()}
+     */
+    public void endTranslation(long start) {
+        long elapsed = System.nanoTime() - start;
+        long[] execution = EXECUTION_NANOS.get();
+        this.translation.record(elapsed - execution[0]);
+        execution[0] = 0;
+    }
+
+    /**
+     * Records the time taken to execute an operation or command
+     *
+     * @param nanos the duration
+     */
+    public void recordExecution(long nanos) {
+        this.execution.record(nanos);
+        EXECUTION_NANOS.get()[0] += nanos;
+    }
+
+    @Override
+    public long getInvocations() {
+        return this.invocations.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public long getUsageErrors() {
+        return this.usageErrors.sum();
+    }
+
+    @Override
+    public long getSkipped() {
+        return this.skipped.sum();
+    }
+
+    @Override
+    public LatencySnapshot getMatch() {
+        return this.match.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getTranslation() {
+        return this.translation.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getExecution() {
+        return this.execution.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        this.invocations.reset();
+        this.failures.reset();
+        this.usageErrors.reset();
+        this.skipped.reset();
+        this.match.reset();
+        this.translation.reset();
+        this.execution.reset();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.metrics;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import org.bukkit.command.CommandSender;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds the {@link MappingMetrics} of every mapping, keyed by mapping name.
+ *
+ * <p>Metrics are kept by name rather than by mapping instance, so they
+ * survive the mappings being rebuilt by /lpc reload.</p>
+ */
+public final class MetricsRegistry {
+    private static final String JMX_DOMAIN = "me.lucko.luckperms.compat";
+
+    private final Map<String, MappingMetrics> metrics = new ConcurrentHashMap<>();
+
+    // the server metrics are registered with, or null if they aren't exposed over JMX
+    private MBeanServer mBeanServer = null;
+    private Logger logger = null;
+
+    /**
+     * Gets the metrics of a mapping, creating them if necessary
+     *
+     * @param key the mapping key, e.g. "manuadd"
+     * @return the metrics
+     */
+    public MappingMetrics get(String key) {
+        MappingMetrics metrics = this.metrics.get(key);
+        if (metrics == null) {
+            metrics = this.metrics.computeIfAbsent(key, this::create);
+        }
+        return metrics;
+    }
+
+    private synchronized MappingMetrics create(String key) {
+        MappingMetrics metrics = new MappingMetrics(key);
+        if (this.mBeanServer != null) {
+            register(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Exposes every current and future mapping's metrics as an MBean
+     *
+     * @param logger the logger to report registration failures to
+     */
+    public synchronized void registerMBeans(Logger logger) {
+        this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        this.logger = logger;
+        for (MappingMetrics metrics : this.metrics.values()) {
+            register(metrics);
+        }
+    }
+
+    /**
+     * Removes the MBeans added by {@link #registerMBeans(Logger)}
+     */
+    public synchronized void unregisterMBeans() {
+        if (this.mBeanServer == null) {
+            return;
+        }
+
+        for (MappingMetrics metrics : this.metrics.values()) {
+            try {
+                ObjectName name = objectName(metrics.getKey());
+                if (this.mBeanServer.isRegistered(name)) {
+                    this.mBeanServer.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                this.logger.log(Level.WARNING, "Unable to unregister the metrics MBean for " + metrics.getKey(), e);
+            }
+        }
+        this.mBeanServer = null;
+    }
+
+    private void register(MappingMetrics metrics) {
+        try {
+            ObjectName name = objectName(metrics.getKey());
+            if (!this.mBeanServer.isRegistered(name)) {
+                this.mBeanServer.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            this.logger.log(Level.WARNING, "Unable to register the metrics MBean for " + metrics.getKey(), e);
+        }
+    }
+
+    private static ObjectName objectName(String key) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Mapping,name=" + ObjectName.quote(key));
+    }
+
+    /**
+     * Resets the metrics of every mapping
+     */
+    public void reset() {
+        for (MappingMetrics metrics : this.metrics.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Sends the metrics of the most invoked mappings to a sender
+     *
+     * @param sender the sender
+     * @param limit the number of mappings to show
+     */
+    public void sendStats(CommandSender sender, int limit) {
+        List<MappingMetrics> top = new ArrayList<>(this.metrics.values());
+        top.removeIf(m -> m.getInvocations() == 0);
+        top.sort(Comparator.comparingLong(MappingMetrics::getInvocations).reversed());
+
+        if (top.isEmpty()) {
+            LuckPermsCompat.msg(sender, "&bMapping stats: &7nothing recorded yet.");
+            return;
+        }
+
+        LuckPermsCompat.msg(sender, "&bMapping stats: &7(top " + Math.min(limit, top.size()) + " of " + top.size() + " by invocations, p50/p99)");
+        for (MappingMetrics metrics : top.subList(0, Math.min(limit, top.size()))) {
+            LuckPermsCompat.msg(sender, "&3> &a" + metrics.getKey() + " &7- &f" + metrics.getInvocations() + " &7calls, &f"
+                    + metrics.getFailures() + " &7failed, &f" + metrics.getUsageErrors() + " &7usage errors, &f"
+                    + metrics.getSkipped() + " &7no-ops skipped");
+            LuckPermsCompat.msg(sender, "&7   match &f" + format(metrics.getMatch()) + "&7, translate &f" + format(metrics.getTranslation())
+                    + "&7, execute &f" + format(metrics.getExecution()));
+        }
+    }
+
+    private static String format(LatencySnapshot snapshot) {
+        return formatNanos(snapshot.getP50()) + "/" + formatNanos(snapshot.getP99());
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format("%.1f\u00b5s", nanos / 1_000.0);
+        }
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.names;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Maps the names of players to their unique ids, so that remapped commands can pass
+ * LuckPerms a uuid instead of a name, which it would otherwise look up in its storage.
+ *
+ * <p>The cache is filled from the server's usercache.json when the plugin enables, and
+ * kept up to date as players join and as LuckPerms looks up names. It holds at most a
+ * fixed number of names, dropping the least recently used.</p>
+ */
+public class NameCache implements Listener {
+
+    // the format of the expiry dates in usercache.json
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss Z";
+
+    private final int maxSize;
+
+    // keyed by lowercase name, in access order. guarded by itself
+    private final LinkedHashMap<String, UUID> names;
+
+    public NameCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.names = new LinkedHashMap<String, UUID>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UUID> eldest) {
+                return size() > NameCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Starts tracking players as they join, and loads the server's user cache in the background
+     *
+     * @param plugin the plugin to register the listener with
+     * @param userCache the path of usercache.json
+     */
+    public void start(Plugin plugin, Path userCache) {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            put(player.getName(), player.getUniqueId());
+        }
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (!Files.isRegularFile(userCache)) {
+                return;
+            }
+            try {
+                long start = System.nanoTime();
+                int loaded = load(userCache);
+                plugin.getLogger().info("Loaded " + loaded + " player names from " + userCache.getFileName() + " in " +
+                        (System.nanoTime() - start) / 1000000 + "ms");
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().warning("Unable to read " + userCache + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Gets the unique id of a player
+     *
+     * @param name the player's name
+     * @return the unique id, or null if the name isn't cached
+     */
+    public UUID get(String name) {
+        synchronized (this.names) {
+            return this.names.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public void put(String name, UUID uuid) {
+        synchronized (this.names) {
+            this.names.put(name.toLowerCase(Locale.ROOT), uuid);
+        }
+    }
+
+    public int size() {
+        synchronized (this.names) {
+            return this.names.size();
+        }
+    }
+
+    /**
+     * Replaces the names of players in a command argument with their unique ids, where
+     * they are cached. Arguments can be a comma separated list of names.
+     *
+     * @param argument the argument
+     * @return the argument with names replaced, or the argument itself if none were
+     */
+    public String resolve(String argument) {
+        if (argument.indexOf(',') == -1) {
+            UUID uuid = isName(argument) ? get(argument) : null;
+            return uuid == null ? argument : uuid.toString();
+        }
+
+        StringBuilder sb = null;
+        int start = 0;
+        while (start <= argument.length()) {
+            int end = argument.indexOf(',', start);
+            if (end == -1) {
+                end = argument.length();
+            }
+            String name = argument.substring(start, end);
+            UUID uuid = isName(name) ? get(name) : null;
+            if (uuid != null && sb == null) {
+                sb = new StringBuilder(argument.length() + 32).append(argument, 0, start);
+            }
+            if (sb != null) {
+                sb.append(uuid == null ? name : uuid.toString());
+                if (end < argument.length()) {
+                    sb.append(',');
+                }
+            }
+            start = end + 1;
+        }
+        return sb == null ? argument : sb.toString();
+    }
+
+    // anything which can't be a minecraft name, such as a uuid, is passed through as it is
+    private static boolean isName(String s) {
+        return !s.isEmpty() && s.length() <= 16;
+    }
+
+    /**
+     * Loads the names in a usercache.json file which haven't expired. Names which are
+     * already cached, e.g. of players who joined since the plugin enabled, are kept.
+     *
+     * <p>The file is parsed as a stream, rather than read into a tree.</p>
+     *
+     * @param file the file
+     * @return the number of names loaded
+     * @throws IOException if the file can't be read
+     */
+    public int load(Path file) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<UUID> uuids = new ArrayList<>();
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT, Locale.ROOT);
+        long now = System.currentTimeMillis();
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                String uuid = null;
+                String expires = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    if (reader.peek() != JsonToken.STRING) {
+                        reader.skipValue();
+                    } else if (key.equals("name")) {
+                        name = reader.nextString();
+                    } else if (key.equals("uuid")) {
+                        uuid = reader.nextString();
+                    } else if (key.equals("expiresOn")) {
+                        expires = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (name == null || uuid == null || isExpired(format, expires, now)) {
+                    continue;
+                }
+                try {
+                    uuids.add(UUID.fromString(uuid));
+                    names.add(name);
+                } catch (IllegalArgumentException e) {
+                    // not written by the server
+                }
+            }
+            reader.endArray();
+        }
+
+        // the server writes the most recently used names first, so they are added last,
+        // to be the last evicted, and to win if a name has changed hands
+        int loaded = 0;
+        synchronized (this.names) {
+            Map<String, UUID> fromFile = new LinkedHashMap<>();
+            for (int i = names.size() - 1; i >= 0; i--) {
+                fromFile.put(names.get(i).toLowerCase(Locale.ROOT), uuids.get(i));
+            }
+            for (Map.Entry<String, UUID> e : fromFile.entrySet()) {
+                if (this.names.putIfAbsent(e.getKey(), e.getValue()) == null) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // names which have expired may since have been taken by another player
+    private static boolean isExpired(SimpleDateFormat format, String expires, long now) {
+        if (expires == null) {
+            return false;
+        }
+        try {
+            return format.parse(expires).getTime() < now;
+        } catch (ParseException e) {
+            return true;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        put(e.getPlayer().getName(), e.getPlayer().getUniqueId());
+    }
+
+}
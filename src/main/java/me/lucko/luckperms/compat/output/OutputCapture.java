@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.output;
+
+import lombok.Getter;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.backend.Operation;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the messages sent to a sender while a batch of operations is applied,
+ * so they can be summarised instead of being sent line by line.
+ *
+ * <p>Messages are collected through proxies of the real sender. Like {@link QuietSender}, the
+ * proxies are neither a player nor the console, so LuckPerms replies to dispatched commands
+ * through the proxy rather than looking the real sender up. Anything other than a message is
+ * passed through to the real sender.</p>
+ *
+ * <p>Operations dispatched as commands each get their own proxy, see {@link #expect(Operation)}.
+ * LuckPerms runs commands asynchronously, so the capture is only ready once every one of them
+ * has replied, as well as the backend having finished.</p>
+ */
+public final class OutputCapture {
+
+    /**
+     * Gets the capture a sender was created by
+     *
+     * @param sender the sender
+     * @return the capture, or null if the sender isn't capturing
+     */
+    public static OutputCapture of(CommandSender sender) {
+        if (!Proxy.isProxyClass(sender.getClass())) {
+            return null;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(sender);
+        return handler instanceof Section ? ((Section) handler).getCapture() : null;
+    }
+
+    /**
+     * Gets whether a line reports an error. LuckPerms, and this plugin, show errors in red.
+     *
+     * @param line the line, with section sign colour codes
+     * @return if the line is an error
+     */
+    public static boolean isError(String line) {
+        int start = line.startsWith(LuckPermsCompat.PREFIX) ? LuckPermsCompat.PREFIX.length() : 0;
+        for (int i = line.indexOf(ChatColor.COLOR_CHAR, start); i != -1 && i + 1 < line.length(); i = line.indexOf(ChatColor.COLOR_CHAR, i + 2)) {
+            char code = Character.toLowerCase(line.charAt(i + 1));
+            if (code == 'c' || code == '4') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The real sender
+     */
+    @Getter
+    private final CommandSender delegate;
+
+    /**
+     * The number of operations being applied
+     */
+    @Getter
+    private final int operations;
+
+    // the proxy given to the backend, which collects anything not sent to an operation's proxy
+    private final Section root;
+
+    // the sections, in the order they were created. guarded by this
+    private final List<Section> sections = new ArrayList<>();
+
+    // called once, when the capture is ready to be summarised
+    private final Consumer<OutputCapture> listener;
+
+    // guarded by this
+    private int awaiting = 0;
+    private boolean complete = false;
+    private boolean notified = false;
+    private boolean released = false;
+
+    OutputCapture(CommandSender delegate, int operations, Consumer<OutputCapture> listener) {
+        this.delegate = delegate;
+        this.operations = operations;
+        this.listener = listener;
+        this.root = new Section(null);
+        this.sections.add(this.root);
+    }
+
+    /**
+     * Gets the sender to pass to the backend
+     *
+     * @return the capturing sender
+     */
+    public CommandSender getSender() {
+        return this.root.getProxy();
+    }
+
+    /**
+     * Creates a sender for an operation which is about to be dispatched. The capture
+     * isn't ready until the sender has received at least one message.
+     *
+     * @param operation the operation
+     * @return the capturing sender for the operation
+     */
+    public CommandSender expect(Operation operation) {
+        Section section = new Section(operation.toString());
+        synchronized (this) {
+            this.sections.add(section);
+            this.awaiting++;
+        }
+        return section.getProxy();
+    }
+
+    /**
+     * Marks the backend as finished with the operations
+     */
+    void complete() {
+        synchronized (this) {
+            this.complete = true;
+        }
+        notifyIfReady();
+    }
+
+    /**
+     * Stops capturing. Any messages received afterwards are sent straight to the real sender.
+     *
+     * @return false if the capture had already been released
+     */
+    synchronized boolean release() {
+        if (this.released) {
+            return false;
+        }
+        this.released = true;
+        return true;
+    }
+
+    /**
+     * Gets whether any operation was dispatched with its own sender
+     *
+     * @return if the capture is waiting on replies to commands
+     */
+    synchronized boolean hasExpectations() {
+        return this.sections.size() > 1;
+    }
+
+    /**
+     * Gets a snapshot of the sections captured so far
+     *
+     * @return the sections
+     */
+    synchronized List<Section> getSections() {
+        return new ArrayList<>(this.sections);
+    }
+
+    private void notifyIfReady() {
+        synchronized (this) {
+            if (this.notified || !this.complete || this.awaiting != 0) {
+                return;
+            }
+            this.notified = true;
+        }
+        this.listener.accept(this);
+    }
+
+    // returns false if the capture has been released, in which case the line should be sent on
+    private boolean receive(Section section, String line) {
+        boolean answered;
+        synchronized (this) {
+            if (this.released) {
+                return false;
+            }
+            answered = section != this.root && section.lines.isEmpty();
+            section.lines.add(line);
+            if (answered) {
+                this.awaiting--;
+            }
+        }
+
+        if (answered) {
+            notifyIfReady();
+        }
+        return true;
+    }
+
+    /**
+     * The messages received by one of the capturing senders
+     */
+    final class Section implements InvocationHandler {
+
+        /**
+         * The operation the messages are for, or null for the root sender
+         */
+        @Getter
+        private final String title;
+
+        @Getter
+        private final CommandSender proxy;
+
+        // guarded by the capture
+        private final List<String> lines = new ArrayList<>();
+
+        private final CommandSender.Spigot spigot = new CapturingSpigot(this);
+
+        Section(String title) {
+            this.title = title;
+            this.proxy = (CommandSender) Proxy.newProxyInstance(OutputCapture.class.getClassLoader(), new Class<?>[]{CommandSender.class}, this);
+        }
+
+        OutputCapture getCapture() {
+            return OutputCapture.this;
+        }
+
+        List<String> getLines() {
+            synchronized (OutputCapture.this) {
+                return new ArrayList<>(this.lines);
+            }
+        }
+
+        void receiveOrSend(String line) {
+            if (!receive(this, line)) {
+                OutputCapture.this.delegate.sendMessage(line);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "OutputCapture(" + OutputCapture.this.delegate.getName() + ")";
+                    default:
+                        break;
+                }
+            }
+
+            if (method.getName().equals("sendMessage") && args != null && args.length == 1) {
+                if (args[0] instanceof String) {
+                    receiveOrSend((String) args[0]);
+                    return null;
+                }
+                if (args[0] instanceof String[]) {
+                    for (String line : (String[]) args[0]) {
+                        receiveOrSend(line);
+                    }
+                    return null;
+                }
+            }
+
+            if (method.getName().equals("spigot") && method.getParameterCount() == 0) {
+                return this.spigot;
+            }
+
+            try {
+                return method.invoke(OutputCapture.this.delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Captures chat components sent through the proxy, rather than letting them reach the real sender
+     */
+    private static final class CapturingSpigot extends CommandSender.Spigot {
+        private final Section section;
+
+        CapturingSpigot(Section section) {
+            this.section = section;
+        }
+
+        @Override
+        public void sendMessage(BaseComponent component) {
+            this.section.receiveOrSend(component.toLegacyText());
+        }
+
+        @Override
+        public void sendMessage(BaseComponent... components) {
+            this.section.receiveOrSend(BaseComponent.toLegacyText(components));
+        }
+    }
+}
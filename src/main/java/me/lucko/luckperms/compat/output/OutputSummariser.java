@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.output;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Replaces the output of mappings which fan out into many operations with a short summary,
+ * e.g. "12 succeeded, 1 failed", followed by the first few errors.
+ *
+ * <p>The full output of the last summarised command is kept for each sender,
+ * and can be shown with /lpc output.</p>
+ */
+public class OutputSummariser {
+
+    // the number of senders whose last output is kept
+    private static final int HISTORY_SIZE = 32;
+
+    private final LuckPermsCompat plugin;
+
+    // the number of operations a batch needs to have its output summarised, or 0 to never summarise
+    private final int threshold;
+
+    // the number of errors listed in the summary
+    private final int errorsShown;
+
+    // how long to wait for LuckPerms to reply to dispatched commands
+    private final long timeoutTicks;
+
+    // the last summarised output of each sender, keyed by lowercase name. guarded by itself
+    private final Map<String, OutputCapture> history = new LinkedHashMap<String, OutputCapture>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OutputCapture> eldest) {
+            return size() > HISTORY_SIZE;
+        }
+    };
+
+    /**
+     * Creates an output summariser
+     *
+     * @param plugin the plugin
+     * @param threshold the number of operations a batch needs to be summarised, or 0 to disable
+     * @param errorsShown the number of errors listed in a summary
+     * @param timeoutMillis how long to wait for replies to dispatched commands
+     */
+    public OutputSummariser(LuckPermsCompat plugin, int threshold, int errorsShown, long timeoutMillis) {
+        this.plugin = plugin;
+        this.threshold = Math.max(0, threshold);
+        this.errorsShown = Math.max(0, errorsShown);
+        this.timeoutTicks = Math.max(1, (timeoutMillis + 49) / 50);
+    }
+
+    /**
+     * Starts capturing the output of a batch, if it is large enough to be summarised
+     *
+     * @param sender the real sender
+     * @param operations the number of operations in the batch
+     * @return the capture, or null if the output should be sent as normal
+     */
+    public OutputCapture capture(CommandSender sender, int operations) {
+        if (this.threshold == 0 || operations < this.threshold) {
+            return null;
+        }
+        return new OutputCapture(sender, operations, this::ready);
+    }
+
+    /**
+     * Summarises a capture once the backend has finished with it, and every dispatched command
+     * has replied. If LuckPerms doesn't reply in time, the summary is sent anyway.
+     *
+     * @param capture the capture
+     * @param future the result of the batch
+     */
+    public void finish(OutputCapture capture, CompletableFuture<Boolean> future) {
+        if (capture.hasExpectations()) {
+            schedule(() -> summarise(capture), this.timeoutTicks);
+        }
+        future.whenComplete((result, ex) -> capture.complete());
+    }
+
+    private void ready(OutputCapture capture) {
+        if (capture.hasExpectations()) {
+            // lines for a single command are sent together, so give the last command a tick to finish
+            schedule(() -> summarise(capture), 1);
+        } else {
+            summarise(capture);
+        }
+    }
+
+    private void schedule(Runnable task, long ticks) {
+        if (this.plugin.isEnabled()) {
+            this.plugin.getServer().getScheduler().runTaskLater(this.plugin, task, ticks);
+        } else {
+            task.run();
+        }
+    }
+
+    private void summarise(OutputCapture capture) {
+        if (!capture.release()) {
+            return;
+        }
+
+        int succeeded = 0;
+        int failed = 0;
+        int unanswered = 0;
+        int lines = 0;
+        int rootErrors = 0;
+        int operations = 0;
+        List<String> errors = new ArrayList<>();
+
+        for (OutputCapture.Section section : capture.getSections()) {
+            List<String> sectionLines = section.getLines();
+            lines += sectionLines.size();
+
+            if (section.getTitle() == null) {
+                // output not tied to an operation, e.g. from the api backend, has one error line per failure
+                for (String line : sectionLines) {
+                    if (OutputCapture.isError(line)) {
+                        rootErrors++;
+                        errors.add(strip(line));
+                    }
+                }
+                continue;
+            }
+
+            operations++;
+            String error = sectionLines.stream().filter(OutputCapture::isError).findFirst().orElse(null);
+            if (error != null) {
+                failed++;
+                errors.add(section.getTitle() + ": " + strip(error));
+            } else if (sectionLines.isEmpty()) {
+                unanswered++;
+            } else {
+                succeeded++;
+            }
+        }
+        failed += rootErrors;
+        succeeded += Math.max(0, capture.getOperations() - operations - rootErrors);
+
+        CommandSender sender = capture.getDelegate();
+        LuckPermsCompat.msg(sender, "&b" + succeeded + "&a succeeded, " + (failed == 0 ? "&b0&a" : "&c" + failed + "&a") + " failed" +
+                (unanswered == 0 ? "" : ", &e" + unanswered + "&a without a reply") + ".");
+        for (int i = 0; i < errors.size() && i < this.errorsShown; i++) {
+            LuckPermsCompat.msg(sender, "&c- &7" + errors.get(i));
+        }
+        if (errors.size() > this.errorsShown) {
+            LuckPermsCompat.msg(sender, "&7... and " + (errors.size() - this.errorsShown) + " more.");
+        }
+        if (lines != 0) {
+            LuckPermsCompat.msg(sender, "&7Use &b/lpc output&7 to see the full output.");
+            synchronized (this.history) {
+                this.history.put(sender.getName().toLowerCase(Locale.ROOT), capture);
+            }
+        }
+    }
+
+    /**
+     * Sends the full output of the last summarised command to a sender
+     *
+     * @param sender the sender
+     */
+    public void sendOutput(CommandSender sender) {
+        OutputCapture capture;
+        synchronized (this.history) {
+            capture = this.history.get(sender.getName().toLowerCase(Locale.ROOT));
+        }
+        if (capture == null) {
+            LuckPermsCompat.msg(sender, "There is no summarised output to show.");
+            return;
+        }
+
+        for (OutputCapture.Section section : capture.getSections()) {
+            List<String> lines = section.getLines();
+            if (section.getTitle() != null) {
+                LuckPermsCompat.msg(sender, "&3> &7" + section.getTitle());
+            }
+            if (!lines.isEmpty()) {
+                sender.sendMessage(lines.toArray(new String[0]));
+            }
+        }
+    }
+
+    // removes the colours, and this plugin's prefix, from an error line
+    private static String strip(String line) {
+        if (line.startsWith(LuckPermsCompat.PREFIX)) {
+            line = line.substring(LuckPermsCompat.PREFIX.length());
+        }
+        return ChatColor.stripColor(line);
+    }
+}
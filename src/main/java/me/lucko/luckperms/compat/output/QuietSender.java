@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.output;
+
+import me.lucko.luckperms.compat.LuckPermsCompat;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A proxy of a sender which drops the messages sent to it, only keeping count of errors.
+ *
+ * <p>Used by long running jobs, e.g. imports, which report their progress separately.</p>
+ *
+ * <p>The proxy is deliberately neither a player nor the console, even if the real sender is.
+ * LuckPerms looks those up and messages them directly, so the replies to dispatched commands
+ * would reach the real sender. Other senders are messaged through the sender itself.</p>
+ */
+public final class QuietSender implements InvocationHandler {
+
+    /**
+     * Creates a quiet sender
+     *
+     * @param delegate the real sender
+     * @param errorsKept the number of error messages to keep
+     * @return the quiet sender
+     */
+    public static QuietSender of(CommandSender delegate, int errorsKept) {
+        return new QuietSender(delegate, errorsKept);
+    }
+
+    private final CommandSender delegate;
+    private final CommandSender proxy;
+    private final int errorsKept;
+
+    // guarded by this
+    private final List<String> errors = new ArrayList<>();
+    private long errorCount = 0;
+
+    private final CommandSender.Spigot spigot = new QuietSpigot();
+
+    private QuietSender(CommandSender delegate, int errorsKept) {
+        this.delegate = delegate;
+        this.errorsKept = errorsKept;
+        this.proxy = (CommandSender) Proxy.newProxyInstance(QuietSender.class.getClassLoader(), new Class<?>[]{CommandSender.class}, this);
+    }
+
+    /**
+     * Gets the sender to pass to the backend
+     *
+     * @return the quiet sender
+     */
+    public CommandSender getSender() {
+        return this.proxy;
+    }
+
+    /**
+     * Gets the number of error messages received
+     *
+     * @return the error count
+     */
+    public synchronized long getErrorCount() {
+        return this.errorCount;
+    }
+
+    /**
+     * Gets the first error messages received, without colours
+     *
+     * @return the errors
+     */
+    public synchronized List<String> getErrors() {
+        return new ArrayList<>(this.errors);
+    }
+
+    private void receive(String line) {
+        if (!OutputCapture.isError(line)) {
+            return;
+        }
+
+        synchronized (this) {
+            this.errorCount++;
+            if (this.errors.size() < this.errorsKept) {
+                if (line.startsWith(LuckPermsCompat.PREFIX)) {
+                    line = line.substring(LuckPermsCompat.PREFIX.length());
+                }
+                this.errors.add(ChatColor.stripColor(line));
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "QuietSender(" + this.delegate.getName() + ")";
+                default:
+                    break;
+            }
+        }
+
+        if (method.getName().equals("sendMessage") && args != null && args.length == 1) {
+            if (args[0] instanceof String) {
+                receive((String) args[0]);
+                return null;
+            }
+            if (args[0] instanceof String[]) {
+                for (String line : (String[]) args[0]) {
+                    receive(line);
+                }
+                return null;
+            }
+        }
+
+        if (method.getName().equals("spigot") && method.getParameterCount() == 0) {
+            return this.spigot;
+        }
+
+        try {
+            return method.invoke(this.delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class QuietSpigot extends CommandSender.Spigot {
+
+        @Override
+        public void sendMessage(BaseComponent component) {
+            receive(component.toLegacyText());
+        }
+
+        @Override
+        public void sendMessage(BaseComponent... components) {
+            receive(BaseComponent.toLegacyText(components));
+        }
+    }
+}
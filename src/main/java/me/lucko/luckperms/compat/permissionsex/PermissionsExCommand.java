@@ -22,85 +22,104 @@
 
 package me.lucko.luckperms.compat.permissionsex;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 import lombok.Setter;
 
-import me.lucko.luckperms.compat.LuckPermsCompat;
-import me.lucko.luckperms.compat.MappingFunction;
+import me.lucko.luckperms.compat.MappingAction;
+import me.lucko.luckperms.compat.MappingContext;
+import me.lucko.luckperms.compat.Parameters;
 
 import org.bukkit.command.CommandSender;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * Abstract command instance for remapped commands
  */
-@RequiredArgsConstructor(staticName = "of")
 public class PermissionsExCommand {
 
+    public static PermissionsExCommand of(List<String> structure, MappingAction function) {
+        return of(structure, function, false);
+    }
+
     /**
-     * Plugin instance. This is set when the command is registered with the server
+     * Creates a command whose mapping does nothing but apply operations,
+     * see {@link MappingContext#isOperationsOnly()}
      */
+    public static PermissionsExCommand ofOperations(List<String> structure, MappingAction function) {
+        return of(structure, function, true);
+    }
+
+    private static PermissionsExCommand of(List<String> structure, MappingAction function, boolean operationsOnly) {
+        List<String> names = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < structure.size(); i++) {
+            String part = structure.get(i);
+            if (isChangeable(part)) {
+                names.add(stripIndicators(part));
+                positions.add(i);
+            }
+        }
+
+        Parameters parameters = Parameters.of(names, positions.stream().mapToInt(Integer::intValue).toArray());
+        return new PermissionsExCommand(structure, parameters, function, operationsOnly);
+    }
+
+    /**
+     * The mapping context. This is set when the command is registered with the server
+     */
+    @Getter
     @Setter
-    private LuckPermsCompat plugin = null;
+    private volatile MappingContext context = null;
 
     /**
      * The commands structure
      */
+    @Getter
     private final List<String> structure;
 
     /**
-     * The function responsible for remapping and executing the LP command equivalent
+     * The placeholders in the structure, resolved to slots
      */
-    private final MappingFunction function;
-
-    public boolean tryPerform(CommandSender sender, List<String> args) {
-        Map<String, String> values = new HashMap<>();
-
-        for (int i = 0; i < structure.size(); i++) {
-            String part = structure.get(i);
-            boolean present = i < args.size();
-
-            if (!isChangeable(part)) {
-                // it must match
-                if (!present) {
-                    return false;
-                }
-
-                String value = args.get(i);
-                if (!part.equalsIgnoreCase(value)) {
-                    return false;
-                }
-
-                continue;
-            }
+    @Getter
+    private final Parameters parameters;
 
-            // Pull the value
-            String val = null;
-            if (!isOptional(part) && !present) {
-                return false;
-            }
-            if (present) {
-                val = args.get(i);
-            }
+    /**
+     * The function responsible for remapping and executing the LP command equivalent
+     */
+    private final MappingAction function;
 
-            if (val != null) {
-                values.put(stripIndicators(part), val);
-            }
-        }
+    /**
+     * If the function does nothing but apply operations
+     */
+    @Getter
+    private final boolean operationsOnly;
+
+    private PermissionsExCommand(List<String> structure, Parameters parameters, MappingAction function, boolean operationsOnly) {
+        this.structure = structure;
+        this.parameters = parameters;
+        this.function = function;
+        this.operationsOnly = operationsOnly;
+    }
 
-        function.perform(plugin, sender, values);
-        return true;
+    /**
+     * Performs the command. The arguments are expected to have been matched
+     * against the structure already, see {@link PermissionsExDispatcher}.
+     *
+     * @param sender the command sender
+     * @param args the arguments passed to /pex
+     */
+    public void perform(CommandSender sender, String[] args) {
+        context.perform(function, sender, parameters.view(args));
     }
 
     public String getUsage() {
         return structure.stream().collect(Collectors.joining(" "));
     }
 
-    private static boolean isOptional(String arg) {
+    static boolean isOptional(String arg) {
         return arg.startsWith("[") && arg.endsWith("]");
     }
 
@@ -108,11 +127,11 @@ public class PermissionsExCommand {
         return arg.startsWith("<") && arg.endsWith(">");
     }
 
-    private static boolean isChangeable(String arg) {
+    static boolean isChangeable(String arg) {
         return isOptional(arg) || isPositional(arg);
     }
 
-    private static String stripIndicators(String arg) {
+    static String stripIndicators(String arg) {
         if (isChangeable(arg)) {
             return arg.substring(1, arg.length() - 1);
         } else {
@@ -22,43 +22,69 @@
 
 package me.lucko.luckperms.compat.permissionsex;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.MappingContext;
+import me.lucko.luckperms.compat.RemappedCommand;
+import me.lucko.luckperms.compat.metrics.MappingMetrics;
 
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @RequiredArgsConstructor
-public class PermissionsExCommandExecutor implements CommandExecutor {
+public class PermissionsExCommandExecutor implements RemappedCommand, TabCompleter {
+    @Getter
     private final LuckPermsCompat plugin;
-    private final List<PermissionsExCommand> commands;
+    @Getter
+    private final PermissionsExDispatcher dispatcher;
 
     @Override
-    public boolean onCommand(CommandSender sender, Command command, String s, String[] a) {
+    public MappingContext resolve(String[] args) {
+        PermissionsExCommand cmd = args.length == 0 ? null : dispatcher.match(args);
+        return cmd == null ? null : cmd.getContext();
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String s, String[] a) {
         if (!sender.hasPermission("luckpermscompat.use")) {
             LuckPermsCompat.msg(sender, "&cNo permission.");
-            return true;
+            return false;
         }
 
-        List<String> args = new ArrayList<>(Arrays.asList(a));
-        if (args.isEmpty()) {
-            return plugin.onCommand(sender, command, s, a);
+        long start = System.nanoTime();
+        PermissionsExCommand cmd = a.length == 0 ? null : dispatcher.match(a);
+        long matchNanos = System.nanoTime() - start;
+
+        // invocations which don't match anything are recorded against /pex itself
+        if (cmd == null) {
+            MappingMetrics metrics = plugin.getMetrics().get("pex");
+            metrics.recordInvocation(matchNanos);
+            metrics.recordUsageError();
+            // only the pex usage, so /luckpermscompat:pex can't reach the /lpc subcommands
+            plugin.sendUsage(sender, "PermissionsEx");
+            return false;
         }
 
-        boolean found = false;
-        for (PermissionsExCommand cmd : commands) {
-            if (cmd.tryPerform(sender, args)) {
-                found = true;
-                break;
-            }
+        cmd.getContext().getMetrics().recordInvocation(matchNanos);
+        cmd.perform(sender, a);
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (!sender.hasPermission("luckpermscompat.use")) {
+            return Collections.emptyList();
         }
 
-        return found || plugin.onCommand(sender, command, s, a);
+        List<String> completions = new ArrayList<>();
+        dispatcher.complete(args, plugin.getCompletionIndex(), completions);
+        return completions;
     }
 }
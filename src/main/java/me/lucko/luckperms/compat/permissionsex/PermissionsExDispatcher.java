@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.compat.permissionsex;
+
+import me.lucko.luckperms.compat.completion.CompletionIndex;
+import me.lucko.luckperms.compat.completion.PrefixIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Resolves /pex invocations to a single {@link PermissionsExCommand}.
+ *
+ * <p>The command structures are compiled into a token trie, which is then
+ * determinised so that an invocation is resolved in a single pass over its
+ * arguments. Literal tokens are matched case-insensitively.</p>
+ *
+ * <p>As with the previous linear matching, trailing arguments which are not
+ * part of a structure are ignored. If more than one structure could match,
+ * the longest one wins.</p>
+ */
+public final class PermissionsExDispatcher {
+
+    /**
+     * Compiles a dispatcher for the given commands.
+     *
+     * @param commands the commands
+     * @return a dispatcher
+     * @throws IllegalStateException if two commands would match the same input
+     */
+    public static PermissionsExDispatcher compile(List<PermissionsExCommand> commands) {
+        TrieNode root = new TrieNode();
+        for (PermissionsExCommand command : commands) {
+            root.insert(command);
+        }
+
+        Map<Set<TrieNode>, State> states = new HashMap<>();
+        return new PermissionsExDispatcher(determinise(Collections.singleton(root), states), states.size());
+    }
+
+    private final State root;
+    private final int stateCount;
+
+    private PermissionsExDispatcher(State root, int stateCount) {
+        this.root = root;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * Finds the command matching the given arguments.
+     *
+     * @param args the arguments passed to /pex
+     * @return the matching command, or null if nothing matched
+     */
+    public PermissionsExCommand match(String[] args) {
+        State state = this.root;
+        PermissionsExCommand match = state.terminal;
+
+        for (String arg : args) {
+            State next = state.literals.get(arg);
+            if (next == null) {
+                next = state.fallback;
+            }
+            if (next == null) {
+                break;
+            }
+
+            state = next;
+            if (state.terminal != null) {
+                match = state.terminal;
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Adds the possible completions of the last argument to a list. Literal
+     * tokens are completed from the structures, and placeholders from the
+     * given names.
+     *
+     * @param args the arguments passed to /pex, the last one being completed
+     * @param names the names to complete placeholders with
+     * @param out the list to add to
+     */
+    public void complete(String[] args, CompletionIndex names, List<String> out) {
+        State state = this.root;
+        for (int i = 0; i < args.length - 1; i++) {
+            State next = state.literals.get(args[i]);
+            if (next == null) {
+                next = state.fallback;
+            }
+            if (next == null) {
+                return;
+            }
+            state = next;
+        }
+
+        String last = args.length == 0 ? "" : args[args.length - 1];
+        state.literalIndex.complete(last, out);
+        for (String placeholder : state.placeholders) {
+            names.complete(placeholder, last, out);
+        }
+    }
+
+    /**
+     * Gets the number of states in the compiled automaton
+     *
+     * @return the state count
+     */
+    public int getStateCount() {
+        return this.stateCount;
+    }
+
+    private static State determinise(Set<TrieNode> nodes, Map<Set<TrieNode>, State> states) {
+        State existing = states.get(nodes);
+        if (existing != null) {
+            return existing;
+        }
+
+        State state = new State();
+        states.put(nodes, state);
+
+        // at most one command may terminate at this state
+        Set<PermissionsExCommand> terminals = new LinkedHashSet<>();
+        for (TrieNode node : nodes) {
+            terminals.addAll(node.terminals);
+        }
+        if (terminals.size() > 1) {
+            List<String> usages = new ArrayList<>();
+            for (PermissionsExCommand cmd : terminals) {
+                usages.add("'" + cmd.getUsage() + "'");
+            }
+            throw new IllegalStateException("Ambiguous PEX mappings: " + String.join(", ", usages));
+        }
+        if (!terminals.isEmpty()) {
+            state.terminal = terminals.iterator().next();
+        }
+
+        // any value not matching a literal is consumed by a placeholder
+        Set<TrieNode> fallback = new HashSet<>();
+        Set<String> placeholders = new LinkedHashSet<>();
+        for (TrieNode node : nodes) {
+            if (node.variable != null) {
+                fallback.add(node.variable);
+                placeholders.addAll(node.variableNames);
+            }
+        }
+        state.placeholders = placeholders.toArray(new String[0]);
+
+        // a literal transition also has to follow every placeholder
+        Map<String, Set<TrieNode>> literals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (TrieNode node : nodes) {
+            for (Map.Entry<String, TrieNode> e : node.literals.entrySet()) {
+                literals.computeIfAbsent(e.getKey(), k -> new HashSet<>(fallback)).add(e.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Set<TrieNode>> e : literals.entrySet()) {
+            state.literals.put(e.getKey(), determinise(e.getValue(), states));
+        }
+        state.literalIndex = PrefixIndex.of(literals.keySet());
+        if (!fallback.isEmpty()) {
+            state.fallback = determinise(fallback, states);
+        }
+
+        return state;
+    }
+
+    /**
+     * A node in the (non-deterministic) structure trie
+     */
+    private static final class TrieNode {
+        private final Map<String, TrieNode> literals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private TrieNode variable = null;
+        private final Set<String> variableNames = new LinkedHashSet<>();
+        private final Set<PermissionsExCommand> terminals = new LinkedHashSet<>();
+
+        private void insert(PermissionsExCommand command) {
+            List<String> structure = command.getStructure();
+
+            // the command can end after any prefix followed only by optional parts
+            int minLength = structure.size();
+            while (minLength > 0 && PermissionsExCommand.isOptional(structure.get(minLength - 1))) {
+                minLength--;
+            }
+
+            TrieNode node = this;
+            if (minLength == 0) {
+                node.terminals.add(command);
+            }
+
+            for (int i = 0; i < structure.size(); i++) {
+                String part = structure.get(i);
+                if (PermissionsExCommand.isChangeable(part)) {
+                    if (node.variable == null) {
+                        node.variable = new TrieNode();
+                    }
+                    node.variableNames.add(PermissionsExCommand.stripIndicators(part));
+                    node = node.variable;
+                } else {
+                    node = node.literals.computeIfAbsent(part, p -> new TrieNode());
+                }
+
+                if (i + 1 >= minLength) {
+                    node.terminals.add(command);
+                }
+            }
+        }
+    }
+
+    /**
+     * A state in the compiled automaton
+     */
+    private static final class State {
+        private final Map<String, State> literals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private State fallback = null;
+        private PermissionsExCommand terminal = null;
+
+        // for completion: the literals, and the names of the placeholders the fallback consumes
+        private PrefixIndex literalIndex = PrefixIndex.EMPTY;
+        private String[] placeholders;
+    }
+
+}
@@ -26,11 +26,19 @@ import lombok.experimental.UtilityClass;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+import me.lucko.luckperms.compat.Dialect;
+import me.lucko.luckperms.compat.DialectConfig;
 import me.lucko.luckperms.compat.LuckPermsCompat;
+import me.lucko.luckperms.compat.MappingContext;
+import me.lucko.luckperms.compat.backend.HolderType;
+import me.lucko.luckperms.compat.backend.Operation;
+import me.lucko.luckperms.compat.check.PermissionChecker;
 
 import org.bukkit.command.CommandSender;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -38,21 +46,40 @@ import java.util.List;
  */
 @UtilityClass
 public class PermissionsExMapping {
-    private static final List<PermissionsExCommand> MAPPING = buildMapping();
 
-    public static void sendUsage(CommandSender sender) {
-        LuckPermsCompat.msg(sender, "&bMapped commands: &7(PermissionsEx)");
-        for (PermissionsExCommand cmd : MAPPING) {
-            LuckPermsCompat.msg(sender, "&3> &a/pex " + cmd.getUsage());
+    /**
+     * Builds the enabled PermissionsEx commands, and compiles them into a
+     * single /pex command. Commands are identified by their usage, e.g.
+     * "user <user> add <permission> [world]".
+     *
+     * @param plugin the plugin instance
+     * @param config the dialect configuration
+     * @return the dialect
+     */
+    public static Dialect createDialect(LuckPermsCompat plugin, DialectConfig config) {
+        List<PermissionsExCommand> mapping = new ArrayList<>();
+        ImmutableList.Builder<String> usage = ImmutableList.builder();
+
+        for (PermissionsExCommand cmd : buildMapping()) {
+            if (!config.isEnabled(cmd.getUsage())) {
+                continue;
+            }
+
+            MappingContext context = new MappingContext(plugin, "pex", "pex " + cmd.getUsage());
+            context.setBackend(config.getBackend());
+            context.setOperationsOnly(cmd.isOperationsOnly());
+            cmd.setContext(context);
+
+            mapping.add(cmd);
+            usage.add("/pex " + cmd.getUsage());
         }
-    }
 
-    public static void registerMapping(LuckPermsCompat plugin) {
-        for (PermissionsExCommand cmd : MAPPING) {
-            cmd.setPlugin(plugin);
+        if (mapping.isEmpty()) {
+            return new Dialect("PermissionsEx", ImmutableMap.of(), usage.build());
         }
 
-        plugin.registerCommand("pex", new PermissionsExCommandExecutor(plugin, MAPPING));
+        PermissionsExDispatcher dispatcher = PermissionsExDispatcher.compile(mapping);
+        return new Dialect("PermissionsEx", ImmutableMap.of("pex", new PermissionsExCommandExecutor(plugin, dispatcher)), usage.build());
     }
 
     private static List<PermissionsExCommand> buildMapping() {
@@ -61,50 +88,54 @@ public class PermissionsExMapping {
         /*
          * Utility commands
          */
-        commands.add(PermissionsExCommand.of(ImmutableList.of("toggle", "debug"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("toggle", "debug"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "LuckPerms has a verbose monitoring system instead of a debug mode. &7(see /lp verbose)");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Verbose");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "toggle", "debug"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "toggle", "debug"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "LuckPerms has a verbose monitoring system instead of a debug mode. &7(see /lp verbose)");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Verbose");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "check", "<permission>"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String permission = arguments.get("permission");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "check", "<permission>"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String permission = arguments.get(1);
 
-            plugin.executeCommand(sender, "check " + user + " " + permission);
+            PermissionChecker checker = context.getPlugin().getPermissionChecker();
+            if (checker == null || !checker.sendCheck(sender, user, permission, "luckperms.check")) {
+                context.executeCommand(sender, "check " + context.resolveUser(user) + " " + permission);
+            }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("reload"), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "reloadconfig");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("reload"), (context, sender, arguments) -> {
+            context.requestSync(sender, "reloadconfig");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("config"), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "info");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("config"), (context, sender, arguments) -> {
+            context.executeCommand(sender, "info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("backend"), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "info");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("backend"), (context, sender, arguments) -> {
+            context.executeCommand(sender, "info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("import"), (plugin, sender, arguments) -> {
-            LuckPermsCompat.msg(sender, "The import command cannot be automatically remapped. LuckPerms uses a slightly different system.");
-            LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Switching-storage-types");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("import", "[file]"), (context, sender, arguments) -> {
+            // PermissionsEx took the backend to import from, of which only the file backend is supported
+            String file = arguments.get(0);
+            context.getPlugin().getImportCommand().importPex(sender, file == null || file.equalsIgnoreCase("file") ? null : file);
         }));
 
 
         /*
          * World inheritance
          */
-        commands.add(PermissionsExCommand.of(ImmutableList.of("world"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("world"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "World specific permissions are granted via added command arguments.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Command-Usage");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("worlds"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("worlds"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "World specific permissions are granted via added command arguments.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Command-Usage");
         }));
@@ -113,20 +144,20 @@ public class PermissionsExMapping {
         /*
          * User commands
          */
-        commands.add(PermissionsExCommand.of(ImmutableList.of("users"), (plugin, sender, arguments) -> {
-            // just search for all users in the default group. that's the best remap of this functionality.
-            plugin.executeCommand(sender, "search group.default");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("users", "[page]"), (context, sender, arguments) -> {
+            // just list the users in the default group. that's the best remap of this functionality.
+            listMembers(context, sender, "default", arguments.get(0));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "list"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "list"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
 
-            plugin.executeCommand(sender, "user " + user + " permission info");
+            context.executeCommand(sender, "user " + context.resolveUser(user) + " permission info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "prefix", "[new prefix]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String prefix = arguments.get("new prefix");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "prefix", "[new prefix]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String prefix = arguments.get(1);
 
             if (prefix != null) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -137,9 +168,9 @@ public class PermissionsExMapping {
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "suffix", "[new suffix]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String suffix = arguments.get("new suffix");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "suffix", "[new suffix]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String suffix = arguments.get(1);
 
             if (suffix != null) {
                 LuckPermsCompat.msg(sender, "Suffixes in LuckPerms are applied with weights.");
@@ -150,16 +181,16 @@ public class PermissionsExMapping {
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "delete"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "delete"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
 
-            plugin.executeCommand(sender, "user " + user + " clear");
+            context.execute(sender, Operation.clear(HolderType.USER, user));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "add", "<permission>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "add", "<permission>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(2);
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -167,30 +198,26 @@ public class PermissionsExMapping {
                 permission = permission.substring(1);
             }
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " permission set " + permission + " " + value + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " permission set " + permission + " " + value);
-            }
+            context.execute(sender, Operation.permissionSet(HolderType.USER, user, permission, value, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "remove", "<permission>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "remove", "<permission>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(2);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " permission unset " + permission + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " permission unset " + permission);
-            }
+            context.execute(sender, Operation.permissionUnset(HolderType.USER, user, permission, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "timed", "add", "<permission>", "<lifetime>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String permission = arguments.get("permission");
-            String lifetime = arguments.get("lifetime") + "seconds";
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "timed", "add", "<permission>", "<lifetime>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String permission = arguments.get(1);
+            long lifetime = parseLifetime(sender, arguments.get(2));
+            String world = arguments.get(3);
+
+            if (lifetime == -1) {
+                return;
+            }
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -198,110 +225,83 @@ public class PermissionsExMapping {
                 permission = permission.substring(1);
             }
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " permission settemp " + permission + " " + value + " " + lifetime + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " permission unset " + permission + " " + value + " " + lifetime);
-            }
+            context.execute(sender, Operation.permissionSetTemp(HolderType.USER, user, permission, value, lifetime, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "timed", "remove", "<permission>", "<lifetime>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "timed", "remove", "<permission>", "<lifetime>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(3);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " permission unsettemp " + permission + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " permission unsettemp " + permission);
-            }
+            context.execute(sender, Operation.permissionUnsetTemp(HolderType.USER, user, permission, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "set", "<option>", "<value>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String option = arguments.get("option");
-            String value = arguments.get("value");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "set", "<option>", "<value>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String option = arguments.get(1);
+            String value = arguments.get(2);
+            String world = arguments.get(3);
 
             if (value.equals("\"\"")) {
                 // unset
-                if (world != null) {
-                    plugin.executeCommand(sender, "user " + user + " meta unset " + option + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "user " + user + " meta unset " + option);
-                }
+                context.execute(sender, Operation.metaUnset(HolderType.USER, user, option, world));
             } else {
-                if (world != null) {
-                    plugin.executeCommand(sender, "user " + user + " meta set " + option + " " + value + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "user " + user + " meta set " + option + " " + value);
-                }
+                context.execute(sender, Operation.metaSet(HolderType.USER, user, option, value, world));
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "group", "list"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "group", "list"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
 
-            plugin.executeCommand(sender, "user " + user + " parent info");
+            context.executeCommand(sender, "user " + context.resolveUser(user) + " parent info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "group", "add", "<group>", "[world]", "[lifetime]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String group = arguments.get("group");
-            String world = arguments.getOrDefault("world", "*");
-            String lifetime = arguments.getOrDefault("lifetime", null);
-
-            if (lifetime != null) {
-                lifetime = lifetime + "seconds";
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "group", "add", "<group>", "[world]", "[lifetime]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String group = arguments.get(1);
+            String world = arguments.get(2);
+            if (world != null && world.equals("*")) {
+                world = null;
+            }
 
-                if (!world.equals("*")) {
-                    plugin.executeCommand(sender, "user " + user + " parent addtemp " + group + " " + lifetime + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "user " + user + " parent addtemp " + group + " " + lifetime);
+            if (arguments.isPresent(3)) {
+                long lifetime = parseLifetime(sender, arguments.get(3));
+                if (lifetime == -1) {
+                    return;
                 }
+
+                context.execute(sender, Operation.parentAddTemp(HolderType.USER, user, group, lifetime, world));
             } else {
-                if (!world.equals("*")) {
-                    plugin.executeCommand(sender, "user " + user + " parent add " + group + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "user " + user + " parent add " + group);
-                }
+                context.execute(sender, Operation.parentAdd(HolderType.USER, user, group, world));
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "group", "set", "<group>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String group = arguments.get("group");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "group", "set", "<group>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String group = arguments.get(1);
+            String world = arguments.get(2);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " parent set " + group + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " parent set " + group);
-            }
+            context.execute(sender, Operation.parentSet(HolderType.USER, user, group, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("user", "<user>", "group", "remove", "<group>", "[world]"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String group = arguments.get("group");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("user", "<user>", "group", "remove", "<group>", "[world]"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String group = arguments.get(1);
+            String world = arguments.get(2);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "user " + user + " parent remove " + group + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "user " + user + " parent remove " + group);
-            }
+            context.execute(sender, Operation.parentRemove(HolderType.USER, user, group, world));
         }));
 
 
         /*
          * Default group management
          */
-        commands.add(PermissionsExCommand.of(ImmutableList.of("default", "group"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("default", "group"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "LuckPerms does not have a 'default group' as such - however, there are other ways to customize defaults.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Default-Groups");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("set", "default", "group"), (plugin, sender, arguments) -> {
+        commands.add(PermissionsExCommand.of(ImmutableList.of("set", "default", "group"), (context, sender, arguments) -> {
             LuckPermsCompat.msg(sender, "LuckPerms does not have a 'default group' as such - however, there are other ways to customize defaults.");
             LuckPermsCompat.msg(sender, "&7More info can be found here: https://github.com/lucko/LuckPerms/wiki/Default-Groups");
         }));
@@ -310,17 +310,17 @@ public class PermissionsExMapping {
         /*
          * Group commands
          */
-        commands.add(PermissionsExCommand.of(ImmutableList.of("groups"), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "listgroups");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("groups"), (context, sender, arguments) -> {
+            context.executeCommand(sender, "listgroups");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("groups", "list"), (plugin, sender, arguments) -> {
-            plugin.executeCommand(sender, "listgroups");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("groups", "list"), (context, sender, arguments) -> {
+            context.executeCommand(sender, "listgroups");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "prefix", "[new prefix]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String prefix = arguments.get("new prefix");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "prefix", "[new prefix]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String prefix = arguments.get(1);
 
             if (prefix != null) {
                 LuckPermsCompat.msg(sender, "Prefixes in LuckPerms are applied with weights.");
@@ -331,9 +331,9 @@ public class PermissionsExMapping {
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "suffix", "[new suffix]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String suffix = arguments.get("new suffix");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "suffix", "[new suffix]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String suffix = arguments.get(1);
 
             if (suffix != null) {
                 LuckPermsCompat.msg(sender, "Suffixes in LuckPerms are applied with weights.");
@@ -344,48 +344,50 @@ public class PermissionsExMapping {
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "create"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "create"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
 
-            plugin.executeCommand(sender, "creategroup " + group);
+            context.execute(sender, Operation.createGroup(group));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "delete"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "delete"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
 
-            plugin.executeCommand(sender, "deletegroup " + group);
+            context.execute(sender, Operation.deleteGroup(group));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "parents", "list"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "parents", "list"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
 
-            plugin.executeCommand(sender, "group " + group + " parent info");
+            context.executeCommand(sender, "group " + group + " parent info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "parents", "set", "<parents>"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            List<String> parents = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get("parents"));
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "parents", "set", "<parents>"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            List<String> parents = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get(1));
             if (parents.isEmpty()) {
                 return;
             }
 
-            plugin.executeCommand(sender, "group " + group + " parent clear");
-
+            List<Operation> operations = new ArrayList<>(parents.size() + 1);
+            operations.add(Operation.parentClear(HolderType.GROUP, group));
             for (String parent : parents) {
-                plugin.executeCommand(sender, "group " + group + " parent add " + parent);
+                operations.add(Operation.parentAdd(HolderType.GROUP, group, parent, null));
             }
+
+            context.executeBatch(sender, operations);
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "list"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "list"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
 
-            plugin.executeCommand(sender, "group " + group + " permission info");
+            context.executeCommand(sender, "group " + group + " permission info");
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "add", "<permission>", "[world]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "add", "<permission>", "[world]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(2);
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -393,30 +395,26 @@ public class PermissionsExMapping {
                 permission = permission.substring(1);
             }
 
-            if (world != null) {
-                plugin.executeCommand(sender, "group " + group + " permission set " + permission + " " + value + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "group " + group + " permission set " + permission + " " + value);
-            }
+            context.execute(sender, Operation.permissionSet(HolderType.GROUP, group, permission, value, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "remove", "<permission>", "[world]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "remove", "<permission>", "[world]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(2);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "group " + group + " permission unset " + permission + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "group " + group + " permission unset " + permission);
-            }
+            context.execute(sender, Operation.permissionUnset(HolderType.GROUP, group, permission, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "timed", "add", "<permission>", "<lifetime>", "[world]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
-            String lifetime = arguments.get("lifetime") + "seconds";
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "timed", "add", "<permission>", "<lifetime>", "[world]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
+            long lifetime = parseLifetime(sender, arguments.get(2));
+            String world = arguments.get(3);
+
+            if (lifetime == -1) {
+                return;
+            }
 
             boolean value = true;
             if (permission.startsWith("-") || permission.startsWith("!")) {
@@ -424,119 +422,150 @@ public class PermissionsExMapping {
                 permission = permission.substring(1);
             }
 
-            if (world != null) {
-                plugin.executeCommand(sender, "group " + group + " permission settemp " + permission + " " + value + " " + lifetime + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "group " + group + " permission unset " + permission + " " + value + " " + lifetime);
-            }
+            context.execute(sender, Operation.permissionSetTemp(HolderType.GROUP, group, permission, value, lifetime, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "timed", "remove", "<permission>", "<lifetime>", "[world]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String permission = arguments.get("permission");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "timed", "remove", "<permission>", "<lifetime>", "[world]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String permission = arguments.get(1);
+            String world = arguments.get(3);
 
-            if (world != null) {
-                plugin.executeCommand(sender, "group " + group + " permission unsettemp " + permission + " global " + world);
-            } else {
-                plugin.executeCommand(sender, "group " + group + " permission unsettemp " + permission);
-            }
+            context.execute(sender, Operation.permissionUnsetTemp(HolderType.GROUP, group, permission, world));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "set", "<option>", "<value>", "[world]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String option = arguments.get("option");
-            String value = arguments.get("value");
-            String world = arguments.getOrDefault("world", null);
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "set", "<option>", "<value>", "[world]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String option = arguments.get(1);
+            String value = arguments.get(2);
+            String world = arguments.get(3);
 
             if (value.equals("\"\"")) {
                 // unset
-                if (world != null) {
-                    plugin.executeCommand(sender, "group " + group + " meta unset " + option + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "group " + group + " meta unset " + option);
-                }
+                context.execute(sender, Operation.metaUnset(HolderType.GROUP, group, option, world));
             } else {
-                if (world != null) {
-                    plugin.executeCommand(sender, "group " + group + " meta set " + option + " " + value + " global " + world);
-                } else {
-                    plugin.executeCommand(sender, "group " + group + " meta set " + option + " " + value);
-                }
+                context.execute(sender, Operation.metaSet(HolderType.GROUP, group, option, value, world));
             }
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "weight", "[weight]"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
-            String weight = arguments.getOrDefault("weight", null);
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "weight", "[weight]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
+            String weight = arguments.get(1);
 
             if (weight == null) {
-                plugin.executeCommand(sender, "group " + group + " info");
+                context.executeCommand(sender, "group " + group + " info");
                 return;
             }
 
+            int value;
             try {
-                Integer.parseInt(weight);
+                value = Integer.parseInt(weight);
             } catch (NumberFormatException e) {
                 LuckPermsCompat.msg(sender, "Weight '" + weight + "' is not a number.");
                 return;
             }
 
             LuckPermsCompat.msg(sender, "Reminder: Weights in LuckPerms are opposite to PEX. A higher number = higher weight.");
-            plugin.executeCommand(sender, "group " + group + " setweight " + weight);
+            context.execute(sender, Operation.setWeight(group, value));
 
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "users"), (plugin, sender, arguments) -> {
-            String group = arguments.get("group");
+        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "users", "[page]"), (context, sender, arguments) -> {
+            String group = arguments.get(0);
 
-            plugin.executeCommand(sender, "search group." + group);
+            listMembers(context, sender, group, arguments.get(1));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "user", "add" + "<user>"), (plugin, sender, arguments) -> {
-            List<String> groups = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get("group"));
-            List<String> users = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get("user"));
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "user", "add", "<user>"), (context, sender, arguments) -> {
+            List<String> groups = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get(0));
+            List<String> users = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get(1));
 
             if (groups.isEmpty() || users.isEmpty()) {
                 return;
             }
 
-            for (String group : groups) {
-                for (String user : users) {
-                    plugin.executeCommand(sender, "user " + user + " parent add " + group);
+            // grouped by user, so each user is only saved once
+            List<Operation> operations = new ArrayList<>(groups.size() * users.size());
+            for (String user : users) {
+                for (String group : groups) {
+                    operations.add(Operation.parentAdd(HolderType.USER, user, group, null));
                 }
             }
+
+            context.executeBatch(sender, operations);
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("group", "<group>", "user", "remove" + "<user>"), (plugin, sender, arguments) -> {
-            List<String> groups = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get("group"));
-            List<String> users = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get("user"));
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("group", "<group>", "user", "remove", "<user>"), (context, sender, arguments) -> {
+            List<String> groups = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get(0));
+            List<String> users = Splitter.on(',').omitEmptyStrings().splitToList(arguments.get(1));
 
             if (groups.isEmpty() || users.isEmpty()) {
                 return;
             }
 
-            for (String group : groups) {
-                for (String user : users) {
-                    plugin.executeCommand(sender, "user " + user + " parent remove " + group);
+            // grouped by user, so each user is only saved once
+            List<Operation> operations = new ArrayList<>(groups.size() * users.size());
+            for (String user : users) {
+                for (String group : groups) {
+                    operations.add(Operation.parentRemove(HolderType.USER, user, group, null));
                 }
             }
+
+            context.executeBatch(sender, operations);
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("promote", "<user>", "<ladder>"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String ladder = arguments.get("ladder");
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("promote", "<user>", "<ladder>"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String ladder = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + user + " promote " + ladder);
+            context.execute(sender, Operation.promote(user, ladder));
         }));
 
-        commands.add(PermissionsExCommand.of(ImmutableList.of("demote", "<user>", "<ladder>"), (plugin, sender, arguments) -> {
-            String user = arguments.get("user");
-            String ladder = arguments.get("ladder");
+        commands.add(PermissionsExCommand.ofOperations(ImmutableList.of("demote", "<user>", "<ladder>"), (context, sender, arguments) -> {
+            String user = arguments.get(0);
+            String ladder = arguments.get(1);
 
-            plugin.executeCommand(sender, "user " + user + " demote " + ladder);
+            context.execute(sender, Operation.demote(user, ladder));
         }));
 
         return commands.build();
     }
 
+    // lists the members of a group from the membership index, or searches for them if it can't answer
+    private static void listMembers(MappingContext context, CommandSender sender, String group, String page) {
+        int number = 1;
+        if (page != null) {
+            try {
+                number = Integer.parseInt(page);
+            } catch (NumberFormatException e) {
+                LuckPermsCompat.msg(sender, "&c" + page + " is not a page number.");
+                return;
+            }
+        }
+
+        if (!context.getPlugin().getMembershipIndex().sendMembers(sender, group, number)) {
+            context.executeCommand(sender, "search group." + group + (page == null ? "" : " " + number));
+        }
+    }
+
+    /**
+     * Parses a PEX lifetime, given in seconds
+     *
+     * @param sender the sender to notify if the lifetime is invalid
+     * @param lifetime the lifetime
+     * @return the lifetime in seconds, or -1 if it is invalid
+     */
+    private static long parseLifetime(CommandSender sender, String lifetime) {
+        try {
+            long seconds = Long.parseLong(lifetime);
+            if (seconds > 0) {
+                return seconds;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+
+        LuckPermsCompat.msg(sender, "Lifetime '" + lifetime + "' is not a number of seconds.");
+        return -1;
+    }
+
 }